@@ -38,4 +38,9 @@ public class Constant {
 
 	public static final String SERVER_GRAY = "${spring.cloud.nacos.discovery.metadata.gray:false}";
 
+	/**
+	 * 票档售罄标记在本地缓存失效广播中的区域，key为 节目id-票档id
+	 */
+	public static final String TICKET_CATEGORY_SOLD_OUT_REGION = "ticketCategorySoldOut";
+
 }
@@ -194,6 +194,8 @@ public enum BaseCode {
 
 	PROGRAM_ORDER_STRATEGY_NOT_EXIST(50011, "创建订单策略不存在"),
 
+	ACCOUNT_ORDER_COUNT_NOT_EXIST(50012, "账户下订单数量的缓存不存在"),
+
 	USER_LOG_IN_STATUS_ERROR(60001, "用户不是登录状态"),
 
 	USER_LOG_IN(60002, "用户已登录"),
@@ -249,6 +251,8 @@ public enum BaseCode {
 	USER_EMAIL_NOT_EXIST(70002, "用户邮箱不存在"),
 
 	NOT_FOUND_GENE(70003, "没有找到基因"),
+
+	COMPOSITE_EXECUTE_TIMEOUT(70004, "通用验证执行超时"),
 	;
 
 	private final Integer code;
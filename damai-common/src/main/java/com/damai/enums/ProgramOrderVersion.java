@@ -16,6 +16,8 @@ public enum ProgramOrderVersion {
 	V3_VERSION("v3", "v3版本"),
 
 	V4_VERSION("v4", "v4版本"),
+
+	V5_VERSION("v5", "v5版本"),
 	;
 
 	private final String version;
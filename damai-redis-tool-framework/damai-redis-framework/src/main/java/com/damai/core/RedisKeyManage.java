@@ -61,11 +61,17 @@ public enum RedisKeyManage {
 
 	PROGRAM_SHOW_TIME("d_mai_program_show_time_%s", "节目演出时间id", "节目演出时间", "k"),
 
-	PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH("d_mai_program_seat_no_sold_resolution_hash_%s_%s", "节目座位未售卖集合_节目id_节目类型id", "节目座位未售卖集合", "k"),
+	PROGRAM_SEAT_META_RESOLUTION_HASH("d_mai_program_seat_meta_resolution_hash_%s_%s", "节目座位静态数据_节目id_节目票档id", "field为座位槽位 value为不含售卖状态的座位数据", "k"),
 
-	PROGRAM_SEAT_LOCK_RESOLUTION_HASH("d_mai_program_seat_lock_resolution_hash_%s_%s", "节目座位锁定集合_节目id_节目类型id", "节目座位锁定集合", "k"),
+	PROGRAM_SEAT_INDEX_RESOLUTION_HASH("d_mai_program_seat_index_resolution_hash_%s_%s", "节目座位槽位索引_节目id_节目票档id", "field为座位id value为座位槽位", "k"),
 
-	PROGRAM_SEAT_SOLD_RESOLUTION_HASH("d_mai_program_seat_sold_resolution_hash_%s_%s", "节目座位已售卖集合_节目id_节目类型id", "节目座位已售卖集合", "k"),
+	PROGRAM_SEAT_STATE_RESOLUTION_BITMAP("d_mai_program_seat_state_resolution_bitmap_%s_%s", "节目座位状态位图_节目id_节目票档id", "每个座位槽位占2位 值为售卖状态 0为无座位", "k"),
+
+	PROGRAM_SEAT_FREE_RUN_RESOLUTION_INDEX("d_mai_program_seat_free_run_resolution_index_%s_%s", "节目座位每排最长连续空座_节目id_节目票档id", "每排占1字节 值为128+该排最长连续未售卖座位数", "k"),
+
+	PROGRAM_SEAT_VERSION("d_mai_program_seat_version_%s", "节目座位图版本号_节目id", "座位售卖状态每次变化都会递增", "k"),
+
+	PROGRAM_ORDER_CREATE_RESULT("d_mai_program_order_create_result_%s", "节目订单扣减结果标记_订单编号", "lua脚本扣减成功的结果或者调用方放弃的标记", "k"),
 
 	PROGRAM_TICKET_CATEGORY_LIST("d_mai_program_ticket_category_list_%s", "节目票档集合id", "节目票档集合", "k"),
 
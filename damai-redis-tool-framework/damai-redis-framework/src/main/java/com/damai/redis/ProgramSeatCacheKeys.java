@@ -0,0 +1,97 @@
+package com.damai.redis;
+
+import com.damai.core.RedisKeyManage;
+import com.damai.core.SpringUtil;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 节目票档座位相关的缓存key
+ * 下单、取消、支付每次都要用到同一个票档的这几个key，这里按照 节目id+票档id 预先构建好并缓存，
+ * 请求中不再每次执行 String.format 和前缀的配置查找
+ * @author: 阿星不是程序员
+ **/
+@Getter
+public final class ProgramSeatCacheKeys {
+
+	/**
+	 * 缓存的最大数量，超过后整体清空重新构建
+	 */
+	private static final int MAX_CACHE_SIZE = 4096;
+
+	private static final Map<Long, Map<Long, ProgramSeatCacheKeys>> CACHE = new ConcurrentHashMap<>(64);
+
+	private static volatile String[] keyPrefixArray;
+
+	private final String ticketCategoryId;
+
+	private final String ticketRemainNumberHashKey;
+
+	private final String seatMetaHashKey;
+
+	private final String seatIndexHashKey;
+
+	private final String seatStateKey;
+
+	private final String seatFreeRunKey;
+
+	/**
+	 * 座位图版本号是节目级别的，同一个节目的所有票档共用一个
+	 */
+	private final String seatVersionKey;
+
+	private ProgramSeatCacheKeys(Long programId, Long ticketCategoryId) {
+		String[] prefixArray = getKeyPrefixArray();
+		String suffix = programId + "_" + ticketCategoryId;
+		this.ticketCategoryId = String.valueOf(ticketCategoryId);
+		this.ticketRemainNumberHashKey = prefixArray[0] + suffix;
+		this.seatMetaHashKey = prefixArray[1] + suffix;
+		this.seatIndexHashKey = prefixArray[2] + suffix;
+		this.seatStateKey = prefixArray[3] + suffix;
+		this.seatFreeRunKey = prefixArray[4] + suffix;
+		this.seatVersionKey = prefixArray[5] + programId;
+	}
+
+	public static ProgramSeatCacheKeys of(Long programId, Long ticketCategoryId) {
+		Map<Long, ProgramSeatCacheKeys> ticketCategoryMap = CACHE.get(programId);
+		if (ticketCategoryMap == null) {
+			if (CACHE.size() >= MAX_CACHE_SIZE) {
+				CACHE.clear();
+			}
+			ticketCategoryMap = CACHE.computeIfAbsent(programId, key -> new ConcurrentHashMap<>(8));
+		}
+		ProgramSeatCacheKeys programSeatCacheKeys = ticketCategoryMap.get(ticketCategoryId);
+		if (programSeatCacheKeys == null) {
+			programSeatCacheKeys = ticketCategoryMap.computeIfAbsent(ticketCategoryId,
+					key -> new ProgramSeatCacheKeys(programId, ticketCategoryId));
+		}
+		return programSeatCacheKeys;
+	}
+
+	/**
+	 * key模板都是 前缀_节目id_票档id 或者 前缀_节目id 的格式，这里只截取一次前缀
+	 */
+	private static String[] getKeyPrefixArray() {
+		String[] prefixArray = keyPrefixArray;
+		if (prefixArray == null) {
+			RedisKeyManage[] redisKeyManages = {
+					RedisKeyManage.PROGRAM_TICKET_REMAIN_NUMBER_HASH_RESOLUTION,
+					RedisKeyManage.PROGRAM_SEAT_META_RESOLUTION_HASH,
+					RedisKeyManage.PROGRAM_SEAT_INDEX_RESOLUTION_HASH,
+					RedisKeyManage.PROGRAM_SEAT_STATE_RESOLUTION_BITMAP,
+					RedisKeyManage.PROGRAM_SEAT_FREE_RUN_RESOLUTION_INDEX,
+					RedisKeyManage.PROGRAM_SEAT_VERSION};
+			String distinctionPrefix = SpringUtil.getPrefixDistinctionName() + "-";
+			prefixArray = new String[redisKeyManages.length];
+			for (int i = 0; i < redisKeyManages.length; i++) {
+				String key = redisKeyManages[i].getKey();
+				prefixArray[i] = distinctionPrefix + key.substring(0, key.indexOf("%s"));
+			}
+			keyPrefixArray = prefixArray;
+		}
+		return prefixArray;
+	}
+}
@@ -0,0 +1,186 @@
+package com.damai.redis;
+
+import com.alibaba.fastjson.JSON;
+import com.damai.redis.codec.RedisValueCodecManager;
+import com.damai.redis.hotkey.HotKeyCache;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: redis批量操作
+ * 添加的操作在execute时通过一次pipeline发送，每个操作返回的future在execute之后完成，
+ * 读取不经过热点key镜像和客户端缓存，一个批次只能执行一次
+ * @author: 阿星不是程序员
+ **/
+public class RedisBatch {
+
+	private final StringRedisTemplate redisTemplate;
+
+	private final RedisCacheImpl redisCache;
+
+	private final HotKeyCache hotKeyCache;
+
+	private final RedisValueCodecManager redisValueCodecManager;
+
+	private final List<Operation<?>> operationList = new ArrayList<>();
+
+	private boolean executed;
+
+	RedisBatch(StringRedisTemplate redisTemplate, RedisCacheImpl redisCache, HotKeyCache hotKeyCache,
+			   RedisValueCodecManager redisValueCodecManager) {
+		this.redisTemplate = redisTemplate;
+		this.redisCache = redisCache;
+		this.hotKeyCache = hotKeyCache;
+		this.redisValueCodecManager = redisValueCodecManager;
+	}
+
+	public <T> CompletableFuture<T> get(RedisKeyBuild redisKeyBuild, Class<T> clazz) {
+		CacheUtil.checkNotBlank(redisKeyBuild);
+		byte[] key = rawKey(redisKeyBuild);
+		return addRead(connection -> connection.stringCommands().get(key), value -> redisCache.decode((byte[]) value, clazz));
+	}
+
+	public <T> CompletableFuture<List<T>> getValueIsList(RedisKeyBuild redisKeyBuild, Class<T> clazz) {
+		CacheUtil.checkNotBlank(redisKeyBuild);
+		byte[] key = rawKey(redisKeyBuild);
+		return addRead(connection -> connection.stringCommands().get(key), value -> redisCache.decodeList((byte[]) value, clazz));
+	}
+
+	public <T> CompletableFuture<T> getForHash(RedisKeyBuild redisKeyBuild, String hashKey, Class<T> clazz) {
+		CacheUtil.checkNotBlank(redisKeyBuild);
+		CacheUtil.checkNotBlank(hashKey);
+		byte[] key = rawKey(redisKeyBuild);
+		byte[] field = hashKey.getBytes(StandardCharsets.UTF_8);
+		return addRead(connection -> connection.hashCommands().hGet(key, field), value -> value == null ? null :
+				redisCache.getComplex(new String((byte[]) value, StandardCharsets.UTF_8), clazz));
+	}
+
+	public CompletableFuture<Boolean> hasKey(RedisKeyBuild redisKeyBuild) {
+		CacheUtil.checkNotBlank(redisKeyBuild);
+		byte[] key = rawKey(redisKeyBuild);
+		return addRead(connection -> connection.keyCommands().exists(key), Boolean.TRUE::equals);
+	}
+
+	public CompletableFuture<Void> set(RedisKeyBuild redisKeyBuild, Object object) {
+		return set(redisKeyBuild, object, Expiration.persistent());
+	}
+
+	public CompletableFuture<Void> set(RedisKeyBuild redisKeyBuild, Object object, long ttl, TimeUnit timeUnit) {
+		return set(redisKeyBuild, object, Expiration.from(ttl, timeUnit));
+	}
+
+	/**
+	 * 通过一次pipeline执行所有的操作，执行失败时所有的future都以异常完成并抛出异常
+	 */
+	public void execute() {
+		if (executed) {
+			throw new IllegalStateException("redis batch already executed");
+		}
+		executed = true;
+		if (operationList.isEmpty()) {
+			return;
+		}
+		List<Object> resultList;
+		try {
+			//结果不做反序列化，由每个操作自己解码
+			resultList = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+				for (Operation<?> operation : operationList) {
+					operation.command.accept(connection);
+				}
+				return null;
+			}, null);
+		}
+		catch (RuntimeException e) {
+			operationList.forEach(operation -> operation.future.completeExceptionally(e));
+			throw e;
+		}
+		//写操作的状态回复是否出现在结果中取决于驱动，按结果数量判断是否需要跳过写操作
+		boolean skipWrite = resultList.size() != operationList.size();
+		int index = 0;
+		for (Operation<?> operation : operationList) {
+			if (operation.write) {
+				hotKeyCache.invalidate(operation.key);
+				if (!skipWrite) {
+					index++;
+				}
+				operation.complete(null);
+				continue;
+			}
+			operation.complete(resultList.get(index++));
+		}
+	}
+
+	private CompletableFuture<Void> set(RedisKeyBuild redisKeyBuild, Object object, Expiration expiration) {
+		CacheUtil.checkNotBlank(redisKeyBuild);
+		byte[] key = rawKey(redisKeyBuild);
+		byte[] value;
+		if (redisValueCodecManager.isEncode(object)) {
+			value = redisValueCodecManager.encode(object);
+		}
+		else {
+			String json = object instanceof String ? (String) object : JSON.toJSONString(object);
+			value = json.getBytes(StandardCharsets.UTF_8);
+		}
+		return addWrite(redisKeyBuild.getRelKey(), connection ->
+				connection.stringCommands().set(key, value, expiration, RedisStringCommands.SetOption.upsert()));
+	}
+
+	private byte[] rawKey(RedisKeyBuild redisKeyBuild) {
+		return redisKeyBuild.getRelKey().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private <T> CompletableFuture<T> addRead(Consumer<RedisConnection> command,
+											 Function<Object, T> converter) {
+		Operation<T> operation = new Operation<>(null, false, command, converter);
+		operationList.add(operation);
+		return operation.future;
+	}
+
+	private CompletableFuture<Void> addWrite(String key, Consumer<RedisConnection> command) {
+		Operation<Void> operation = new Operation<>(key, true, command, value -> null);
+		operationList.add(operation);
+		return operation.future;
+	}
+
+	private static class Operation<T> {
+
+		private final String key;
+
+		private final boolean write;
+
+		private final Consumer<RedisConnection> command;
+
+		private final Function<Object, T> converter;
+
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		private Operation(String key, boolean write, Consumer<RedisConnection> command,
+						  Function<Object, T> converter) {
+			this.key = key;
+			this.write = write;
+			this.command = command;
+			this.converter = converter;
+		}
+
+		private void complete(Object value) {
+			try {
+				future.complete(converter.apply(value));
+			}
+			catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+}
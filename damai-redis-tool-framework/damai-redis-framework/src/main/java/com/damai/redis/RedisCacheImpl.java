@@ -2,12 +2,17 @@ package com.damai.redis;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.damai.redis.codec.RedisValueCodecManager;
+import com.damai.redis.hotkey.HotKeyCache;
 import com.damai.util.StringUtil;
 import lombok.AllArgsConstructor;
 import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.data.redis.core.*;
 
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -23,16 +28,15 @@ public class RedisCacheImpl implements RedisCache {
 
 	private StringRedisTemplate redisTemplate;
 
+	private HotKeyCache hotKeyCache;
+
+	private RedisValueCodecManager redisValueCodecManager;
+
 	@Override
 	public <T> T get(RedisKeyBuild redisKeyBuild, Class<T> clazz) {
 		CacheUtil.checkNotBlank(redisKeyBuild);
 		String key = redisKeyBuild.getRelKey();
-		// 如果取String类型 则直接取出返回
-		String cachedValue = redisTemplate.opsForValue().get(key);
-		if (String.class.isAssignableFrom(clazz)) {
-			return (T) cachedValue;
-		}
-		return getComplex(cachedValue, clazz);
+		return decode(getBytes(key), clazz);
 	}
 
 	@Override
@@ -61,11 +65,7 @@ public class RedisCacheImpl implements RedisCache {
 	public <T> List<T> getValueIsList(RedisKeyBuild redisKeyBuild, Class<T> clazz) {
 		CacheUtil.checkNotBlank(redisKeyBuild);
 		String key = redisKeyBuild.getRelKey();
-		String valueStr = redisTemplate.opsForValue().get(key);
-		if (StringUtil.isEmpty(valueStr)) {
-			return new ArrayList<>();
-		}
-		return JSON.parseArray(valueStr, clazz);
+		return decodeList(getBytes(key), clazz);
 	}
 
 	@Override
@@ -144,13 +144,16 @@ public class RedisCacheImpl implements RedisCache {
 		CacheUtil.checkNotBlank(oldKey);
 		CacheUtil.checkNotBlank(newKey);
 		redisTemplate.rename(oldKey.getRelKey(), newKey.getRelKey());
+		hotKeyCache.invalidate(Arrays.asList(oldKey.getRelKey(), newKey.getRelKey()));
 	}
 
 	@Override
 	public Boolean renameIfAbsent(RedisKeyBuild oldKey, RedisKeyBuild newKey) {
 		CacheUtil.checkNotBlank(oldKey);
 		CacheUtil.checkNotBlank(newKey);
-		return redisTemplate.renameIfAbsent(oldKey.getRelKey(), newKey.getRelKey());
+		Boolean result = redisTemplate.renameIfAbsent(oldKey.getRelKey(), newKey.getRelKey());
+		hotKeyCache.invalidate(Arrays.asList(oldKey.getRelKey(), newKey.getRelKey()));
+		return result;
 	}
 
 	@Override
@@ -164,8 +167,13 @@ public class RedisCacheImpl implements RedisCache {
 	public void set(RedisKeyBuild redisKeyBuild, Object object) {
 		CacheUtil.checkNotBlank(redisKeyBuild);
 		String key = redisKeyBuild.getRelKey();
+		if (redisValueCodecManager.isEncode(object)) {
+			setEncoded(key, object, Expiration.persistent(), RedisStringCommands.SetOption.upsert());
+			return;
+		}
 		String json = object instanceof String ? (String) object : JSON.toJSONString(object);
 		redisTemplate.opsForValue().set(key, json);
+		hotKeyCache.invalidate(key);
 	}
 
 	@Override
@@ -177,16 +185,39 @@ public class RedisCacheImpl implements RedisCache {
 	public void set(RedisKeyBuild redisKeyBuild, Object object, long ttl, TimeUnit timeUnit) {
 		CacheUtil.checkNotBlank(redisKeyBuild);
 		String key = redisKeyBuild.getRelKey();
+		if (redisValueCodecManager.isEncode(object)) {
+			setEncoded(key, object, Expiration.from(ttl, timeUnit), RedisStringCommands.SetOption.upsert());
+			return;
+		}
 		String json = object instanceof String ? (String) object : JSON.toJSONString(object);
 		redisTemplate.opsForValue().set(key, json, ttl, timeUnit);
+		hotKeyCache.invalidate(key);
 	}
 
 	@Override
 	public boolean setIfAbsent(RedisKeyBuild redisKeyBuild, Object object) {
 		CacheUtil.checkNotBlank(redisKeyBuild);
 		String key = redisKeyBuild.getRelKey();
+		if (redisValueCodecManager.isEncode(object)) {
+			return setEncoded(key, object, Expiration.persistent(), RedisStringCommands.SetOption.ifAbsent());
+		}
+		String json = object instanceof String ? (String) object : JSON.toJSONString(object);
+		boolean result = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, json));
+		hotKeyCache.invalidate(key);
+		return result;
+	}
+
+	@Override
+	public boolean setIfAbsent(RedisKeyBuild redisKeyBuild, Object object, long ttl, TimeUnit timeUnit) {
+		CacheUtil.checkNotBlank(redisKeyBuild);
+		String key = redisKeyBuild.getRelKey();
+		if (redisValueCodecManager.isEncode(object)) {
+			return setEncoded(key, object, Expiration.from(ttl, timeUnit), RedisStringCommands.SetOption.ifAbsent());
+		}
 		String json = object instanceof String ? (String) object : JSON.toJSONString(object);
-		return redisTemplate.opsForValue().setIfAbsent(key, json);
+		boolean result = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, json, ttl, timeUnit));
+		hotKeyCache.invalidate(key);
+		return result;
 	}
 
 	@Override
@@ -205,6 +236,7 @@ public class RedisCacheImpl implements RedisCache {
 			mapForSave.put(hashKey.getRelKey(), jsonValue);
 		});
 		redisTemplate.opsForValue().multiSet(mapForSave);
+		hotKeyCache.invalidate(mapForSave.keySet());
 	}
 
 	@Override
@@ -215,28 +247,36 @@ public class RedisCacheImpl implements RedisCache {
 			String jsonValue = val instanceof String ? (String) val : JSON.toJSONString(val);
 			mapForSave.put(hashKey.getRelKey(), jsonValue);
 		});
-		return redisTemplate.opsForValue().multiSetIfAbsent(mapForSave);
+		boolean result = Boolean.TRUE.equals(redisTemplate.opsForValue().multiSetIfAbsent(mapForSave));
+		hotKeyCache.invalidate(mapForSave.keySet());
+		return result;
 	}
 
 	@Override
 	public Long incrBy(RedisKeyBuild redisKeyBuild, long increment) {
 		CacheUtil.checkNotBlank(redisKeyBuild);
 		String key = redisKeyBuild.getRelKey();
-		return redisTemplate.opsForValue().increment(key, increment);
+		Long result = redisTemplate.opsForValue().increment(key, increment);
+		hotKeyCache.invalidate(key);
+		return result;
 	}
 
 	@Override
 	public Double incrByDouble(RedisKeyBuild redisKeyBuild, double increment) {
 		CacheUtil.checkNotBlank(redisKeyBuild);
 		String key = redisKeyBuild.getRelKey();
-		return redisTemplate.opsForValue().increment(key, increment);
+		Double result = redisTemplate.opsForValue().increment(key, increment);
+		hotKeyCache.invalidate(key);
+		return result;
 	}
 
 	@Override
 	public Integer append(RedisKeyBuild redisKeyBuild, String value) {
 		CacheUtil.checkNotBlank(redisKeyBuild);
 		String key = redisKeyBuild.getRelKey();
-		return redisTemplate.opsForValue().append(key, value);
+		Integer result = redisTemplate.opsForValue().append(key, value);
+		hotKeyCache.invalidate(key);
+		return result;
 	}
 
 	@Override
@@ -581,6 +621,7 @@ public class RedisCacheImpl implements RedisCache {
 		CacheUtil.checkNotBlank(redisKeyBuild);
 		String key = redisKeyBuild.getRelKey();
 		redisTemplate.delete(key);
+		hotKeyCache.invalidate(key);
 	}
 
 
@@ -636,6 +677,7 @@ public class RedisCacheImpl implements RedisCache {
 		CacheUtil.checkNotEmpty(keys);
 		List<String> batchKey = CacheUtil.getBatchKey(keys);
 		redisTemplate.delete(batchKey);
+		hotKeyCache.invalidate(batchKey);
 	}
 
 	@Override
@@ -1174,11 +1216,19 @@ public class RedisCacheImpl implements RedisCache {
 	@Override
 	public <T> T getByType(RedisKeyBuild redisKeyBuild, Type genericReturnType) {
 		String key = redisKeyBuild.getRelKey();
-		String s = redisTemplate.boundValueOps(key).get();
-		if (StringUtil.isEmpty(s)) {
+		byte[] data = getBytes(key);
+		if (data == null || data.length == 0) {
 			return null;
 		}
-		return JSONObject.parseObject(s, genericReturnType);
+		if (redisValueCodecManager.isEncoded(data)) {
+			return redisValueCodecManager.decode(data, genericReturnType);
+		}
+		return JSONObject.parseObject(new String(data, StandardCharsets.UTF_8), genericReturnType);
+	}
+
+	@Override
+	public RedisBatch batch() {
+		return new RedisBatch(redisTemplate, this, hotKeyCache, redisValueCodecManager);
 	}
 
 	@Override
@@ -1263,4 +1313,51 @@ public class RedisCacheImpl implements RedisCache {
 		}
 		return set;
 	}
+
+	/**
+	 * 读取字符串类型的值，热点key会经过本地镜像
+	 */
+	private byte[] getBytes(String key) {
+		return hotKeyCache.get(key, k -> redisTemplate.execute((RedisCallback<byte[]>) connection ->
+				connection.stringCommands().get(k.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	private boolean setEncoded(String key, Object object, Expiration expiration, RedisStringCommands.SetOption setOption) {
+		byte[] data = redisValueCodecManager.encode(object);
+		Boolean result = redisTemplate.execute((RedisCallback<Boolean>) connection ->
+				connection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8), data, expiration, setOption));
+		hotKeyCache.invalidate(key);
+		return Boolean.TRUE.equals(result);
+	}
+
+	/**
+	 * 解码字符串类型的值，编码后的数据和原来的fastjson文本都可以读取
+	 */
+	protected <T> T decode(byte[] data, Class<T> clazz) {
+		if (data == null) {
+			return null;
+		}
+		if (!redisValueCodecManager.isEncoded(data)) {
+			String value = new String(data, StandardCharsets.UTF_8);
+			// 如果取String类型 则直接取出返回
+			if (String.class.isAssignableFrom(clazz)) {
+				return (T) value;
+			}
+			return getComplex(value, clazz);
+		}
+		if (String.class.isAssignableFrom(clazz)) {
+			return (T) JSON.toJSONString(redisValueCodecManager.decode(data, Object.class));
+		}
+		return redisValueCodecManager.decode(data, clazz);
+	}
+
+	protected <T> List<T> decodeList(byte[] data, Class<T> clazz) {
+		if (data == null || data.length == 0) {
+			return new ArrayList<>();
+		}
+		if (!redisValueCodecManager.isEncoded(data)) {
+			return JSON.parseArray(new String(data, StandardCharsets.UTF_8), clazz);
+		}
+		return redisValueCodecManager.decode(data, CacheUtil.buildType(List.class, clazz));
+	}
 }
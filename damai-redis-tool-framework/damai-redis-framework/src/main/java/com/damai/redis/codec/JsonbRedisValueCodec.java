@@ -0,0 +1,37 @@
+package com.damai.redis.codec;
+
+import com.alibaba.fastjson2.JSONB;
+
+import java.lang.reflect.Type;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: fastjson2的JSONB二进制编码，不需要预先定义结构，编码和解码都比文本json快，体积也更小
+ * @author: 阿星不是程序员
+ **/
+public class JsonbRedisValueCodec implements RedisValueCodec {
+
+	public static final byte ID = 1;
+
+	public static final String NAME = "jsonb";
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public byte[] encode(Object value) {
+		return JSONB.toBytes(value);
+	}
+
+	@Override
+	public <T> T decode(byte[] data, Type type) {
+		return JSONB.parseObject(data, type);
+	}
+}
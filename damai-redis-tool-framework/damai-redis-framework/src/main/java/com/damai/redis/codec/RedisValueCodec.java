@@ -0,0 +1,45 @@
+package com.damai.redis.codec;
+
+import java.lang.reflect.Type;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: redis值编码
+ * 实现类注册为bean之后可以通过redisValueCodec配置名称用于写入，id会写入数据头，读取时按id选择编码，
+ * 所以已经使用过的id不能修改，也不能分配给其他编码
+ * @author: 阿星不是程序员
+ **/
+public interface RedisValueCodec {
+
+	/**
+	 * 编码标识，写入数据头
+	 *
+	 * @return id
+	 */
+	byte getId();
+
+	/**
+	 * 编码名称，用于配置
+	 *
+	 * @return 名称
+	 */
+	String getName();
+
+	/**
+	 * 编码
+	 *
+	 * @param value 对象
+	 * @return 字节
+	 */
+	byte[] encode(Object value);
+
+	/**
+	 * 解码
+	 *
+	 * @param data 字节
+	 * @param type 类型
+	 * @param <T>  T
+	 * @return 对象
+	 */
+	<T> T decode(byte[] data, Type type);
+}
@@ -0,0 +1,131 @@
+package com.damai.redis.codec;
+
+import com.damai.util.StringUtil;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: redis值编码管理
+ * 编码后的数据格式：2字节标记 + 1字节版本 + 1字节编码id + 1字节标志位 + (压缩时4字节原始长度) + 数据，
+ * 文本json的第一个字节不会是0，没有标记的数据按原来的fastjson文本读取，所以两种格式可以同时读取，
+ * 先让所有节点都能读取编码后的数据，再配置redisValueCodec开始写入
+ * 字符串、数字和布尔值始终按文本写入，lua脚本中会直接读取和修改这些值
+ * @author: 阿星不是程序员
+ **/
+public class RedisValueCodecManager {
+
+	private static final byte MAGIC_FIRST = 0x00;
+
+	private static final byte MAGIC_SECOND = (byte) 0xDA;
+
+	private static final byte VERSION = 1;
+
+	private static final byte FLAG_COMPRESSED = 1;
+
+	private static final int HEADER_LENGTH = 5;
+
+	private static final int ORIGINAL_LENGTH_LENGTH = 4;
+
+	private final Map<Byte, RedisValueCodec> codecMap = new HashMap<>(8);
+
+	/**
+	 * 写入使用的编码，为空时按原来的fastjson文本写入
+	 */
+	private final RedisValueCodec writeCodec;
+
+	/**
+	 * 编码后超过这个长度才压缩，小于等于0时不压缩
+	 */
+	private final int compressThreshold;
+
+	private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+	private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+
+	public RedisValueCodecManager(List<RedisValueCodec> codecList, String writeCodecName, int compressThreshold) {
+		RedisValueCodec writeCodec = null;
+		for (RedisValueCodec codec : codecList) {
+			RedisValueCodec existCodec = codecMap.put(codec.getId(), codec);
+			if (Objects.nonNull(existCodec)) {
+				throw new IllegalArgumentException("redis value codec id " + codec.getId() + " already exists");
+			}
+			if (codec.getName().equals(writeCodecName)) {
+				writeCodec = codec;
+			}
+		}
+		if (StringUtil.isNotEmpty(writeCodecName) && Objects.isNull(writeCodec)) {
+			throw new IllegalArgumentException("redis value codec " + writeCodecName + " not exist");
+		}
+		this.writeCodec = writeCodec;
+		this.compressThreshold = compressThreshold;
+	}
+
+	/**
+	 * 这个值写入时是否编码
+	 */
+	public boolean isEncode(Object value) {
+		return Objects.nonNull(writeCodec) && !(value instanceof CharSequence) && !(value instanceof Number)
+				&& !(value instanceof Boolean);
+	}
+
+	public byte[] encode(Object value) {
+		byte[] data = writeCodec.encode(value);
+		boolean compress = compressThreshold > 0 && data.length > compressThreshold;
+		if (!compress) {
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + data.length);
+			putHeader(buffer, (byte) 0);
+			buffer.put(data);
+			return buffer.array();
+		}
+		byte[] compressData = new byte[compressor.maxCompressedLength(data.length)];
+		int compressLength = compressor.compress(data, 0, data.length, compressData, 0);
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + ORIGINAL_LENGTH_LENGTH + compressLength);
+		putHeader(buffer, FLAG_COMPRESSED);
+		buffer.putInt(data.length);
+		buffer.put(compressData, 0, compressLength);
+		return buffer.array();
+	}
+
+	/**
+	 * 是否是编码后的数据，不是的话按原来的文本读取
+	 */
+	public boolean isEncoded(byte[] data) {
+		return data.length >= HEADER_LENGTH && data[0] == MAGIC_FIRST && data[1] == MAGIC_SECOND;
+	}
+
+	public <T> T decode(byte[] data, Type type) {
+		if (data[2] != VERSION) {
+			throw new IllegalStateException("redis value version " + data[2] + " not supported");
+		}
+		RedisValueCodec codec = codecMap.get(data[3]);
+		if (Objects.isNull(codec)) {
+			throw new IllegalStateException("redis value codec id " + data[3] + " not exist");
+		}
+		if ((data[4] & FLAG_COMPRESSED) == 0) {
+			return codec.decode(Arrays.copyOfRange(data, HEADER_LENGTH, data.length), type);
+		}
+		int originalLength = ByteBuffer.wrap(data, HEADER_LENGTH, ORIGINAL_LENGTH_LENGTH).getInt();
+		byte[] originalData = new byte[originalLength];
+		int offset = HEADER_LENGTH + ORIGINAL_LENGTH_LENGTH;
+		decompressor.decompress(data, offset, data.length - offset, originalData, 0);
+		return codec.decode(originalData, type);
+	}
+
+	private void putHeader(ByteBuffer buffer, byte flag) {
+		buffer.put(MAGIC_FIRST);
+		buffer.put(MAGIC_SECOND);
+		buffer.put(VERSION);
+		buffer.put(writeCodec.getId());
+		buffer.put(flag);
+	}
+}
@@ -1,19 +1,140 @@
 package com.damai.redis.config;
 
+import com.damai.core.RedisKeyManage;
+import com.damai.redis.RedisCache;
 import com.damai.redis.RedisCacheImpl;
+import com.damai.redis.codec.JsonbRedisValueCodec;
+import com.damai.redis.codec.RedisValueCodec;
+import com.damai.redis.codec.RedisValueCodecManager;
+import com.damai.redis.hotkey.HotKeyCache;
+import com.damai.redis.hotkey.HotKeyDetector;
+import com.damai.redis.hotkey.HotKeyEndpoint;
+import com.damai.redis.multiple.MultipleCacheManager;
+import com.damai.redis.multiple.MultipleCacheMetrics;
+import com.damai.redis.tracking.TrackingRedisCacheImpl;
+import io.lettuce.core.RedisURI;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
  * @description: redis封装实现配置
  * @author: 阿星不是程序员
  **/
+@Slf4j
 public class RedisCacheAutoConfig {
 
 	@Bean
-	public RedisCacheImpl redisCache(@Qualifier("redisToolStringRedisTemplate") StringRedisTemplate stringRedisTemplate) {
-		return new RedisCacheImpl(stringRedisTemplate);
+	public HotKeyCache hotKeyCache(@Value("${hotKeyThreshold:500}") int hotKeyThreshold,
+								   @Value("${hotKeyWindowMillis:1000}") long hotKeyWindowMillis,
+								   @Value("${hotKeyTopCount:100}") int hotKeyTopCount,
+								   @Value("${hotKeyMirrorMillis:0}") long hotKeyMirrorMillis,
+								   @Value("${hotKeyMirrorKeys:}") String[] hotKeyMirrorKeys) {
+		HotKeyDetector hotKeyDetector = new HotKeyDetector(hotKeyThreshold, hotKeyWindowMillis, hotKeyTopCount);
+		//本地镜像默认关闭，开启时只镜像配置的RedisKeyManage中读多写少的key
+		List<String> mirrorKeyTemplates = Arrays.stream(hotKeyMirrorKeys)
+				.map(String::trim)
+				.filter(name -> !name.isEmpty())
+				.map(name -> RedisKeyManage.valueOf(name).getKey())
+				.toList();
+		return new HotKeyCache(hotKeyDetector, hotKeyMirrorMillis, hotKeyTopCount, mirrorKeyTemplates);
+	}
+
+	@Bean
+	public JsonbRedisValueCodec jsonbRedisValueCodec() {
+		return new JsonbRedisValueCodec();
+	}
+
+	/**
+	 * redisValueCodec为空时按fastjson文本写入，配置编码名称后写入编码后的数据，两种数据都可以读取
+	 */
+	@Bean
+	public RedisValueCodecManager redisValueCodecManager(List<RedisValueCodec> redisValueCodecList,
+														 @Value("${redisValueCodec:}") String redisValueCodec,
+														 @Value("${redisValueCompressThreshold:4096}") int redisValueCompressThreshold) {
+		return new RedisValueCodecManager(redisValueCodecList, redisValueCodec, redisValueCompressThreshold);
+	}
+
+	/**
+	 * redisTracking开启时，redisTrackingKeyList中的key使用redis6的客户端缓存读取，只支持lettuce单机模式
+	 */
+	@Bean
+	public RedisCacheImpl redisCache(@Qualifier("redisToolStringRedisTemplate") StringRedisTemplate stringRedisTemplate,
+									 HotKeyCache hotKeyCache,
+									 RedisValueCodecManager redisValueCodecManager,
+									 RedisConnectionFactory redisConnectionFactory,
+									 @Value("${redisTracking:false}") boolean redisTracking,
+									 @Value("${redisTrackingKeyList:PROGRAM,PROGRAM_GROUP,PROGRAM_SHOW_TIME," +
+											 "PROGRAM_TICKET_CATEGORY_LIST,PROGRAM_CATEGORY_HASH,AREA_PROVINCE_LIST,CHANNEL_DATA}")
+									 RedisKeyManage[] redisTrackingKeyList,
+									 @Value("${redisTrackingMaximumSize:10000}") long redisTrackingMaximumSize) {
+		if (!redisTracking) {
+			return new RedisCacheImpl(stringRedisTemplate, hotKeyCache, redisValueCodecManager);
+		}
+		if (!(redisConnectionFactory instanceof LettuceConnectionFactory lettuceConnectionFactory)
+				|| lettuceConnectionFactory.isRedisSentinelAware() || lettuceConnectionFactory.isClusterAware()) {
+			log.warn("redis client tracking only supports lettuce standalone, fallback to RedisCacheImpl");
+			return new RedisCacheImpl(stringRedisTemplate, hotKeyCache, redisValueCodecManager);
+		}
+		return new TrackingRedisCacheImpl(stringRedisTemplate, hotKeyCache, redisValueCodecManager, createRedisUri(lettuceConnectionFactory),
+				Arrays.asList(redisTrackingKeyList), redisTrackingMaximumSize);
+	}
+
+	private RedisURI createRedisUri(LettuceConnectionFactory lettuceConnectionFactory) {
+		RedisURI redisUri = RedisURI.builder()
+				.withHost(lettuceConnectionFactory.getHostName())
+				.withPort(lettuceConnectionFactory.getPort())
+				.withDatabase(lettuceConnectionFactory.getDatabase())
+				.withSsl(lettuceConnectionFactory.isUseSsl())
+				.withTimeout(Duration.ofMillis(lettuceConnectionFactory.getTimeout()))
+				.build();
+		RedisPassword password = lettuceConnectionFactory.getStandaloneConfiguration().getPassword();
+		if (password.isPresent()) {
+			String username = lettuceConnectionFactory.getStandaloneConfiguration().getUsername();
+			if (username != null) {
+				redisUri.setUsername(username);
+			}
+			redisUri.setPassword(password.get());
+		}
+		return redisUri;
+	}
+
+	@Bean
+	public MultipleCacheManager multipleCacheManager(RedisCache redisCache) {
+		return new MultipleCacheManager(redisCache);
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterBinder.class)
+	public static class MultipleCacheMetricsConfig {
+
+		@Bean
+		public MultipleCacheMetrics multipleCacheMetrics(MultipleCacheManager multipleCacheManager) {
+			return new MultipleCacheMetrics(multipleCacheManager);
+		}
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(Endpoint.class)
+	public static class HotKeyEndpointConfig {
+
+		@Bean
+		public HotKeyEndpoint hotKeyEndpoint(HotKeyCache hotKeyCache) {
+			return new HotKeyEndpoint(hotKeyCache);
+		}
 	}
 }
@@ -0,0 +1,23 @@
+package com.damai.redis.hotkey;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 热点key
+ * @author: 阿星不是程序员
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotKey {
+
+	private String key;
+
+	/**
+	 * 窗口内的估算访问次数
+	 */
+	private Integer count;
+}
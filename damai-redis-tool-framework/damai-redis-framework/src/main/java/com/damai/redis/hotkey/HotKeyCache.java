@@ -0,0 +1,91 @@
+package com.damai.redis.hotkey;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 热点key本地镜像
+ * 热点key的字符串类型的值在本地保存很短的时间，同一个key的并发读取只有一个线程访问redis，
+ * 本节点的写操作会删除镜像，其他节点的写操作最多在镜像时间之后可见，所以只镜像配置的读多写少的key模板，
+ * mirrorMillis小于等于0或者没有配置key模板时只探测不镜像
+ * @author: 阿星不是程序员
+ **/
+public class HotKeyCache {
+
+	private final HotKeyDetector hotKeyDetector;
+
+	private final Cache<String, byte[]> mirror;
+
+	/**
+	 * 允许镜像的key，由配置的key模板生成
+	 */
+	private final Pattern mirrorKeyPattern;
+
+	/**
+	 * @param mirrorKeyTemplates 允许镜像的key模板，和RedisKeyManage中的key相同，%s匹配任意内容
+	 */
+	public HotKeyCache(HotKeyDetector hotKeyDetector, long mirrorMillis, int topCount,
+					   Collection<String> mirrorKeyTemplates) {
+		this.hotKeyDetector = hotKeyDetector;
+		boolean mirrorEnabled = mirrorMillis > 0 && !mirrorKeyTemplates.isEmpty();
+		this.mirror = mirrorEnabled ? Caffeine.newBuilder()
+				.maximumSize(topCount * 2L)
+				.expireAfterWrite(Duration.ofMillis(mirrorMillis))
+				.build() : null;
+		this.mirrorKeyPattern = mirrorEnabled ? compileKeyPattern(mirrorKeyTemplates) : null;
+	}
+
+	/**
+	 * 读取字符串类型的值，热点key优先从本地镜像中读取
+	 * @param key redis中的key
+	 * @param remoteGetter 从redis中读取
+	 * @return 值
+	 */
+	public byte[] get(String key, Function<String, byte[]> remoteGetter) {
+		if (!hotKeyDetector.record(key) || Objects.isNull(mirror) || !mirrorKeyPattern.matcher(key).matches()) {
+			return remoteGetter.apply(key);
+		}
+		//不存在的值不会放入镜像
+		return mirror.get(key, remoteGetter);
+	}
+
+	public void invalidate(String key) {
+		if (Objects.nonNull(mirror)) {
+			mirror.invalidate(key);
+		}
+	}
+
+	public void invalidate(Collection<String> keys) {
+		if (Objects.nonNull(mirror)) {
+			mirror.invalidateAll(keys);
+		}
+	}
+
+	public List<HotKey> getHotKeyList() {
+		return hotKeyDetector.getHotKeyList();
+	}
+
+	/**
+	 * 实际的key是 前缀-模板格式化后的值，前缀部分匹配任意内容
+	 */
+	private static Pattern compileKeyPattern(Collection<String> keyTemplates) {
+		StringJoiner alternatives = new StringJoiner("|", ".*-(?:", ")");
+		for (String keyTemplate : keyTemplates) {
+			StringJoiner template = new StringJoiner(".*");
+			for (String part : keyTemplate.split("%s", -1)) {
+				template.add(Pattern.quote(part));
+			}
+			alternatives.add(template.toString());
+		}
+		return Pattern.compile(alternatives.toString(), Pattern.DOTALL);
+	}
+}
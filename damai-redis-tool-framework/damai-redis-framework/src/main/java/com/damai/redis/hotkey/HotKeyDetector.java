@@ -0,0 +1,117 @@
+package com.damai.redis.hotkey;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 热点key探测
+ * 使用count-min sketch统计每个时间窗口内key的访问次数，只占用固定大小的内存，估算值只会偏大不会偏小，
+ * 窗口内访问次数达到阈值的key记录为热点key，热点key在当前窗口和上一个窗口内都有效，最多记录topCount个
+ * @author: 阿星不是程序员
+ **/
+public class HotKeyDetector {
+
+	private static final int DEPTH = 4;
+
+	private static final int WIDTH = 1 << 14;
+
+	private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+	private final AtomicIntegerArray sketch = new AtomicIntegerArray(DEPTH * WIDTH);
+
+	private final int threshold;
+
+	private final long windowMillis;
+
+	private final int topCount;
+
+	private final AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
+
+	/**
+	 * key:当前窗口的热点key value:窗口内访问次数
+	 */
+	private volatile Map<String, Integer> currentHotKeyMap = new ConcurrentHashMap<>(64);
+
+	/**
+	 * key:上一个窗口的热点key value:窗口内访问次数
+	 */
+	private volatile Map<String, Integer> lastHotKeyMap = new HashMap<>(0);
+
+	public HotKeyDetector(int threshold, long windowMillis, int topCount) {
+		this.threshold = threshold;
+		this.windowMillis = windowMillis;
+		this.topCount = topCount;
+	}
+
+	/**
+	 * 记录一次访问
+	 * @param key key
+	 * @return 是否是热点key
+	 */
+	public boolean record(String key) {
+		rollWindowIfNeeded();
+		int hash = spread(key.hashCode());
+		int count = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			count = Math.min(count, sketch.incrementAndGet(index(row, hash)));
+		}
+		Map<String, Integer> hotKeyMap = currentHotKeyMap;
+		if (count >= threshold) {
+			if (hotKeyMap.containsKey(key) || hotKeyMap.size() < topCount) {
+				hotKeyMap.put(key, count);
+			}
+		}
+		return isHot(key);
+	}
+
+	public boolean isHot(String key) {
+		return currentHotKeyMap.containsKey(key) || lastHotKeyMap.containsKey(key);
+	}
+
+	/**
+	 * 当前的热点key，按访问次数从大到小排列
+	 */
+	public List<HotKey> getHotKeyList() {
+		Map<String, HotKey> hotKeyMap = new HashMap<>(64);
+		lastHotKeyMap.forEach((key, count) -> hotKeyMap.put(key, new HotKey(key, count)));
+		currentHotKeyMap.forEach((key, count) -> hotKeyMap.merge(key, new HotKey(key, count),
+				(oldHotKey, newHotKey) -> oldHotKey.getCount() >= newHotKey.getCount() ? oldHotKey : newHotKey));
+		List<HotKey> hotKeyList = new ArrayList<>(hotKeyMap.values());
+		hotKeyList.sort(Comparator.comparing(HotKey::getCount).reversed());
+		return hotKeyList;
+	}
+
+	private void rollWindowIfNeeded() {
+		long start = windowStart.get();
+		long now = System.currentTimeMillis();
+		if (now - start < windowMillis || !windowStart.compareAndSet(start, now)) {
+			return;
+		}
+		//只有切换成功的线程清空计数，清空期间其他线程的计数会有少量误差，对热点判断没有影响
+		for (int i = 0; i < sketch.length(); i++) {
+			sketch.set(i, 0);
+		}
+		lastHotKeyMap = currentHotKeyMap;
+		currentHotKeyMap = new ConcurrentHashMap<>(64);
+	}
+
+	private int index(int row, int hash) {
+		int h = (hash ^ SEEDS[row]) * 0x01000193;
+		h ^= h >>> 15;
+		return row * WIDTH + (h & (WIDTH - 1));
+	}
+
+	private int spread(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x7FEB352D;
+		hash ^= hash >>> 15;
+		return hash;
+	}
+}
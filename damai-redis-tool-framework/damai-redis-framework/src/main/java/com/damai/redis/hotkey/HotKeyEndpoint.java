@@ -0,0 +1,24 @@
+package com.damai.redis.hotkey;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 热点key查询端点 /actuator/hotkeys
+ * @author: 阿星不是程序员
+ **/
+@AllArgsConstructor
+@Endpoint(id = "hotkeys")
+public class HotKeyEndpoint {
+
+	private final HotKeyCache hotKeyCache;
+
+	@ReadOperation
+	public List<HotKey> hotKeys() {
+		return hotKeyCache.getHotKeyList();
+	}
+}
@@ -0,0 +1,434 @@
+package com.damai.redis.multiple;
+
+import com.damai.redis.RedisCache;
+import com.damai.redis.RedisKeyBuild;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 多级缓存，本地缓存(Caffeine) -> redis -> 加载器
+ * 同一个节点上相同key只有一个线程去加载，redis也没有命中时在分布式锁中再检查一次redis，最后才调用加载器，
+ * 加载器返回null时在本地缓存一个空值
+ * 缓存项在从redis或者加载器中加载时计算一次绝对的过期时间，和值一起放在本地缓存中，写入redis时也使用同一个过期时间，
+ * 本地缓存的过期策略只用这个时间计算，不会有任何io
+ * 配置了提前刷新时，快要过期的缓存项被访问时在后台线程中重新加载，加载完成之前调用方仍然拿到旧值
+ * 通过 {@link MultipleCacheManager#builder(String)} 创建
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+public class MultipleCache<K, V> {
+
+	private static final long NEVER_EXPIRE = Long.MAX_VALUE;
+
+	private final String name;
+
+	private final RedisCache redisCache;
+
+	private final Function<K, RedisKeyBuild> redisKeyFunction;
+
+	private final Function<RedisKeyBuild, V> redisReader;
+
+	private final Function<K, V> loader;
+
+	private final Function<K, Lock> lockFunction;
+
+	private final BiFunction<K, V, Date> expireAtFunction;
+
+	private final Duration nullExpire;
+
+	private final long refreshAheadMillis;
+
+	private final Executor refreshExecutor;
+
+	/**
+	 * 正在后台刷新的key，同一个key同时只有一个刷新任务
+	 */
+	private final Set<K> refreshingKeySet = ConcurrentHashMap.newKeySet();
+
+	private final Cache<K, CacheValue<V>> localCache;
+
+	private final LongAdder localHitCount = new LongAdder();
+
+	private final LongAdder localMissCount = new LongAdder();
+
+	private final LongAdder remoteHitCount = new LongAdder();
+
+	private final LongAdder remoteMissCount = new LongAdder();
+
+	private final LongAdder loadSuccessCount = new LongAdder();
+
+	private final LongAdder loadFailureCount = new LongAdder();
+
+	private final LongAdder totalLoadTime = new LongAdder();
+
+	private final LongAdder refreshCount = new LongAdder();
+
+	MultipleCache(MultipleCacheBuilder<K, V> builder) {
+		this.name = builder.name;
+		this.redisCache = builder.redisCache;
+		this.redisKeyFunction = builder.redisKeyFunction;
+		this.redisReader = builder.redisReader;
+		this.loader = builder.loader;
+		this.lockFunction = builder.lockFunction;
+		this.expireAtFunction = builder.expireAtFunction;
+		this.nullExpire = builder.nullExpire;
+		this.refreshAheadMillis = Objects.isNull(builder.refreshAhead) ? 0 : builder.refreshAhead.toMillis();
+		this.refreshExecutor = builder.refreshExecutor;
+		this.localCache = Caffeine.newBuilder()
+				.maximumSize(builder.maximumSize)
+				.expireAfter(new Expiry<K, CacheValue<V>>() {
+					@Override
+					public long expireAfterCreate(@NonNull final K key, @NonNull final CacheValue<V> value,
+												  final long currentTime) {
+						return value.expireNanos();
+					}
+
+					@Override
+					public long expireAfterUpdate(@NonNull final K key, @NonNull final CacheValue<V> value,
+												  final long currentTime, @NonNegative final long currentDuration) {
+						return value.expireNanos();
+					}
+
+					@Override
+					public long expireAfterRead(@NonNull final K key, @NonNull final CacheValue<V> value,
+												final long currentTime, @NonNegative final long currentDuration) {
+						return currentDuration;
+					}
+				})
+				.build();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 依次从本地缓存、redis、加载器中获取
+	 */
+	public V get(K key) {
+		return get(key, loader);
+	}
+
+	/**
+	 * 依次从本地缓存、redis、指定的加载器中获取，用于加载时需要调用方上下文的场景
+	 */
+	public V get(K key, Function<K, V> loader) {
+		CacheValue<V> cacheValue = localCache.getIfPresent(key);
+		if (Objects.nonNull(cacheValue)) {
+			localHitCount.increment();
+			refreshIfNeeded(key, cacheValue, loader);
+			return cacheValue.value;
+		}
+		localMissCount.increment();
+		//Caffeine的get对相同的key只会有一个线程执行加载
+		//返回null时Caffeine不会缓存
+		cacheValue = localCache.get(key, k -> loadRemote(k, loader));
+		return Objects.isNull(cacheValue) ? null : cacheValue.value;
+	}
+
+	/**
+	 * 只从本地缓存中获取
+	 */
+	public V getIfPresent(K key) {
+		CacheValue<V> cacheValue = localCache.getIfPresent(key);
+		if (Objects.nonNull(cacheValue)) {
+			localHitCount.increment();
+			return cacheValue.value;
+		}
+		localMissCount.increment();
+		return null;
+	}
+
+	/**
+	 * 从本地缓存、redis中获取，都没有的话不调用加载器
+	 */
+	public V getWithoutLoad(K key) {
+		return get(key, null);
+	}
+
+	/**
+	 * 跳过本地缓存，从redis、加载器中获取
+	 */
+	public V getRemote(K key) {
+		return getRemote(key, loader);
+	}
+
+	/**
+	 * 跳过本地缓存，从redis、指定的加载器中获取
+	 */
+	public V getRemote(K key, Function<K, V> loader) {
+		CacheValue<V> cacheValue = loadRemote(key, loader);
+		return Objects.isNull(cacheValue) ? null : cacheValue.value;
+	}
+
+	/**
+	 * 数据源已经修改时重新加载，加锁后删除redis中的旧值并调用加载器，新值写入redis和本地缓存，
+	 * 其他节点的本地缓存由调用方通知删除，删除后从redis中读取新值，不需要再调用加载器
+	 */
+	public V reload(K key) {
+		RedisKeyBuild redisKey = Objects.isNull(redisKeyFunction) ? null : redisKeyFunction.apply(key);
+		Lock lock = Objects.isNull(lockFunction) ? null : lockFunction.apply(key);
+		CacheValue<V> cacheValue;
+		if (Objects.nonNull(lock)) {
+			lock.lock();
+		}
+		try {
+			if (Objects.nonNull(redisKey)) {
+				redisCache.del(redisKey);
+			}
+			cacheValue = load(key, loader, redisKey);
+		}
+		finally {
+			if (Objects.nonNull(lock)) {
+				lock.unlock();
+			}
+		}
+		if (Objects.isNull(cacheValue)) {
+			localCache.invalidate(key);
+			return null;
+		}
+		localCache.put(key, cacheValue);
+		return cacheValue.value;
+	}
+
+	/**
+	 * 删除本地缓存，redis中的数据由调用方负责删除
+	 */
+	public void invalidate(K key) {
+		localCache.invalidate(key);
+	}
+
+	public void invalidateAll() {
+		localCache.invalidateAll();
+	}
+
+	public MultipleCacheStats stats() {
+		return new MultipleCacheStats(name, localCache.estimatedSize(), localHitCount.sum(), localMissCount.sum(),
+				remoteHitCount.sum(), remoteMissCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+				totalLoadTime.sum(), refreshCount.sum());
+	}
+
+	/**
+	 * 剩余时间小于提前刷新的时间时，提交一个后台刷新任务，任务被拒绝的话等待正常过期
+	 */
+	private void refreshIfNeeded(K key, CacheValue<V> cacheValue, Function<K, V> loader) {
+		if (Objects.isNull(refreshExecutor) || Objects.isNull(loader) || cacheValue.refreshAt > System.currentTimeMillis()) {
+			return;
+		}
+		if (!refreshingKeySet.add(key)) {
+			return;
+		}
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					refresh(key, cacheValue, loader);
+				}
+				catch (Exception e) {
+					log.error("multiple cache {} refresh error key : {}", name, key, e);
+				}
+				finally {
+					refreshingKeySet.remove(key);
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			refreshingKeySet.remove(key);
+		}
+	}
+
+	/**
+	 * 重新加载并替换本地缓存，加锁后如果redis中的值已经被其他节点刷新(过期时间晚于旧值)就直接使用，
+	 * 否则调用加载器，新值的过期时间没有推后的话不再刷新，等待正常过期
+	 */
+	private void refresh(K key, CacheValue<V> oldCacheValue, Function<K, V> loader) {
+		RedisKeyBuild redisKey = Objects.isNull(redisKeyFunction) ? null : redisKeyFunction.apply(key);
+		Lock lock = Objects.isNull(lockFunction) ? null : lockFunction.apply(key);
+		CacheValue<V> cacheValue = null;
+		if (Objects.nonNull(lock)) {
+			lock.lock();
+		}
+		try {
+			if (Objects.nonNull(redisKey)) {
+				V value = readRemote(redisKey);
+				if (Objects.nonNull(value)) {
+					long expireAt = expireAt(key, value);
+					if (expireAt > oldCacheValue.expireAt) {
+						cacheValue = new CacheValue<>(value, expireAt, refreshAt(expireAt));
+					}
+				}
+			}
+			if (Objects.isNull(cacheValue)) {
+				cacheValue = load(key, loader, redisKey);
+			}
+		}
+		finally {
+			if (Objects.nonNull(lock)) {
+				lock.unlock();
+			}
+		}
+		refreshCount.increment();
+		if (Objects.isNull(cacheValue) || Objects.isNull(cacheValue.value)) {
+			return;
+		}
+		if (cacheValue.expireAt <= oldCacheValue.expireAt) {
+			cacheValue = new CacheValue<>(cacheValue.value, cacheValue.expireAt, NEVER_EXPIRE);
+		}
+		//刷新期间被删除的话不再放回
+		CacheValue<V> newCacheValue = cacheValue;
+		localCache.asMap().computeIfPresent(key, (k, v) -> v == oldCacheValue ? newCacheValue : v);
+	}
+
+	private CacheValue<V> loadRemote(K key, Function<K, V> loader) {
+		RedisKeyBuild redisKey = Objects.isNull(redisKeyFunction) ? null : redisKeyFunction.apply(key);
+		if (Objects.nonNull(redisKey)) {
+			V value = readRemote(redisKey);
+			if (Objects.nonNull(value)) {
+				remoteHitCount.increment();
+				return newCacheValue(key, value);
+			}
+			remoteMissCount.increment();
+		}
+		if (Objects.isNull(loader)) {
+			return null;
+		}
+		if (Objects.isNull(lockFunction)) {
+			return load(key, loader, redisKey);
+		}
+		Lock lock = lockFunction.apply(key);
+		lock.lock();
+		try {
+			//拿到锁之后再检查一次redis，其他节点可能已经加载完成
+			if (Objects.nonNull(redisKey)) {
+				V value = readRemote(redisKey);
+				if (Objects.nonNull(value)) {
+					return newCacheValue(key, value);
+				}
+			}
+			return load(key, loader, redisKey);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private CacheValue<V> load(K key, Function<K, V> loader, RedisKeyBuild redisKey) {
+		long start = System.nanoTime();
+		V value;
+		try {
+			value = loader.apply(key);
+		}
+		catch (RuntimeException e) {
+			loadFailureCount.increment();
+			throw e;
+		}
+		finally {
+			totalLoadTime.add(System.nanoTime() - start);
+		}
+		loadSuccessCount.increment();
+		if (Objects.isNull(value)) {
+			return nullValue();
+		}
+		long expireAt = expireAt(key, value);
+		if (Objects.nonNull(redisKey)) {
+			if (expireAt == NEVER_EXPIRE) {
+				redisCache.set(redisKey, value);
+			}
+			else {
+				long ttl = expireAt - System.currentTimeMillis();
+				if (ttl > 0) {
+					redisCache.set(redisKey, value, ttl, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+		return new CacheValue<>(value, expireAt, refreshAt(expireAt));
+	}
+
+	private CacheValue<V> newCacheValue(K key, V value) {
+		long expireAt = expireAt(key, value);
+		return new CacheValue<>(value, expireAt, refreshAt(expireAt));
+	}
+
+	/**
+	 * @return 开始提前刷新的时间，不需要刷新时返回 {@link #NEVER_EXPIRE}
+	 */
+	private long refreshAt(long expireAt) {
+		if (refreshAheadMillis <= 0 || expireAt == NEVER_EXPIRE) {
+			return NEVER_EXPIRE;
+		}
+		return expireAt - refreshAheadMillis;
+	}
+
+	private V readRemote(RedisKeyBuild redisKey) {
+		V value = redisReader.apply(redisKey);
+		if (value instanceof Collection<?> collection && collection.isEmpty()) {
+			return null;
+		}
+		return value;
+	}
+
+	/**
+	 * 加载结果为null时的空值缓存，没有开启空值缓存时返回null
+	 */
+	private CacheValue<V> nullValue() {
+		if (Objects.isNull(nullExpire) || nullExpire.isZero()) {
+			return null;
+		}
+		return new CacheValue<>(null, System.currentTimeMillis() + nullExpire.toMillis(), NEVER_EXPIRE);
+	}
+
+	/**
+	 * @return 绝对的过期时间(毫秒时间戳)，没有配置过期时间时返回 {@link #NEVER_EXPIRE}
+	 */
+	private long expireAt(K key, V value) {
+		if (Objects.isNull(expireAtFunction)) {
+			return NEVER_EXPIRE;
+		}
+		Date expireAt = expireAtFunction.apply(key, value);
+		//过期时间未知的话不缓存在本地
+		return Objects.isNull(expireAt) ? 0 : expireAt.getTime();
+	}
+
+	/**
+	 * 本地缓存的值，value为null表示空值缓存
+	 */
+	private static class CacheValue<V> {
+
+		private final V value;
+
+		private final long expireAt;
+
+		private final long refreshAt;
+
+		private CacheValue(V value, long expireAt, long refreshAt) {
+			this.value = value;
+			this.expireAt = expireAt;
+			this.refreshAt = refreshAt;
+		}
+
+		private long expireNanos() {
+			if (expireAt == NEVER_EXPIRE) {
+				return Long.MAX_VALUE;
+			}
+			return TimeUnit.MILLISECONDS.toNanos(Math.max(expireAt - System.currentTimeMillis(), 0));
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.damai.redis.multiple;
+
+import com.damai.redis.RedisCache;
+import com.damai.redis.RedisKeyBuild;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 多级缓存构建
+ * @author: 阿星不是程序员
+ **/
+public class MultipleCacheBuilder<K, V> {
+
+	final String name;
+
+	final RedisCache redisCache;
+
+	private final Consumer<MultipleCache<?, ?>> registry;
+
+	long maximumSize = 10000;
+
+	Function<K, RedisKeyBuild> redisKeyFunction;
+
+	Function<RedisKeyBuild, V> redisReader;
+
+	Function<K, V> loader;
+
+	Function<K, Lock> lockFunction;
+
+	BiFunction<K, V, Date> expireAtFunction;
+
+	Duration nullExpire = Duration.ZERO;
+
+	Duration refreshAhead;
+
+	Executor refreshExecutor;
+
+	MultipleCacheBuilder(String name, RedisCache redisCache, Consumer<MultipleCache<?, ?>> registry) {
+		this.name = name;
+		this.redisCache = redisCache;
+		this.registry = registry;
+	}
+
+	/**
+	 * 本地缓存的最大数量
+	 */
+	public MultipleCacheBuilder<K, V> maximumSize(long maximumSize) {
+		this.maximumSize = maximumSize;
+		return this;
+	}
+
+	/**
+	 * redis中的key，不设置的话只有本地缓存
+	 */
+	public MultipleCacheBuilder<K, V> redisKey(Function<K, RedisKeyBuild> redisKeyFunction) {
+		this.redisKeyFunction = redisKeyFunction;
+		return this;
+	}
+
+	/**
+	 * 以字符串结构从redis读取
+	 */
+	public MultipleCacheBuilder<K, V> redisValueType(Class<V> clazz) {
+		this.redisReader = redisKeyBuild -> redisCache.get(redisKeyBuild, clazz);
+		return this;
+	}
+
+	/**
+	 * 自定义从redis读取的方式，比如hash、list结构
+	 */
+	public MultipleCacheBuilder<K, V> redisReader(Function<RedisKeyBuild, V> redisReader) {
+		this.redisReader = redisReader;
+		return this;
+	}
+
+	/**
+	 * 本地缓存和redis都没有命中时的加载器
+	 */
+	public MultipleCacheBuilder<K, V> loader(Function<K, V> loader) {
+		this.loader = loader;
+		return this;
+	}
+
+	/**
+	 * 调用加载器之前获取的分布式锁，防止多个节点同时加载
+	 */
+	public MultipleCacheBuilder<K, V> lock(Function<K, Lock> lockFunction) {
+		this.lockFunction = lockFunction;
+		return this;
+	}
+
+	/**
+	 * 计算缓存项绝对的过期时间，只在加载时计算一次，本地缓存和redis使用同一个过期时间
+	 * 返回null表示过期时间未知，不放入本地缓存，也不写入redis
+	 */
+	public MultipleCacheBuilder<K, V> expireAt(BiFunction<K, V, Date> expireAtFunction) {
+		this.expireAtFunction = expireAtFunction;
+		return this;
+	}
+
+	/**
+	 * 缓存项在加载之后多久过期
+	 */
+	public MultipleCacheBuilder<K, V> expireAfterWrite(Duration duration) {
+		this.expireAtFunction = (key, value) -> new Date(System.currentTimeMillis() + duration.toMillis());
+		return this;
+	}
+
+	/**
+	 * 加载结果为null时本地缓存空值的时间，默认不缓存空值
+	 */
+	public MultipleCacheBuilder<K, V> nullExpire(Duration nullExpire) {
+		this.nullExpire = nullExpire;
+		return this;
+	}
+
+	/**
+	 * 缓存项剩余时间小于refreshAhead时，访问会触发在executor中后台重新加载，加载完成之前返回旧值
+	 */
+	public MultipleCacheBuilder<K, V> refreshAhead(Duration refreshAhead, Executor refreshExecutor) {
+		this.refreshAhead = refreshAhead;
+		this.refreshExecutor = refreshExecutor;
+		return this;
+	}
+
+	public MultipleCache<K, V> build() {
+		if (Objects.nonNull(redisKeyFunction) && Objects.isNull(redisReader)) {
+			throw new IllegalArgumentException("multiple cache " + name + " redisReader is null");
+		}
+		MultipleCache<K, V> multipleCache = new MultipleCache<>(this);
+		registry.accept(multipleCache);
+		return multipleCache;
+	}
+}
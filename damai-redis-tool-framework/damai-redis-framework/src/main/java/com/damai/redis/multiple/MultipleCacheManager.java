@@ -0,0 +1,56 @@
+package com.damai.redis.multiple;
+
+import com.damai.redis.RedisCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 多级缓存管理，创建的缓存都会注册到这里，用于统计和按名称清除
+ * @author: 阿星不是程序员
+ **/
+public class MultipleCacheManager {
+
+	private final RedisCache redisCache;
+
+	private final Map<String, MultipleCache<?, ?>> cacheMap = new ConcurrentHashMap<>(16);
+
+	private final List<Consumer<MultipleCache<?, ?>>> registerListenerList = new CopyOnWriteArrayList<>();
+
+	public MultipleCacheManager(RedisCache redisCache) {
+		this.redisCache = redisCache;
+	}
+
+	public <K, V> MultipleCacheBuilder<K, V> builder(String name) {
+		return new MultipleCacheBuilder<>(name, redisCache, this::register);
+	}
+
+	public MultipleCache<?, ?> getCache(String name) {
+		return cacheMap.get(name);
+	}
+
+	public Collection<MultipleCache<?, ?>> getCaches() {
+		return new ArrayList<>(cacheMap.values());
+	}
+
+	/**
+	 * 已经注册的缓存会立即通知
+	 */
+	public void addRegisterListener(Consumer<MultipleCache<?, ?>> listener) {
+		registerListenerList.add(listener);
+		cacheMap.values().forEach(listener);
+	}
+
+	private void register(MultipleCache<?, ?> multipleCache) {
+		if (cacheMap.putIfAbsent(multipleCache.getName(), multipleCache) != null) {
+			throw new IllegalArgumentException("multiple cache " + multipleCache.getName() + " already exists");
+		}
+		registerListenerList.forEach(listener -> listener.accept(multipleCache));
+	}
+}
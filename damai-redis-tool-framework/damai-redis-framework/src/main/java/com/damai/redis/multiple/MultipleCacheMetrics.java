@@ -0,0 +1,56 @@
+package com.damai.redis.multiple;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 多级缓存指标，按缓存名称和命中层级打标签
+ * @author: 阿星不是程序员
+ **/
+public class MultipleCacheMetrics implements MeterBinder {
+
+	private final MultipleCacheManager multipleCacheManager;
+
+	public MultipleCacheMetrics(MultipleCacheManager multipleCacheManager) {
+		this.multipleCacheManager = multipleCacheManager;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		multipleCacheManager.addRegisterListener(multipleCache -> bind(registry, multipleCache));
+	}
+
+	private void bind(MeterRegistry registry, MultipleCache<?, ?> multipleCache) {
+		String name = multipleCache.getName();
+		counter(registry, multipleCache, "multiple.cache.gets", "local", "hit", s -> s.stats().getLocalHitCount());
+		counter(registry, multipleCache, "multiple.cache.gets", "local", "miss", s -> s.stats().getLocalMissCount());
+		counter(registry, multipleCache, "multiple.cache.gets", "remote", "hit", s -> s.stats().getRemoteHitCount());
+		counter(registry, multipleCache, "multiple.cache.gets", "remote", "miss", s -> s.stats().getRemoteMissCount());
+		counter(registry, multipleCache, "multiple.cache.loads", "source", "success", s -> s.stats().getLoadSuccessCount());
+		counter(registry, multipleCache, "multiple.cache.loads", "source", "failure", s -> s.stats().getLoadFailureCount());
+		counter(registry, multipleCache, "multiple.cache.loads", "refresh", "success", s -> s.stats().getRefreshCount());
+		FunctionCounter.builder("multiple.cache.load.duration", multipleCache,
+						s -> s.stats().getTotalLoadTime() / (double) TimeUnit.SECONDS.toNanos(1))
+				.tag("cache", name)
+				.baseUnit("seconds")
+				.register(registry);
+		Gauge.builder("multiple.cache.size", multipleCache, s -> s.stats().getLocalSize())
+				.tag("cache", name)
+				.register(registry);
+	}
+
+	private void counter(MeterRegistry registry, MultipleCache<?, ?> multipleCache, String meterName, String level,
+						 String result, ToDoubleFunction<MultipleCache<?, ?>> function) {
+		FunctionCounter.builder(meterName, multipleCache, function)
+				.tag("cache", multipleCache.getName())
+				.tag("level", level)
+				.tag("result", result)
+				.register(registry);
+	}
+}
@@ -0,0 +1,47 @@
+package com.damai.redis.multiple;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 多级缓存统计
+ * @author: 阿星不是程序员
+ **/
+@Data
+@AllArgsConstructor
+public class MultipleCacheStats {
+
+	private String name;
+
+	private long localSize;
+
+	private long localHitCount;
+
+	private long localMissCount;
+
+	private long remoteHitCount;
+
+	private long remoteMissCount;
+
+	private long loadSuccessCount;
+
+	private long loadFailureCount;
+
+	/**
+	 * 加载器总耗时(纳秒)
+	 */
+	private long totalLoadTime;
+
+	private long refreshCount;
+
+	public double getLocalHitRate() {
+		long requestCount = localHitCount + localMissCount;
+		return requestCount == 0 ? 1.0 : (double) localHitCount / requestCount;
+	}
+
+	public double getAverageLoadPenalty() {
+		long loadCount = loadSuccessCount + loadFailureCount;
+		return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+	}
+}
@@ -0,0 +1,247 @@
+package com.damai.redis.tracking;
+
+import com.damai.core.RedisKeyManage;
+import com.damai.redis.CacheUtil;
+import com.damai.redis.RedisCacheImpl;
+import com.damai.redis.RedisKeyBuild;
+import com.damai.redis.codec.RedisValueCodecManager;
+import com.damai.redis.hotkey.HotKeyCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 基于redis6客户端缓存的redis方法实现
+ * 指定的key通过单独的RESP3连接读取，连接开启了CLIENT TRACKING，读过的key在本地保存，
+ * key被任意客户端修改或者删除时，redis服务端推送失效消息，收到后删除本地的值，不需要业务代码处理失效。
+ * 连接断开期间服务端不再跟踪，所以断开时清空本地的值并直接读取redis，重连并重新开启跟踪之后恢复
+ * 其他的key和所有的写操作与RedisCacheImpl相同
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+public class TrackingRedisCacheImpl extends RedisCacheImpl implements AutoCloseable {
+
+	private static final String INVALIDATE = "invalidate";
+
+	private final RedisClient redisClient;
+
+	private final StatefulRedisConnection<String, byte[]> connection;
+
+	private final List<Pattern> trackingKeyPatternList;
+
+	/**
+	 * key:redis中的key value:字符串类型的值
+	 */
+	private final Cache<String, Optional<byte[]>> valueCache;
+
+	/**
+	 * key:redis中的key value:hash中读取过的field和值
+	 */
+	private final Cache<String, Map<String, Optional<String>>> hashCache;
+
+	/**
+	 * 每次失效都增加，读取redis前后不一致说明读取期间有失效，这次读到的值不放入本地
+	 */
+	private final AtomicLong invalidationSequence = new AtomicLong();
+
+	private volatile boolean tracking;
+
+	public TrackingRedisCacheImpl(StringRedisTemplate redisTemplate, HotKeyCache hotKeyCache,
+								  RedisValueCodecManager redisValueCodecManager, RedisURI redisUri,
+								  List<RedisKeyManage> trackingKeyList, long maximumSize) {
+		super(redisTemplate, hotKeyCache, redisValueCodecManager);
+		this.trackingKeyPatternList = trackingKeyList.stream().map(TrackingRedisCacheImpl::toPattern).toList();
+		this.valueCache = Caffeine.newBuilder().maximumSize(maximumSize).build();
+		this.hashCache = Caffeine.newBuilder().maximumSize(maximumSize).build();
+		this.redisClient = RedisClient.create(redisUri);
+		//失效消息只能通过RESP3的推送发送到同一个连接
+		this.redisClient.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP3).build());
+		this.redisClient.addListener(new TrackingConnectionStateListener());
+		this.connection = redisClient.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+		this.connection.addListener(message -> {
+			if (INVALIDATE.equals(message.getType())) {
+				List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+				invalidate((List<String>) content.get(1));
+			}
+		});
+		this.connection.sync().clientTracking(TrackingArgs.Builder.enabled());
+		this.tracking = true;
+	}
+
+	@Override
+	public <T> T get(RedisKeyBuild redisKeyBuild, Class<T> clazz) {
+		CacheUtil.checkNotBlank(redisKeyBuild);
+		String key = redisKeyBuild.getRelKey();
+		if (!isTracking(key)) {
+			return super.get(redisKeyBuild, clazz);
+		}
+		return decode(getTrackedValue(key), clazz);
+	}
+
+	@Override
+	public <T> List<T> getValueIsList(RedisKeyBuild redisKeyBuild, Class<T> clazz) {
+		CacheUtil.checkNotBlank(redisKeyBuild);
+		String key = redisKeyBuild.getRelKey();
+		if (!isTracking(key)) {
+			return super.getValueIsList(redisKeyBuild, clazz);
+		}
+		return decodeList(getTrackedValue(key), clazz);
+	}
+
+	@Override
+	public <T> T getForHash(RedisKeyBuild redisKeyBuild, String hashKey, Class<T> clazz) {
+		CacheUtil.checkNotBlank(redisKeyBuild);
+		CacheUtil.checkNotBlank(hashKey);
+		String key = redisKeyBuild.getRelKey();
+		if (!isTracking(key)) {
+			return super.getForHash(redisKeyBuild, hashKey, clazz);
+		}
+		String value = getTrackedHashValue(key, hashKey);
+		if (String.class.isAssignableFrom(clazz)) {
+			return (T) value;
+		}
+		return getComplex(value, clazz);
+	}
+
+	@Override
+	public void close() {
+		tracking = false;
+		connection.close();
+		redisClient.shutdown();
+	}
+
+	private boolean isTracking(String key) {
+		if (!tracking) {
+			return false;
+		}
+		for (Pattern pattern : trackingKeyPatternList) {
+			if (pattern.matcher(key).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private byte[] getTrackedValue(String key) {
+		Optional<byte[]> value = valueCache.getIfPresent(key);
+		if (Objects.nonNull(value)) {
+			return value.orElse(null);
+		}
+		long sequence = invalidationSequence.get();
+		Optional<byte[]> loadValue = Optional.ofNullable(connection.sync().get(key));
+		valueCache.asMap().compute(key, (k, oldValue) -> isInvalidated(sequence) ? oldValue : loadValue);
+		return loadValue.orElse(null);
+	}
+
+	private String getTrackedHashValue(String key, String hashKey) {
+		Map<String, Optional<String>> fieldMap = hashCache.getIfPresent(key);
+		if (Objects.nonNull(fieldMap)) {
+			Optional<String> value = fieldMap.get(hashKey);
+			if (Objects.nonNull(value)) {
+				return value.orElse(null);
+			}
+		}
+		long sequence = invalidationSequence.get();
+		Optional<String> loadValue = Optional.ofNullable(connection.sync().hget(key, hashKey))
+				.map(data -> new String(data, StandardCharsets.UTF_8));
+		hashCache.asMap().compute(key, (k, oldFieldMap) -> {
+			if (isInvalidated(sequence)) {
+				return oldFieldMap;
+			}
+			Map<String, Optional<String>> newFieldMap = Objects.isNull(oldFieldMap) ? new ConcurrentHashMap<>(16) : oldFieldMap;
+			newFieldMap.put(hashKey, loadValue);
+			return newFieldMap;
+		});
+		return loadValue.orElse(null);
+	}
+
+	/**
+	 * 读取redis期间发生过失效时，读到的值可能已经过期，不能放入本地
+	 * 失效和放入本地都在同一个key的compute中执行，检查序号和放入之间不会插入这个key的失效
+	 */
+	private boolean isInvalidated(long sequence) {
+		return invalidationSequence.get() != sequence;
+	}
+
+	private void invalidate(List<String> keyList) {
+		//为null表示服务端清空了跟踪表(例如执行了flushall)，或者连接状态变化
+		if (Objects.isNull(keyList)) {
+			invalidationSequence.incrementAndGet();
+			valueCache.invalidateAll();
+			hashCache.invalidateAll();
+			return;
+		}
+		for (String key : keyList) {
+			valueCache.asMap().compute(key, (k, v) -> {
+				invalidationSequence.incrementAndGet();
+				return null;
+			});
+			hashCache.asMap().compute(key, (k, v) -> {
+				invalidationSequence.incrementAndGet();
+				return null;
+			});
+		}
+	}
+
+	private static Pattern toPattern(RedisKeyManage redisKeyManage) {
+		String[] partArray = redisKeyManage.getKey().split("%s", -1);
+		StringBuilder regex = new StringBuilder(".*-");
+		for (int i = 0; i < partArray.length; i++) {
+			if (i > 0) {
+				//占位符的值是id，不包含分隔符，避免d_mai_program_%s匹配到d_mai_program_group_1这样的key
+				regex.append("[^_:]+");
+			}
+			regex.append(Pattern.quote(partArray[i]));
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	private class TrackingConnectionStateListener implements RedisConnectionStateListener {
+
+		@Override
+		public void onRedisDisconnected(RedisChannelHandler<?, ?> redisChannelHandler) {
+			tracking = false;
+			invalidate(null);
+		}
+
+		@Override
+		public void onRedisConnected(RedisChannelHandler<?, ?> redisChannelHandler,
+									 SocketAddress socketAddress) {
+			//首次连接由构造方法开启跟踪，这里处理重连，在事件循环线程中不能同步等待
+			if (Objects.isNull(connection)) {
+				return;
+			}
+			connection.async().clientTracking(TrackingArgs.Builder.enabled()).whenComplete((result, throwable) -> {
+				if (Objects.nonNull(throwable)) {
+					log.error("redis client tracking enable error", throwable);
+					return;
+				}
+				invalidate(null);
+				tracking = true;
+			});
+		}
+	}
+}
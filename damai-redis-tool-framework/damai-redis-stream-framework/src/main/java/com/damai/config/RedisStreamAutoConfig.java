@@ -4,8 +4,11 @@ import com.damai.*;
 import com.damai.constant.RedisStreamConstant;
 import com.damai.enums.BaseCode;
 import com.damai.exception.DaMaiFrameException;
+import com.damai.invalidation.CacheInvalidationBus;
+import com.damai.invalidation.CacheInvalidationProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -28,7 +31,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @author: 阿星不是程序员
  **/
 @Slf4j
-@EnableConfigurationProperties(RedisStreamConfigProperties.class)
+@EnableConfigurationProperties({RedisStreamConfigProperties.class, CacheInvalidationProperties.class})
 public class RedisStreamAutoConfig {
 
 	@Bean
@@ -82,6 +85,37 @@ public class RedisStreamAutoConfig {
 		return container;
 	}
 
+	@Bean(destroyMethod = "shutdown")
+	@ConditionalOnProperty(prefix = CacheInvalidationProperties.PREFIX, name = "streamName")
+	public CacheInvalidationBus cacheInvalidationBus(StringRedisTemplate stringRedisTemplate,
+													 CacheInvalidationProperties cacheInvalidationProperties) {
+		return new CacheInvalidationBus(stringRedisTemplate, cacheInvalidationProperties);
+	}
+
+	/**
+	 * 本地缓存失效广播的监听，每个节点都从最新的位置开始接收所有消息
+	 */
+	@Bean(destroyMethod = "stop")
+	@ConditionalOnProperty(prefix = CacheInvalidationProperties.PREFIX, name = "streamName")
+	public StreamMessageListenerContainer<String, ObjectRecord<String, String>> cacheInvalidationListenerContainer(
+			RedisConnectionFactory redisConnectionFactory,
+			CacheInvalidationProperties cacheInvalidationProperties,
+			CacheInvalidationBus cacheInvalidationBus) {
+		StreamMessageListenerContainer.StreamMessageListenerContainerOptions<String, ObjectRecord<String, String>>
+				options = StreamMessageListenerContainer.StreamMessageListenerContainerOptions.builder()
+				.pollTimeout(Duration.ofSeconds(1))
+				.batchSize(100)
+				.targetType(String.class)
+				.errorHandler(t -> log.error("本地缓存失效广播出现异常", t))
+				.build();
+		StreamMessageListenerContainer<String, ObjectRecord<String, String>> container =
+				StreamMessageListenerContainer.create(redisConnectionFactory, options);
+		container.receive(StreamOffset.create(cacheInvalidationProperties.getStreamName(), ReadOffset.latest()),
+				cacheInvalidationBus);
+		container.start();
+		return container;
+	}
+
 	public ThreadPoolExecutor createThreadPool() {
 		int coreThreadCount = Runtime.getRuntime().availableProcessors();
 		AtomicInteger threadCount = new AtomicInteger(1);
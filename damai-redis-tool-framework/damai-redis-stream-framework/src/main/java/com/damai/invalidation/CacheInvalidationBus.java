@@ -0,0 +1,194 @@
+package com.damai.invalidation;
+
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.stream.StreamListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 本地缓存失效广播
+ * 各个缓存区域注册处理器后，任意节点发布的失效key会在一个周期内合并去重，每个周期最多发送一条消息，
+ * 其他节点收到后删除对应区域的本地缓存。每个节点在每个区域上的消息都带有连续的序号，
+ * 接收方发现序号不连续说明丢失了消息(stream被裁剪或者连接中断)，直接清空这个区域
+ * 发布方自己的本地缓存由调用方删除，不会处理自己发出的消息
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+public class CacheInvalidationBus implements StreamListener<String, ObjectRecord<String, String>> {
+
+	private final String nodeId = UUID.randomUUID().toString();
+
+	private final StringRedisTemplate stringRedisTemplate;
+
+	private final CacheInvalidationProperties cacheInvalidationProperties;
+
+	/**
+	 * key:区域 value:处理器
+	 */
+	private final Map<String, CacheInvalidationHandler> handlerMap = new ConcurrentHashMap<>(16);
+
+	/**
+	 * key:区域 value:等待发送的失效key
+	 */
+	private final Map<String, Set<String>> pendingMap = new ConcurrentHashMap<>(16);
+
+	/**
+	 * key:区域 value:本节点在这个区域上发送的序号
+	 */
+	private final Map<String, AtomicLong> sequenceMap = new ConcurrentHashMap<>(16);
+
+	/**
+	 * key:发送节点-区域 value:收到的最后一个序号
+	 */
+	private final Map<String, Long> receivedSequenceMap = new ConcurrentHashMap<>(64);
+
+	private final ScheduledThreadPoolExecutor flushExecutor;
+
+	public CacheInvalidationBus(StringRedisTemplate stringRedisTemplate,
+								CacheInvalidationProperties cacheInvalidationProperties) {
+		this.stringRedisTemplate = stringRedisTemplate;
+		this.cacheInvalidationProperties = cacheInvalidationProperties;
+		this.flushExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r);
+			thread.setName("cache-invalidation-flush-task");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long tickMillis = cacheInvalidationProperties.getTickMillis();
+		this.flushExecutor.scheduleWithFixedDelay(this::flushSafely, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void register(String region, CacheInvalidationHandler handler) {
+		handlerMap.put(region, handler);
+	}
+
+	/**
+	 * 发布失效key，在下一个周期合并发送
+	 */
+	public void publish(String region, String key) {
+		pendingMap.compute(region, (k, keySet) -> {
+			if (Objects.isNull(keySet)) {
+				keySet = new HashSet<>();
+			}
+			keySet.add(key);
+			return keySet;
+		});
+	}
+
+	public void publish(String region, Collection<String> keyList) {
+		pendingMap.compute(region, (k, keySet) -> {
+			if (Objects.isNull(keySet)) {
+				keySet = new HashSet<>();
+			}
+			keySet.addAll(keyList);
+			return keySet;
+		});
+	}
+
+	public void shutdown() {
+		flushExecutor.shutdown();
+		flushSafely();
+	}
+
+	private void flushSafely() {
+		try {
+			flush();
+		}
+		catch (Exception e) {
+			log.error("cache invalidation flush error", e);
+		}
+	}
+
+	private void flush() {
+		if (pendingMap.isEmpty()) {
+			return;
+		}
+		List<CacheInvalidationMessage.Region> regionList = new ArrayList<>();
+		for (String region : new ArrayList<>(pendingMap.keySet())) {
+			//compute和remove对同一个key是原子的，移除之后不会再有线程往这个集合中添加
+			Set<String> keySet = pendingMap.remove(region);
+			if (Objects.isNull(keySet) || keySet.isEmpty()) {
+				continue;
+			}
+			CacheInvalidationMessage.Region regionMessage = new CacheInvalidationMessage.Region();
+			regionMessage.setRegion(region);
+			regionMessage.setSequence(sequenceMap.computeIfAbsent(region, k -> new AtomicLong(0)).incrementAndGet());
+			if (keySet.size() > cacheInvalidationProperties.getMaxKeyCount()) {
+				regionMessage.setAll(true);
+			}
+			else {
+				regionMessage.setAll(false);
+				regionMessage.setKeyList(new ArrayList<>(keySet));
+			}
+			regionList.add(regionMessage);
+		}
+		if (regionList.isEmpty()) {
+			return;
+		}
+		CacheInvalidationMessage cacheInvalidationMessage = new CacheInvalidationMessage();
+		cacheInvalidationMessage.setNodeId(nodeId);
+		cacheInvalidationMessage.setRegionList(regionList);
+		String streamName = cacheInvalidationProperties.getStreamName();
+		ObjectRecord<String, String> record = StreamRecords.newRecord()
+				.in(streamName)
+				.ofObject(JSON.toJSONString(cacheInvalidationMessage))
+				.withId(RecordId.autoGenerate());
+		//发送失败时序号已经占用，接收方会发现不连续并清空区域
+		stringRedisTemplate.opsForStream().add(record);
+		stringRedisTemplate.opsForStream().trim(streamName, cacheInvalidationProperties.getMaxLength(), true);
+	}
+
+	@Override
+	public void onMessage(ObjectRecord<String, String> message) {
+		try {
+			CacheInvalidationMessage cacheInvalidationMessage =
+					JSON.parseObject(message.getValue(), CacheInvalidationMessage.class);
+			if (nodeId.equals(cacheInvalidationMessage.getNodeId())) {
+				return;
+			}
+			for (CacheInvalidationMessage.Region regionMessage : cacheInvalidationMessage.getRegionList()) {
+				handle(cacheInvalidationMessage.getNodeId(), regionMessage);
+			}
+		}
+		catch (Exception e) {
+			log.error("cache invalidation message error messageId : {}", message.getId(), e);
+		}
+	}
+
+	private void handle(String senderNodeId, CacheInvalidationMessage.Region regionMessage) {
+		CacheInvalidationHandler handler = handlerMap.get(regionMessage.getRegion());
+		if (Objects.isNull(handler)) {
+			return;
+		}
+		Long sequence = regionMessage.getSequence();
+		Long lastSequence = receivedSequenceMap.put(senderNodeId + "-" + regionMessage.getRegion(), sequence);
+		boolean gap = Objects.nonNull(lastSequence) && sequence != lastSequence + 1;
+		if (gap) {
+			log.warn("cache invalidation message gap sender : {} region : {} lastSequence : {} sequence : {}",
+					senderNodeId, regionMessage.getRegion(), lastSequence, sequence);
+		}
+		if (gap || Boolean.TRUE.equals(regionMessage.getAll())) {
+			handler.invalidateAll();
+		}
+		else {
+			handler.invalidate(regionMessage.getKeyList());
+		}
+	}
+}
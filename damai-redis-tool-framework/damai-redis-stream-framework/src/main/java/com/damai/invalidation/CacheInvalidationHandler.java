@@ -0,0 +1,23 @@
+package com.damai.invalidation;
+
+import java.util.Collection;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 缓存区域收到失效消息时的处理
+ * @author: 阿星不是程序员
+ **/
+public interface CacheInvalidationHandler {
+
+	/**
+	 * 删除指定的key
+	 *
+	 * @param keyList 失效的key
+	 */
+	void invalidate(Collection<String> keyList);
+
+	/**
+	 * 清空整个区域，在丢失消息或者单个周期内失效的key太多时调用
+	 */
+	void invalidateAll();
+}
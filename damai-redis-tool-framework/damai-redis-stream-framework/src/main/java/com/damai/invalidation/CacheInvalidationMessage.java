@@ -0,0 +1,39 @@
+package com.damai.invalidation;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 本地缓存失效消息，一个周期内同一个节点的所有失效key合并成一条
+ * @author: 阿星不是程序员
+ **/
+@Data
+public class CacheInvalidationMessage {
+
+	/**
+	 * 发送节点
+	 */
+	private String nodeId;
+
+	private List<Region> regionList;
+
+	@Data
+	public static class Region {
+
+		private String region;
+
+		/**
+		 * 发送节点在这个区域上的序号，每条消息加1，接收方发现不连续时清空整个区域
+		 */
+		private Long sequence;
+
+		/**
+		 * 为true时清空整个区域
+		 */
+		private Boolean all;
+
+		private List<String> keyList;
+	}
+}
@@ -0,0 +1,36 @@
+package com.damai.invalidation;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 本地缓存失效广播属性配置
+ * @author: 阿星不是程序员
+ **/
+@Data
+@ConfigurationProperties(prefix = CacheInvalidationProperties.PREFIX)
+public class CacheInvalidationProperties {
+
+	public static final String PREFIX = "spring.data.redis.stream.invalidation";
+
+	/**
+	 * stream名字，配置了才会开启本地缓存失效广播
+	 */
+	private String streamName;
+
+	/**
+	 * 合并失效key的周期(毫秒)
+	 */
+	private Long tickMillis = 100L;
+
+	/**
+	 * 一个周期内单个区域的key超过这个数量时直接清空整个区域
+	 */
+	private Integer maxKeyCount = 1000;
+
+	/**
+	 * stream保留的最大消息数量
+	 */
+	private Long maxLength = 10000L;
+}
@@ -1,7 +1,7 @@
 package com.damai.config;
 
 import com.damai.handle.RedissonDataHandle;
-import com.damai.locallock.LocalLockCache;
+import com.damai.locallock.LocalLockTable;
 import com.damai.lockinfo.factory.LockInfoHandleFactory;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
@@ -63,8 +63,8 @@ public class RedissonCommonAutoConfiguration {
 	}
 
 	@Bean
-	public LocalLockCache localLockCache() {
-		return new LocalLockCache();
+	public LocalLockTable localLockTable() {
+		return new LocalLockTable();
 	}
 
 	@Bean
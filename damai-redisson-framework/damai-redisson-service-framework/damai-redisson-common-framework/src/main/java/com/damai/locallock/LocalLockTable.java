@@ -0,0 +1,154 @@
+package com.damai.locallock;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 本地锁表
+ * 分段锁：固定数量的锁，按照key的hash分段，内存占用不随key的数量增长，不同的key可能共用同一把锁，只适合阻塞加锁
+ * 精确锁：每个key一把锁，按照引用计数管理，最后一个使用者释放后删除，持有和等待中的锁不会被删除，适合tryLock判断重复
+ * 两种锁都不可重入，也不和线程绑定，异步方法可以在返回的future完成时由其他线程释放
+ * @author: 阿星不是程序员
+ **/
+public class LocalLockTable {
+
+	/**
+	 * 分段锁的数量，会向上取整到2的幂
+	 */
+	@Value("${localLockStripes:4096}")
+	private Integer localLockStripes;
+
+	private Semaphore[] stripes;
+
+	/**
+	 * key:锁key value:精确锁
+	 */
+	private final Map<String, ExactLock> exactLockMap = new ConcurrentHashMap<>(256);
+
+	@PostConstruct
+	public void localLockTableInit() {
+		int size = Integer.highestOneBit(Math.max(localLockStripes - 1, 1)) << 1;
+		stripes = new Semaphore[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new Semaphore(1);
+		}
+	}
+
+	/**
+	 * 对多个key的分段锁加锁，分段去重并按照下标顺序加锁，不会因为hash冲突产生死锁
+	 *
+	 * @return 解锁操作，可以在任意线程执行，多次执行只会解锁一次
+	 */
+	public Runnable lockStriped(Collection<String> lockKeyList) {
+		TreeSet<Integer> indexSet = new TreeSet<>();
+		for (String lockKey : lockKeyList) {
+			indexSet.add(indexFor(lockKey));
+		}
+		for (Integer index : indexSet) {
+			stripes[index].acquireUninterruptibly();
+		}
+		AtomicBoolean unlocked = new AtomicBoolean(false);
+		return () -> {
+			if (unlocked.compareAndSet(false, true)) {
+				for (Integer index : indexSet.descendingSet()) {
+					stripes[index].release();
+				}
+			}
+		};
+	}
+
+	/**
+	 * 精确锁尝试加锁，失败时直接返回
+	 */
+	public boolean tryLockExact(String lockKey) {
+		ExactLock exactLock = retain(lockKey, false);
+		if (exactLock.lock.tryAcquire()) {
+			exactLock.held.set(true);
+			return true;
+		}
+		release(lockKey, exactLock);
+		return false;
+	}
+
+	/**
+	 * 精确锁加锁，fair只在这个key第一次创建锁时生效
+	 */
+	public void lockExact(String lockKey, boolean fair) {
+		ExactLock exactLock = retain(lockKey, fair);
+		try {
+			exactLock.lock.acquireUninterruptibly();
+			exactLock.held.set(true);
+		}
+		catch (Throwable t) {
+			release(lockKey, exactLock);
+			throw t;
+		}
+	}
+
+	/**
+	 * 精确锁解锁，必须和加锁成功一一对应，可以在加锁之外的线程执行
+	 * 锁没有被持有时(重复解锁或者没有加锁)直接报错，不会多释放许可而破坏互斥
+	 */
+	public void unlockExact(String lockKey) {
+		ExactLock exactLock = exactLockMap.get(lockKey);
+		if (exactLock == null || !exactLock.held.compareAndSet(true, false)) {
+			throw new IllegalMonitorStateException("local lock not held : " + lockKey);
+		}
+		exactLock.lock.release();
+		release(lockKey, exactLock);
+	}
+
+	private int indexFor(String lockKey) {
+		int hash = lockKey.hashCode();
+		return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+	}
+
+	/**
+	 * 引用计数只在compute中修改，同一个key的compute是串行的
+	 */
+	private ExactLock retain(String lockKey, boolean fair) {
+		return exactLockMap.compute(lockKey, (key, exactLock) -> {
+			if (exactLock == null) {
+				exactLock = new ExactLock(fair);
+			}
+			exactLock.references++;
+			return exactLock;
+		});
+	}
+
+	private void release(String lockKey, ExactLock exactLock) {
+		exactLockMap.computeIfPresent(lockKey, (key, value) -> {
+			if (value != exactLock) {
+				return value;
+			}
+			return --value.references == 0 ? null : value;
+		});
+	}
+
+	private static final class ExactLock {
+
+		private final Semaphore lock;
+
+		/**
+		 * 锁是否被持有，加锁成功后设置，解锁时清除
+		 */
+		private final AtomicBoolean held = new AtomicBoolean(false);
+
+		/**
+		 * 持有和等待这把锁的次数
+		 */
+		private int references;
+
+		private ExactLock(boolean fair) {
+			this.lock = new Semaphore(1, fair);
+		}
+	}
+}
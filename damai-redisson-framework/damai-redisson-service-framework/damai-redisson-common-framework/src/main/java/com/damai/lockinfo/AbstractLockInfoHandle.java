@@ -2,21 +2,16 @@ package com.damai.lockinfo;
 
 
 import com.damai.core.SpringUtil;
-import com.damai.parser.ExtParameterNameDiscoverer;
 import com.damai.util.StringUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
-import org.springframework.context.expression.MethodBasedEvaluationContext;
-import org.springframework.core.ParameterNameDiscoverer;
-import org.springframework.expression.EvaluationContext;
-import org.springframework.expression.ExpressionParser;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.util.ObjectUtils;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.damai.core.Constants.SEPARATOR;
 
@@ -28,9 +23,10 @@ public abstract class AbstractLockInfoHandle implements LockInfoHandle {
 
 	private static final String LOCK_DISTRIBUTE_ID_NAME_PREFIX = "LOCK_DISTRIBUTE_ID";
 
-	private final ParameterNameDiscoverer nameDiscoverer = new ExtParameterNameDiscoverer();
-
-	private final ExpressionParser parser = new SpelExpressionParser();
+	/**
+	 * key:加锁方法 value:这个方法上预编译的锁key提取器
+	 */
+	private final Map<Method, LockKeyExtractor> lockKeyExtractorMap = new ConcurrentHashMap<>(64);
 
 	/**
 	 * 锁信息前缀
@@ -41,7 +37,14 @@ public abstract class AbstractLockInfoHandle implements LockInfoHandle {
 
 	@Override
 	public String getLockName(JoinPoint joinPoint, String name, String[] keys) {
-		return SpringUtil.getPrefixDistinctionName() + "-" + getLockPrefixName() + SEPARATOR + name + getRelKey(joinPoint, keys);
+		Method method = getMethod(joinPoint);
+		LockKeyExtractor lockKeyExtractor = lockKeyExtractorMap.get(method);
+		if (lockKeyExtractor == null || !lockKeyExtractor.matches(name, keys)) {
+			lockKeyExtractor = LockKeyExtractor.compile(method, name, keys,
+					SpringUtil.getPrefixDistinctionName() + "-" + getLockPrefixName() + SEPARATOR + name);
+			lockKeyExtractorMap.put(method, lockKeyExtractor);
+		}
+		return lockKeyExtractor.getLockName(joinPoint.getArgs());
 	}
 
 	@Override
@@ -56,15 +59,6 @@ public abstract class AbstractLockInfoHandle implements LockInfoHandle {
 				LOCK_DISTRIBUTE_ID_NAME_PREFIX + SEPARATOR + name + SEPARATOR + String.join(SEPARATOR, definitionKeyList);
 	}
 
-	/**
-	 * 获取自定义键
-	 */
-	private String getRelKey(JoinPoint joinPoint, String[] keys) {
-		Method method = getMethod(joinPoint);
-		List<String> definitionKeys = getSpElKey(keys, method, joinPoint.getArgs());
-		return SEPARATOR + String.join(SEPARATOR, definitionKeys);
-	}
-
 	private Method getMethod(JoinPoint joinPoint) {
 		MethodSignature signature = (MethodSignature) joinPoint.getSignature();
 		Method method = signature.getMethod();
@@ -80,16 +74,4 @@ public abstract class AbstractLockInfoHandle implements LockInfoHandle {
 		return method;
 	}
 
-	private List<String> getSpElKey(String[] definitionKeys, Method method, Object[] parameterValues) {
-		List<String> definitionKeyList = new ArrayList<>();
-		for (String definitionKey : definitionKeys) {
-			if (!ObjectUtils.isEmpty(definitionKey)) {
-				EvaluationContext context = new MethodBasedEvaluationContext(null, method, parameterValues, nameDiscoverer);
-				Object objKey = parser.parseExpression(definitionKey).getValue(context);
-				definitionKeyList.add(ObjectUtils.nullSafeToString(objKey));
-			}
-		}
-		return definitionKeyList;
-	}
-
 }
@@ -0,0 +1,145 @@
+package com.damai.lockinfo;
+
+import com.damai.parser.ExtParameterNameDiscoverer;
+import org.springframework.beans.BeanUtils;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.damai.core.Constants.SEPARATOR;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 预编译的锁key提取器
+ * 每个加锁方法只在第一次调用时解析一次，#参数名 和 #参数名.属性.属性 形式的key直接按参数下标和getter读取，
+ * 其余的表达式缓存解析结果并开启SpEL编译模式，每次调用只创建计算上下文
+ * @author: 阿星不是程序员
+ **/
+final class LockKeyExtractor {
+
+	private static final ParameterNameDiscoverer NAME_DISCOVERER = new ExtParameterNameDiscoverer();
+
+	private static final Pattern SIMPLE_KEY_PATTERN =
+			Pattern.compile("^#([A-Za-z_$][\\w$]*)((?:\\.[A-Za-z_$][\\w$]*)*)$");
+
+	private final String name;
+
+	private final String[] keys;
+
+	/**
+	 * 锁名称中固定不变的部分：前缀-锁类型:业务名
+	 */
+	private final String lockNamePrefix;
+
+	private final KeyAccessor[] keyAccessors;
+
+	private LockKeyExtractor(String name, String[] keys, String lockNamePrefix,
+							 KeyAccessor[] keyAccessors) {
+		this.name = name;
+		this.keys = keys;
+		this.lockNamePrefix = lockNamePrefix;
+		this.keyAccessors = keyAccessors;
+	}
+
+	static LockKeyExtractor compile(Method method, String name, String[] keys, String lockNamePrefix) {
+		ExpressionParser parser = new SpelExpressionParser(
+				new SpelParserConfiguration(SpelCompilerMode.MIXED, method.getDeclaringClass().getClassLoader()));
+		String[] parameterNames = NAME_DISCOVERER.getParameterNames(method);
+		List<KeyAccessor> keyAccessorList = new ArrayList<>(keys.length);
+		for (String key : keys) {
+			if (ObjectUtils.isEmpty(key)) {
+				continue;
+			}
+			Expression expression = parser.parseExpression(key);
+			KeyAccessor keyAccessor = compileSimpleKey(method, parameterNames, key, expression);
+			if (keyAccessor == null) {
+				keyAccessor = args -> expression.getValue(
+						new MethodBasedEvaluationContext(null, method, args, NAME_DISCOVERER));
+			}
+			keyAccessorList.add(keyAccessor);
+		}
+		return new LockKeyExtractor(name, keys.clone(), lockNamePrefix,
+				keyAccessorList.toArray(new KeyAccessor[0]));
+	}
+
+	/**
+	 * 是否是同一组锁配置编译出来的
+	 */
+	boolean matches(String name, String[] keys) {
+		return this.name.equals(name) && Arrays.equals(this.keys, keys);
+	}
+
+	String getLockName(Object[] args) {
+		StringBuilder lockName = new StringBuilder(lockNamePrefix.length() + keyAccessors.length * 24);
+		lockName.append(lockNamePrefix).append(SEPARATOR);
+		for (int i = 0; i < keyAccessors.length; i++) {
+			if (i > 0) {
+				lockName.append(SEPARATOR);
+			}
+			lockName.append(ObjectUtils.nullSafeToString(keyAccessors[i].get(args)));
+		}
+		return lockName.toString();
+	}
+
+	/**
+	 * 参数名和每一级属性都能在声明类型上找到getter时，编译成直接读取，否则返回空交给SpEL计算
+	 */
+	private static KeyAccessor compileSimpleKey(Method method, String[] parameterNames, String key,
+												Expression expression) {
+		if (parameterNames == null) {
+			return null;
+		}
+		Matcher matcher = SIMPLE_KEY_PATTERN.matcher(key);
+		if (!matcher.matches()) {
+			return null;
+		}
+		int index = Arrays.asList(parameterNames).indexOf(matcher.group(1));
+		if (index < 0) {
+			return null;
+		}
+		String propertyPath = matcher.group(2);
+		String[] propertyNames = propertyPath.isEmpty() ? new String[0] : propertyPath.substring(1).split("\\.");
+		Method[] getters = new Method[propertyNames.length];
+		Class<?> type = method.getParameterTypes()[index];
+		for (int i = 0; i < propertyNames.length; i++) {
+			PropertyDescriptor propertyDescriptor = BeanUtils.getPropertyDescriptor(type, propertyNames[i]);
+			if (propertyDescriptor == null || propertyDescriptor.getReadMethod() == null) {
+				return null;
+			}
+			getters[i] = propertyDescriptor.getReadMethod();
+			ReflectionUtils.makeAccessible(getters[i]);
+			type = getters[i].getReturnType();
+		}
+		return args -> {
+			Object value = args[index];
+			for (Method getter : getters) {
+				if (value == null) {
+					//中间属性为空时交给SpEL计算，和之前一样抛出表达式异常
+					return expression.getValue(new MethodBasedEvaluationContext(null, method, args, NAME_DISCOVERER));
+				}
+				value = ReflectionUtils.invokeMethod(getter, value);
+			}
+			return value;
+		};
+	}
+
+	@FunctionalInterface
+	private interface KeyAccessor {
+
+		Object get(Object[] args);
+	}
+}
@@ -2,12 +2,14 @@ package com.damai.config;
 
 import com.damai.constant.LockInfoType;
 import com.damai.handle.RedissonDataHandle;
-import com.damai.locallock.LocalLockCache;
+import com.damai.locallock.LocalLockTable;
 import com.damai.lockinfo.LockInfoHandle;
 import com.damai.lockinfo.factory.LockInfoHandleFactory;
 import com.damai.lockinfo.impl.RepeatExecuteLimitLockInfoHandle;
 import com.damai.repeatexecutelimit.aspect.RepeatExecuteLimitAspect;
+import com.damai.repeatexecutelimit.handle.RepeatExecuteLimitTokenHandle;
 import com.damai.servicelock.factory.ServiceLockFactory;
+import org.redisson.api.RedissonClient;
 import org.springframework.context.annotation.Bean;
 
 /**
@@ -23,11 +25,18 @@ public class RepeatExecuteLimitAutoConfiguration {
 	}
 
 	@Bean
-	public RepeatExecuteLimitAspect repeatExecuteLimitAspect(LocalLockCache localLockCache,
+	public RepeatExecuteLimitTokenHandle repeatExecuteLimitTokenHandle(RedissonClient redissonClient) {
+		return new RepeatExecuteLimitTokenHandle(redissonClient);
+	}
+
+	@Bean
+	public RepeatExecuteLimitAspect repeatExecuteLimitAspect(LocalLockTable localLockTable,
 															 LockInfoHandleFactory lockInfoHandleFactory,
 															 ServiceLockFactory serviceLockFactory,
-															 RedissonDataHandle redissonDataHandle) {
-		return new RepeatExecuteLimitAspect(localLockCache, lockInfoHandleFactory, serviceLockFactory, redissonDataHandle);
+															 RedissonDataHandle redissonDataHandle,
+															 RepeatExecuteLimitTokenHandle repeatExecuteLimitTokenHandle) {
+		return new RepeatExecuteLimitAspect(localLockTable, lockInfoHandleFactory, serviceLockFactory, redissonDataHandle,
+				repeatExecuteLimitTokenHandle);
 	}
 }
     
\ No newline at end of file
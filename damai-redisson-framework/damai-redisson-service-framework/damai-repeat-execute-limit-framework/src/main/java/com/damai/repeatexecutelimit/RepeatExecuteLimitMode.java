@@ -0,0 +1,17 @@
+package com.damai.repeatexecutelimit;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 防重复幂等的实现方式
+ * @author: 阿星不是程序员
+ **/
+public enum RepeatExecuteLimitMode {
+	/**
+	 * 本地锁 + 分布式锁，执行前后两次检查幂等标识
+	 */
+	LOCK,
+	/**
+	 * 本地锁 + 幂等标识上的执行中令牌，执行前占用令牌，执行后把令牌改为成功标识或者删除，只需要两次redis交互
+	 */
+	TOKEN
+}
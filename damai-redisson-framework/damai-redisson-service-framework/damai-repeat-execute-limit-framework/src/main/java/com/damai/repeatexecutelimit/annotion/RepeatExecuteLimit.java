@@ -1,5 +1,7 @@
 package com.damai.repeatexecutelimit.annotion;
 
+import com.damai.repeatexecutelimit.RepeatExecuteLimitMode;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -38,4 +40,14 @@ public @interface RepeatExecuteLimit {
 	 */
 	String message() default "提交频繁，请稍后重试";
 
+	/**
+	 * 防重复的实现方式
+	 */
+	RepeatExecuteLimitMode mode() default RepeatExecuteLimitMode.LOCK;
+
+	/**
+	 * TOKEN方式下执行中令牌的过期时间(秒)，业务逻辑执行超过这个时间后，重复的请求可以再次进入
+	 */
+	long inFlightTime() default 30L;
+
 }
@@ -3,10 +3,12 @@ package com.damai.repeatexecutelimit.aspect;
 import com.damai.constant.LockInfoType;
 import com.damai.exception.DaMaiFrameException;
 import com.damai.handle.RedissonDataHandle;
-import com.damai.locallock.LocalLockCache;
+import com.damai.locallock.LocalLockTable;
 import com.damai.lockinfo.LockInfoHandle;
 import com.damai.lockinfo.factory.LockInfoHandleFactory;
+import com.damai.repeatexecutelimit.RepeatExecuteLimitMode;
 import com.damai.repeatexecutelimit.annotion.RepeatExecuteLimit;
+import com.damai.repeatexecutelimit.handle.RepeatExecuteLimitTokenHandle;
 import com.damai.servicelock.LockType;
 import com.damai.servicelock.ServiceLocker;
 import com.damai.servicelock.factory.ServiceLockFactory;
@@ -17,14 +19,15 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.core.annotation.Order;
 
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 
 import static com.damai.repeatexecutelimit.constant.RepeatExecuteLimitConstant.PREFIX_NAME;
 import static com.damai.repeatexecutelimit.constant.RepeatExecuteLimitConstant.SUCCESS_FLAG;
 
 /**
  * 防重复幂等 切面
+ * 方法返回CompletionStage时，在返回的future完成之后才设置幂等标识并释放锁，和同步方法持有锁的时间相同
  **/
 @Slf4j
 @Aspect
@@ -32,7 +35,7 @@ import static com.damai.repeatexecutelimit.constant.RepeatExecuteLimitConstant.S
 @AllArgsConstructor
 public class RepeatExecuteLimitAspect {
 
-	private final LocalLockCache localLockCache;
+	private final LocalLockTable localLockTable;
 
 	private final LockInfoHandleFactory lockInfoHandleFactory;
 
@@ -40,6 +43,7 @@ public class RepeatExecuteLimitAspect {
 
 	private final RedissonDataHandle redissonDataHandle;
 
+	private final RepeatExecuteLimitTokenHandle repeatExecuteLimitTokenHandle;
 
 	@Around("@annotation(repeatLimit)")
 	public Object around(ProceedingJoinPoint joinPoint, RepeatExecuteLimit repeatLimit) throws Throwable {
@@ -54,20 +58,23 @@ public class RepeatExecuteLimitAspect {
 		String lockName = lockInfoHandle.getLockName(joinPoint, repeatLimit.name(), repeatLimit.keys());
 		//幂等标识
 		String repeatFlagName = PREFIX_NAME + lockName;
+		if (repeatLimit.mode() == RepeatExecuteLimitMode.TOKEN) {
+			return tokenAround(joinPoint, repeatLimit, lockName, repeatFlagName);
+		}
 		//获得幂等标识
 		String flagObject = redissonDataHandle.get(repeatFlagName);
 		//如果幂等标识的值为success，说明已经有请求在执行了，这次请求直接结束
 		if (SUCCESS_FLAG.equals(flagObject)) {
 			throw new DaMaiFrameException(message);
 		}
-		//获取本地锁
-		ReentrantLock localLock = localLockCache.getLock(lockName, false);
-		//本地锁获取锁
-		boolean localLockResult = localLock.tryLock();
+		//本地锁获取锁，使用精确锁，不同的key不会互相影响
+		boolean localLockResult = localLockTable.tryLockExact(lockName);
 		//如果上锁失败，说明已经有请求在执行了，这次请求直接结束
 		if (!localLockResult) {
 			throw new DaMaiFrameException(message);
 		}
+		//异步方法的锁交给返回的future释放
+		boolean deferred = false;
 		try {
 			//获取分布式锁
 			ServiceLocker lock = serviceLockFactory.getLock(LockType.Reentrant);
@@ -84,19 +91,32 @@ public class RepeatExecuteLimitAspect {
 					}
 					//执行业务逻辑
 					obj = joinPoint.proceed();
-					if (durationTime > 0) {
-						try {
-							//业务逻辑执行成功 并且 指定了设置幂等保持时间 设置请求标识
-							redissonDataHandle.set(repeatFlagName, SUCCESS_FLAG, durationTime, TimeUnit.SECONDS);
-						}
-						catch (Exception e) {
-							log.error("getBucket error", e);
-						}
+					if (obj instanceof CompletionStage<?> completionStage) {
+						//分布式锁和加锁的线程绑定，在其他线程中按照加锁线程的id释放
+						long threadId = Thread.currentThread().getId();
+						deferred = true;
+						return completionStage.whenComplete((value, throwable) -> {
+							try {
+								if (throwable == null) {
+									setSuccessFlag(repeatFlagName, durationTime);
+								}
+								lock.getLock(lockName).unlockAsync(threadId);
+							}
+							catch (Exception e) {
+								log.error("repeat execute limit async unlock error", e);
+							}
+							finally {
+								localLockTable.unlockExact(lockName);
+							}
+						});
 					}
+					setSuccessFlag(repeatFlagName, durationTime);
 					return obj;
 				}
 				finally {
-					lock.unlock(lockName);
+					if (!deferred) {
+						lock.unlock(lockName);
+					}
 				}
 			}
 			else {
@@ -105,7 +125,78 @@ public class RepeatExecuteLimitAspect {
 			}
 		}
 		finally {
-			localLock.unlock();
+			if (!deferred) {
+				localLockTable.unlockExact(lockName);
+			}
+		}
+	}
+
+	/**
+	 * 业务逻辑执行成功 并且 指定了设置幂等保持时间 设置请求标识
+	 */
+	private void setSuccessFlag(String repeatFlagName, long durationTime) {
+		if (durationTime > 0) {
+			try {
+				redissonDataHandle.set(repeatFlagName, SUCCESS_FLAG, durationTime, TimeUnit.SECONDS);
+			}
+			catch (Exception e) {
+				log.error("getBucket error", e);
+			}
+		}
+	}
+
+	/**
+	 * 本地锁之后只需要占用令牌和结束令牌两次redis交互，幂等标识中存在成功标识或者其他请求的令牌都直接拒绝
+	 */
+	private Object tokenAround(ProceedingJoinPoint joinPoint, RepeatExecuteLimit repeatLimit, String lockName,
+							   String repeatFlagName) throws Throwable {
+		String message = repeatLimit.message();
+		if (!localLockTable.tryLockExact(lockName)) {
+			throw new DaMaiFrameException(message);
+		}
+		boolean deferred = false;
+		try {
+			String token = repeatExecuteLimitTokenHandle.claim(repeatFlagName, repeatLimit.inFlightTime());
+			if (token == null) {
+				throw new DaMaiFrameException(message);
+			}
+			boolean success = false;
+			try {
+				Object obj = joinPoint.proceed();
+				if (obj instanceof CompletionStage<?> completionStage) {
+					deferred = true;
+					return completionStage.whenComplete((value, throwable) -> {
+						try {
+							completeToken(repeatFlagName, token, throwable == null, repeatLimit.durationTime());
+						}
+						finally {
+							localLockTable.unlockExact(lockName);
+						}
+					});
+				}
+				success = true;
+				return obj;
+			}
+			finally {
+				if (!deferred) {
+					completeToken(repeatFlagName, token, success, repeatLimit.durationTime());
+				}
+			}
+		}
+		finally {
+			if (!deferred) {
+				localLockTable.unlockExact(lockName);
+			}
+		}
+	}
+
+	private void completeToken(String repeatFlagName, String token, boolean success, long durationTime) {
+		try {
+			repeatExecuteLimitTokenHandle.complete(repeatFlagName, token, success, durationTime);
+		}
+		catch (Exception e) {
+			//结束失败时令牌会在过期后自动删除
+			log.error("repeat execute limit complete error", e);
 		}
 	}
 }
@@ -0,0 +1,99 @@
+package com.damai.repeatexecutelimit.handle;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.damai.repeatexecutelimit.constant.RepeatExecuteLimitConstant.SUCCESS_FLAG;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 防重复幂等 执行中令牌操作
+ * 幂等标识的值为成功标识或者执行中的令牌，两种值都表示重复请求，所以占用令牌只需要一次 set nx，
+ * 执行结束后用lua脚本校验令牌仍然属于自己，再改为成功标识或者删除，脚本只加载一次，之后按sha执行
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+public class RepeatExecuteLimitTokenHandle {
+
+	private static final String TOKEN_PREFIX = "executing:" + UUID.randomUUID() + ":";
+
+	private final AtomicLong tokenSequence = new AtomicLong(0);
+
+	private final RedissonClient redissonClient;
+
+	private String completeScript;
+
+	private volatile String completeScriptSha;
+
+	public RepeatExecuteLimitTokenHandle(RedissonClient redissonClient) {
+		this.redissonClient = redissonClient;
+		try {
+			completeScript = StreamUtils.copyToString(
+					new ClassPathResource("lua/repeatExecuteLimitComplete.lua").getInputStream(), StandardCharsets.UTF_8);
+		}
+		catch (Exception e) {
+			log.error("repeatExecuteLimitComplete init lua error", e);
+		}
+	}
+
+	/**
+	 * 占用执行中的令牌
+	 *
+	 * @param repeatFlagName 幂等标识
+	 * @param inFlightTime   令牌的过期时间(秒)
+	 * @return 占用成功返回令牌，已经存在成功标识或者其他请求的令牌时返回空
+	 */
+	public String claim(String repeatFlagName, long inFlightTime) {
+		String token = TOKEN_PREFIX + tokenSequence.incrementAndGet();
+		boolean result = redissonClient.getBucket(repeatFlagName, StringCodec.INSTANCE)
+				.setIfAbsent(token, Duration.ofSeconds(inFlightTime));
+		return result ? token : null;
+	}
+
+	/**
+	 * 执行结束，成功并且需要保持幂等时把令牌改为成功标识，否则删除令牌
+	 *
+	 * @param repeatFlagName 幂等标识
+	 * @param token          占用的令牌
+	 * @param success        业务逻辑是否执行成功
+	 * @param durationTime   保持幂等的时间(秒)
+	 */
+	public void complete(String repeatFlagName, String token, boolean success, long durationTime) {
+		RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+		List<Object> keys = Collections.singletonList(repeatFlagName);
+		Object[] values = {token, success ? "1" : "0", String.valueOf(durationTime), SUCCESS_FLAG};
+		String sha = completeScriptSha;
+		if (sha == null) {
+			sha = loadCompleteScript(script);
+		}
+		try {
+			script.evalSha(repeatFlagName, RScript.Mode.READ_WRITE, sha, RScript.ReturnType.INTEGER, keys, values);
+		}
+		catch (RedisException e) {
+			//redis重启或者执行了script flush后脚本不存在，重新加载后再执行一次
+			if (e.getMessage() == null || !e.getMessage().contains("NOSCRIPT")) {
+				throw e;
+			}
+			sha = loadCompleteScript(script);
+			script.evalSha(repeatFlagName, RScript.Mode.READ_WRITE, sha, RScript.ReturnType.INTEGER, keys, values);
+		}
+	}
+
+	private String loadCompleteScript(RScript script) {
+		String sha = script.scriptLoad(completeScript);
+		completeScriptSha = sha;
+		return sha;
+	}
+}
@@ -0,0 +1,20 @@
+-- 幂等标识
+local repeat_flag_key = KEYS[1]
+-- 本次执行占用的令牌
+local token = ARGV[1]
+-- 业务逻辑是否执行成功 1:成功 0:失败
+local success = ARGV[2]
+-- 执行成功后保持幂等的时间(秒)，0为不保持
+local duration_time = tonumber(ARGV[3])
+local success_flag = ARGV[4]
+
+-- 令牌已经过期或者被其他请求占用，不做处理
+if redis.call('get', repeat_flag_key) ~= token then
+    return 0
+end
+if success == '1' and duration_time > 0 then
+    redis.call('set', repeat_flag_key, success_flag, 'EX', duration_time)
+else
+    redis.call('del', repeat_flag_key)
+end
+return 1
@@ -7,9 +7,17 @@ import com.damai.lockinfo.factory.LockInfoHandleFactory;
 import com.damai.lockinfo.impl.ServiceLockInfoHandle;
 import com.damai.servicelock.aspect.ServiceLockAspect;
 import com.damai.servicelock.factory.ServiceLockFactory;
+import com.damai.servicelock.metrics.ServiceLockEndpoint;
+import com.damai.servicelock.metrics.ServiceLockMetrics;
+import com.damai.servicelock.metrics.ServiceLockMonitor;
 import com.damai.util.ServiceLockTool;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 
 /**
  * 分布式锁 配置
@@ -40,19 +48,53 @@ public class ServiceLockAutoConfiguration {
 		return new ServiceLockFactory(manageLocker);
 	}
 
+	/**
+	 * 分布式锁监控
+	 */
+	@Bean
+	public ServiceLockMonitor serviceLockMonitor(@Value("${serviceLockContendedWaitMillis:10}") long serviceLockContendedWaitMillis,
+												 @Value("${serviceLockContendedWindowMillis:60000}") long serviceLockContendedWindowMillis,
+												 @Value("${serviceLockContendedMaxKeyCount:1000}") int serviceLockContendedMaxKeyCount,
+												 @Value("${serviceLockContendedTopCount:20}") int serviceLockContendedTopCount) {
+		return new ServiceLockMonitor(serviceLockContendedWaitMillis, serviceLockContendedWindowMillis,
+				serviceLockContendedMaxKeyCount, serviceLockContendedTopCount);
+	}
+
 	/**
 	 * 分布式锁切面
 	 */
 	@Bean
-	public ServiceLockAspect serviceLockAspect(LockInfoHandleFactory lockInfoHandleFactory, ServiceLockFactory serviceLockFactory) {
-		return new ServiceLockAspect(lockInfoHandleFactory, serviceLockFactory);
+	public ServiceLockAspect serviceLockAspect(LockInfoHandleFactory lockInfoHandleFactory, ServiceLockFactory serviceLockFactory,
+											   ServiceLockMonitor serviceLockMonitor) {
+		return new ServiceLockAspect(lockInfoHandleFactory, serviceLockFactory, serviceLockMonitor);
 	}
 
 	/**
 	 * 分布式锁工具
 	 */
 	@Bean
-	public ServiceLockTool serviceLockUtil(LockInfoHandleFactory lockInfoHandleFactory, ServiceLockFactory serviceLockFactory) {
-		return new ServiceLockTool(lockInfoHandleFactory, serviceLockFactory);
+	public ServiceLockTool serviceLockUtil(LockInfoHandleFactory lockInfoHandleFactory, ServiceLockFactory serviceLockFactory,
+										   ServiceLockMonitor serviceLockMonitor) {
+		return new ServiceLockTool(lockInfoHandleFactory, serviceLockFactory, serviceLockMonitor);
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterBinder.class)
+	public static class ServiceLockMetricsConfig {
+
+		@Bean
+		public ServiceLockMetrics serviceLockMetrics(ServiceLockMonitor serviceLockMonitor) {
+			return new ServiceLockMetrics(serviceLockMonitor);
+		}
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(Endpoint.class)
+	public static class ServiceLockEndpointConfig {
+
+		@Bean
+		public ServiceLockEndpoint serviceLockEndpoint(ServiceLockMonitor serviceLockMonitor) {
+			return new ServiceLockEndpoint(serviceLockMonitor);
+		}
 	}
 }
\ No newline at end of file
@@ -8,6 +8,8 @@ import com.damai.servicelock.LockType;
 import com.damai.servicelock.ServiceLocker;
 import com.damai.servicelock.annotion.ServiceLock;
 import com.damai.servicelock.factory.ServiceLockFactory;
+import com.damai.servicelock.metrics.ServiceLockMonitor;
+import com.damai.servicelock.metrics.ServiceLockStats;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
@@ -34,6 +36,8 @@ public class ServiceLockAspect {
 
 	private final ServiceLockFactory serviceLockFactory;
 
+	private final ServiceLockMonitor serviceLockMonitor;
+
 	/**
 	 * 环绕通知，处理服务锁
 	 *
@@ -56,10 +60,24 @@ public class ServiceLockAspect {
 		TimeUnit timeUnit = servicelock.timeUnit();
 		//获得具体的锁类型
 		ServiceLocker lock = serviceLockFactory.getLock(lockType);
+		//统计按注解上的锁名称模板划分，不使用解析后的key
+		ServiceLockStats stats = serviceLockMonitor.getStats(servicelock.name(), lockType);
 		//进行加锁
-		boolean result = lock.tryLock(lockName, timeUnit, waitTime);
+		long waitStart = System.nanoTime();
+		boolean result;
+		try {
+			result = lock.tryLock(lockName, timeUnit, waitTime);
+		}
+		catch (Throwable t) {
+			stats.recordFailure();
+			throw t;
+		}
+		long waitNanos = System.nanoTime() - waitStart;
+		stats.recordWait(waitNanos);
+		serviceLockMonitor.recordContention(lockName, waitNanos, !result);
 		//如果加锁成功
 		if (result) {
+			long holdStart = System.nanoTime();
 			try {
 				//执行业务逻辑
 				return joinPoint.proceed();
@@ -67,6 +85,7 @@ public class ServiceLockAspect {
 			finally {
 				//解锁
 				lock.unlock(lockName);
+				stats.recordHold(System.nanoTime() - holdStart);
 			}
 		}
 		else {
@@ -74,10 +93,12 @@ public class ServiceLockAspect {
 			//加锁失败,如果设置了自定义处理，则执行
 			String customLockTimeoutStrategy = servicelock.customLockTimeoutStrategy();
 			if (StringUtil.isNotEmpty(customLockTimeoutStrategy)) {
+				stats.recordTimeout(customLockTimeoutStrategy);
 				return handleCustomLockTimeoutStrategy(customLockTimeoutStrategy, joinPoint);
 			}
 			else {
 				//默认处理
+				stats.recordTimeout(servicelock.lockTimeoutStrategy().name());
 				servicelock.lockTimeoutStrategy().handler(lockName);
 			}
 			return joinPoint.proceed();
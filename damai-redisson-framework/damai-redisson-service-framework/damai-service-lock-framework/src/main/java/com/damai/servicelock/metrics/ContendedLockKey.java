@@ -0,0 +1,36 @@
+package com.damai.servicelock.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 竞争激烈的锁key
+ * @author: 阿星不是程序员
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContendedLockKey {
+
+	/**
+	 * 解析后的锁名称
+	 */
+	private String lockName;
+
+	/**
+	 * 窗口内等待时间超过阈值或者超时的次数
+	 */
+	private Long contendedCount;
+
+	/**
+	 * 窗口内等待超时的次数
+	 */
+	private Long timeoutCount;
+
+	/**
+	 * 窗口内的最长等待时间，毫秒
+	 */
+	private Long maxWaitMillis;
+}
@@ -0,0 +1,24 @@
+package com.damai.servicelock.metrics;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 竞争激烈的锁key查询端点 /actuator/servicelocks，包含@ServiceLock和ServiceLockTool的加锁，不包含ServiceLockTool.getLock返回后由调用方自己加的锁
+ * @author: 阿星不是程序员
+ **/
+@AllArgsConstructor
+@Endpoint(id = "servicelocks")
+public class ServiceLockEndpoint {
+
+	private final ServiceLockMonitor serviceLockMonitor;
+
+	@ReadOperation
+	public List<ContendedLockKey> contendedKeys() {
+		return serviceLockMonitor.getContendedKeyList();
+	}
+}
@@ -0,0 +1,53 @@
+package com.damai.servicelock.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 分布式锁指标，按锁名称模板和锁类型打标签，超时次数再按超时策略打标签
+ * @author: 阿星不是程序员
+ **/
+public class ServiceLockMetrics implements MeterBinder {
+
+	private final ServiceLockMonitor serviceLockMonitor;
+
+	public ServiceLockMetrics(ServiceLockMonitor serviceLockMonitor) {
+		this.serviceLockMonitor = serviceLockMonitor;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		serviceLockMonitor.addRegisterListener(stats -> bind(registry, stats));
+		serviceLockMonitor.addTimeoutStrategyListener((stats, strategy) -> bindTimeout(registry, stats, strategy));
+	}
+
+	private void bind(MeterRegistry registry, ServiceLockStats stats) {
+		FunctionTimer.builder("service.lock.wait", stats, ServiceLockStats::getWaitCount,
+						ServiceLockStats::getWaitNanos, TimeUnit.NANOSECONDS)
+				.tag("name", stats.getName())
+				.tag("lockType", stats.getLockType().name())
+				.register(registry);
+		FunctionTimer.builder("service.lock.hold", stats, ServiceLockStats::getHoldCount,
+						ServiceLockStats::getHoldNanos, TimeUnit.NANOSECONDS)
+				.tag("name", stats.getName())
+				.tag("lockType", stats.getLockType().name())
+				.register(registry);
+		FunctionCounter.builder("service.lock.failures", stats, ServiceLockStats::getFailureCount)
+				.tag("name", stats.getName())
+				.tag("lockType", stats.getLockType().name())
+				.register(registry);
+	}
+
+	private void bindTimeout(MeterRegistry registry, ServiceLockStats stats, String strategy) {
+		FunctionCounter.builder("service.lock.timeouts", stats, s -> s.getTimeoutCount(strategy))
+				.tag("name", stats.getName())
+				.tag("lockType", stats.getLockType().name())
+				.tag("strategy", strategy)
+				.register(registry);
+	}
+}
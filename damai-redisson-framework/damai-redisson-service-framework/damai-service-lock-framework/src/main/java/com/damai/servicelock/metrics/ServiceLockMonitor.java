@@ -0,0 +1,169 @@
+package com.damai.servicelock.metrics;
+
+import com.damai.servicelock.LockType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 分布式锁监控
+ * 统计按锁名称模板和锁类型划分，数量由代码中的注解和ServiceLockTool的调用决定，不会随key增长；
+ * 解析后的锁key只在等待时间达到阈值或者超时时按时间窗口记录，每个窗口最多记录maxKeyCount个，当前窗口和上一个窗口内有效
+ * @author: 阿星不是程序员
+ **/
+public class ServiceLockMonitor {
+
+	private final long contendedWaitNanos;
+
+	private final long windowMillis;
+
+	private final int maxKeyCount;
+
+	private final int topCount;
+
+	/**
+	 * key:锁类型:锁名称模板 value:统计
+	 */
+	private final Map<String, ServiceLockStats> statsMap = new ConcurrentHashMap<>(64);
+
+	private final List<Consumer<ServiceLockStats>> registerListenerList = new CopyOnWriteArrayList<>();
+
+	private final List<BiConsumer<ServiceLockStats, String>> timeoutStrategyListenerList = new CopyOnWriteArrayList<>();
+
+	private final AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
+
+	/**
+	 * key:当前窗口内竞争的锁名称 value:竞争统计
+	 */
+	private volatile Map<String, KeyContention> currentContentionMap = new ConcurrentHashMap<>(64);
+
+	/**
+	 * key:上一个窗口内竞争的锁名称 value:竞争统计
+	 */
+	private volatile Map<String, KeyContention> lastContentionMap = new HashMap<>(0);
+
+	public ServiceLockMonitor(long contendedWaitMillis, long windowMillis, int maxKeyCount, int topCount) {
+		this.contendedWaitNanos = TimeUnit.MILLISECONDS.toNanos(contendedWaitMillis);
+		this.windowMillis = windowMillis;
+		this.maxKeyCount = maxKeyCount;
+		this.topCount = topCount;
+	}
+
+	public ServiceLockStats getStats(String name, LockType lockType) {
+		String statsKey = lockType.name() + ":" + name;
+		ServiceLockStats stats = statsMap.get(statsKey);
+		if (stats != null) {
+			return stats;
+		}
+		boolean[] created = new boolean[1];
+		stats = statsMap.computeIfAbsent(statsKey, k -> {
+			created[0] = true;
+			return new ServiceLockStats(name, lockType, this::onTimeoutStrategy);
+		});
+		if (created[0]) {
+			for (Consumer<ServiceLockStats> listener : registerListenerList) {
+				listener.accept(stats);
+			}
+		}
+		return stats;
+	}
+
+	public Collection<ServiceLockStats> getStatsList() {
+		return new ArrayList<>(statsMap.values());
+	}
+
+	/**
+	 * 已经存在的统计会立即通知
+	 */
+	public void addRegisterListener(Consumer<ServiceLockStats> listener) {
+		registerListenerList.add(listener);
+		statsMap.values().forEach(listener);
+	}
+
+	/**
+	 * 统计第一次出现某个超时策略时通知，已经出现的会立即通知
+	 */
+	public void addTimeoutStrategyListener(BiConsumer<ServiceLockStats, String> listener) {
+		timeoutStrategyListenerList.add(listener);
+		statsMap.values().forEach(stats -> stats.getTimeoutStrategies().forEach(strategy -> listener.accept(stats, strategy)));
+	}
+
+	/**
+	 * 记录一次加锁的等待，达到阈值或者超时的锁名称计入竞争统计
+	 */
+	public void recordContention(String lockName, long waitNanos, boolean timeout) {
+		if (!timeout && waitNanos < contendedWaitNanos) {
+			return;
+		}
+		rollWindowIfNeeded();
+		Map<String, KeyContention> contentionMap = currentContentionMap;
+		KeyContention keyContention = contentionMap.get(lockName);
+		if (keyContention == null) {
+			if (contentionMap.size() >= maxKeyCount) {
+				return;
+			}
+			keyContention = contentionMap.computeIfAbsent(lockName, k -> new KeyContention());
+		}
+		keyContention.contendedCount.increment();
+		if (timeout) {
+			keyContention.timeoutCount.increment();
+		}
+		keyContention.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+	}
+
+	/**
+	 * 竞争最多的锁名称，按竞争次数从大到小排列，最多topCount个
+	 */
+	public List<ContendedLockKey> getContendedKeyList() {
+		rollWindowIfNeeded();
+		Map<String, ContendedLockKey> contendedKeyMap = new HashMap<>(64);
+		lastContentionMap.forEach((lockName, keyContention) -> contendedKeyMap.put(lockName, keyContention.toContendedLockKey(lockName)));
+		currentContentionMap.forEach((lockName, keyContention) -> contendedKeyMap.merge(lockName, keyContention.toContendedLockKey(lockName),
+				(oldKey, newKey) -> oldKey.getContendedCount() >= newKey.getContendedCount() ? oldKey : newKey));
+		List<ContendedLockKey> contendedKeyList = new ArrayList<>(contendedKeyMap.values());
+		contendedKeyList.sort(Comparator.comparing(ContendedLockKey::getContendedCount).reversed());
+		return contendedKeyList.size() > topCount ? new ArrayList<>(contendedKeyList.subList(0, topCount)) : contendedKeyList;
+	}
+
+	private void onTimeoutStrategy(ServiceLockStats stats, String strategy) {
+		for (BiConsumer<ServiceLockStats, String> listener : timeoutStrategyListenerList) {
+			listener.accept(stats, strategy);
+		}
+	}
+
+	private void rollWindowIfNeeded() {
+		long start = windowStart.get();
+		long now = System.currentTimeMillis();
+		if (now - start < windowMillis || !windowStart.compareAndSet(start, now)) {
+			return;
+		}
+		lastContentionMap = currentContentionMap;
+		currentContentionMap = new ConcurrentHashMap<>(64);
+	}
+
+	private static final class KeyContention {
+
+		private final LongAdder contendedCount = new LongAdder();
+
+		private final LongAdder timeoutCount = new LongAdder();
+
+		private final AtomicLong maxWaitNanos = new AtomicLong();
+
+		private ContendedLockKey toContendedLockKey(String lockName) {
+			return new ContendedLockKey(lockName, contendedCount.sum(), timeoutCount.sum(),
+					TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+		}
+	}
+}
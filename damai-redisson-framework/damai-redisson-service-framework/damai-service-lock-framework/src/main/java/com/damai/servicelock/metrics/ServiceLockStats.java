@@ -0,0 +1,110 @@
+package com.damai.servicelock.metrics;
+
+import com.damai.servicelock.LockType;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 分布式锁统计，按注解或者ServiceLockTool上的锁名称模板和锁类型累计，不区分解析后的key
+ * @author: 阿星不是程序员
+ **/
+public class ServiceLockStats {
+
+	@Getter
+	private final String name;
+
+	@Getter
+	private final LockType lockType;
+
+	private final LongAdder waitCount = new LongAdder();
+
+	private final LongAdder waitNanos = new LongAdder();
+
+	private final LongAdder holdCount = new LongAdder();
+
+	private final LongAdder holdNanos = new LongAdder();
+
+	private final LongAdder failureCount = new LongAdder();
+
+	/**
+	 * key:超时策略 value:超时次数
+	 */
+	private final Map<String, LongAdder> timeoutCountMap = new ConcurrentHashMap<>(4);
+
+	private final BiConsumer<ServiceLockStats, String> timeoutStrategyListener;
+
+	ServiceLockStats(String name, LockType lockType, BiConsumer<ServiceLockStats, String> timeoutStrategyListener) {
+		this.name = name;
+		this.lockType = lockType;
+		this.timeoutStrategyListener = timeoutStrategyListener;
+	}
+
+	public void recordWait(long nanos) {
+		waitCount.increment();
+		waitNanos.add(nanos);
+	}
+
+	public void recordHold(long nanos) {
+		holdCount.increment();
+		holdNanos.add(nanos);
+	}
+
+	/**
+	 * 加锁时抛出异常，比如redis不可用或者线程被中断
+	 */
+	public void recordFailure() {
+		failureCount.increment();
+	}
+
+	/**
+	 * 等待超时没有拿到锁，strategy为超时后执行的策略
+	 */
+	public void recordTimeout(String strategy) {
+		LongAdder timeoutCount = timeoutCountMap.get(strategy);
+		if (timeoutCount == null) {
+			boolean[] created = new boolean[1];
+			timeoutCount = timeoutCountMap.computeIfAbsent(strategy, k -> {
+				created[0] = true;
+				return new LongAdder();
+			});
+			if (created[0]) {
+				timeoutStrategyListener.accept(this, strategy);
+			}
+		}
+		timeoutCount.increment();
+	}
+
+	public long getWaitCount() {
+		return waitCount.sum();
+	}
+
+	public long getWaitNanos() {
+		return waitNanos.sum();
+	}
+
+	public long getHoldCount() {
+		return holdCount.sum();
+	}
+
+	public long getHoldNanos() {
+		return holdNanos.sum();
+	}
+
+	public long getFailureCount() {
+		return failureCount.sum();
+	}
+
+	public long getTimeoutCount(String strategy) {
+		LongAdder timeoutCount = timeoutCountMap.get(strategy);
+		return timeoutCount == null ? 0 : timeoutCount.sum();
+	}
+
+	public Iterable<String> getTimeoutStrategies() {
+		return timeoutCountMap.keySet();
+	}
+}
@@ -8,13 +8,18 @@ import com.damai.servicelock.LockType;
 import com.damai.servicelock.ServiceLocker;
 import com.damai.servicelock.factory.ServiceLockFactory;
 import com.damai.servicelock.info.LockTimeOutStrategy;
+import com.damai.servicelock.metrics.ServiceLockMonitor;
+import com.damai.servicelock.metrics.ServiceLockStats;
 import lombok.AllArgsConstructor;
 import org.redisson.api.RLock;
 
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 /**
  * 分布式锁 方法类型操作
+ * execute、submit、getOrLoad 和注解一样按锁名称模板统计等待、持有、失败和超时，
+ * getLock 返回的锁由调用方自己加锁解锁，不在统计范围内
  **/
 @AllArgsConstructor
 public class ServiceLockTool {
@@ -23,6 +28,8 @@ public class ServiceLockTool {
 
 	private final ServiceLockFactory serviceLockFactory;
 
+	private final ServiceLockMonitor serviceLockMonitor;
+
 	/**
 	 * 没有返回值的加锁执行
 	 *
@@ -71,16 +78,20 @@ public class ServiceLockTool {
 		LockInfoHandle lockInfoHandle = lockInfoHandleFactory.getLockInfoHandle(LockInfoType.SERVICE_LOCK);
 		String lockName = lockInfoHandle.simpleGetLockName(name, keys);
 		ServiceLocker lock = serviceLockFactory.getLock(lockType);
-		boolean result = lock.tryLock(lockName, TimeUnit.SECONDS, waitTime);
+		ServiceLockStats stats = serviceLockMonitor.getStats(name, lockType);
+		boolean result = tryLock(lock, stats, lockName, waitTime);
 		if (result) {
+			long holdStart = System.nanoTime();
 			try {
 				taskRun.run();
 			}
 			finally {
 				lock.unlock(lockName);
+				stats.recordHold(System.nanoTime() - holdStart);
 			}
 		}
 		else {
+			stats.recordTimeout(LockTimeOutStrategy.FAIL.name());
 			LockTimeOutStrategy.FAIL.handler(lockName);
 		}
 	}
@@ -97,23 +108,72 @@ public class ServiceLockTool {
 		LockInfoHandle lockInfoHandle = lockInfoHandleFactory.getLockInfoHandle(LockInfoType.SERVICE_LOCK);
 		String lockName = lockInfoHandle.simpleGetLockName(name, keys);
 		ServiceLocker lock = serviceLockFactory.getLock(LockType.Reentrant);
-		boolean result = lock.tryLock(lockName, TimeUnit.SECONDS, 30);
+		ServiceLockStats stats = serviceLockMonitor.getStats(name, LockType.Reentrant);
+		boolean result = tryLock(lock, stats, lockName, 30);
 		if (result) {
+			long holdStart = System.nanoTime();
 			try {
 				return taskCall.call();
 			}
 			finally {
 				lock.unlock(lockName);
+				stats.recordHold(System.nanoTime() - holdStart);
 			}
 		}
 		else {
+			stats.recordTimeout(LockTimeOutStrategy.FAIL.name());
 			LockTimeOutStrategy.FAIL.handler(lockName);
 		}
 		return null;
 	}
 
 	/**
-	 * 获得锁
+	 * 缓存未命中时才加锁的读取，缓存命中时没有任何加锁的开销
+	 * 未命中时加可重入锁，加锁后再读取一次缓存(双重检测)，仍然未命中才执行加载
+	 *
+	 * @param cacheCall 读取缓存
+	 * @param hit       读取的结果是否命中
+	 * @param loadCall  加载数据，由加载方负责放入缓存
+	 * @param name      锁的业务名
+	 * @param keys      锁的标识
+	 * @return 缓存中的数据或者加载的数据
+	 */
+	public <T> T getOrLoad(TaskCall<T> cacheCall, Predicate<T> hit, TaskCall<T> loadCall, String name, String[] keys) {
+		T value = cacheCall.call();
+		if (hit.test(value)) {
+			return value;
+		}
+		LockInfoHandle lockInfoHandle = lockInfoHandleFactory.getLockInfoHandle(LockInfoType.SERVICE_LOCK);
+		String lockName = lockInfoHandle.simpleGetLockName(name, keys);
+		RLock lock = getLock(LockType.Reentrant, lockName);
+		ServiceLockStats stats = serviceLockMonitor.getStats(name, LockType.Reentrant);
+		long waitStart = System.nanoTime();
+		try {
+			lock.lock();
+		}
+		catch (RuntimeException e) {
+			stats.recordFailure();
+			throw e;
+		}
+		long waitNanos = System.nanoTime() - waitStart;
+		stats.recordWait(waitNanos);
+		serviceLockMonitor.recordContention(lockName, waitNanos, false);
+		long holdStart = System.nanoTime();
+		try {
+			value = cacheCall.call();
+			if (hit.test(value)) {
+				return value;
+			}
+			return loadCall.call();
+		}
+		finally {
+			lock.unlock();
+			stats.recordHold(System.nanoTime() - holdStart);
+		}
+	}
+
+	/**
+	 * 获得锁，由调用方加锁解锁，不会记录统计
 	 *
 	 * @param lockType 锁类型
 	 * @param name     锁的业务名
@@ -127,7 +187,7 @@ public class ServiceLockTool {
 	}
 
 	/**
-	 * 获得锁
+	 * 获得锁，由调用方加锁解锁，不会记录统计
 	 *
 	 * @param lockType 锁类型
 	 * @param lockName 锁名
@@ -136,4 +196,23 @@ public class ServiceLockTool {
 		ServiceLocker lock = serviceLockFactory.getLock(lockType);
 		return lock.getLock(lockName);
 	}
+
+	/**
+	 * 加锁并记录等待时间，等待达到阈值或者超时的锁名称计入竞争统计
+	 */
+	private boolean tryLock(ServiceLocker lock, ServiceLockStats stats, String lockName, long waitTime) {
+		long waitStart = System.nanoTime();
+		boolean result;
+		try {
+			result = lock.tryLock(lockName, TimeUnit.SECONDS, waitTime);
+		}
+		catch (RuntimeException e) {
+			stats.recordFailure();
+			throw e;
+		}
+		long waitNanos = System.nanoTime() - waitStart;
+		stats.recordWait(waitNanos);
+		serviceLockMonitor.recordContention(lockName, waitNanos, !result);
+		return result;
+	}
 }
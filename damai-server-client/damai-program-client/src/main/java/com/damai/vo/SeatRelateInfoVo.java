@@ -40,4 +40,7 @@ public class SeatRelateInfoVo implements Serializable {
 	@Schema(name = "seatVoMap", type = "Map<String,List<SeatVo>>", description = "座位集合")
 	private Map<String, List<SeatVo>> seatVoMap;
 
+	@Schema(name = "version", type = "Long", description = "座位图版本号，座位缓存还没有构建时为空")
+	private Long version;
+
 }
@@ -19,7 +19,7 @@ public class GatewayProperty {
 	private String[] apiRestrictPaths;
 
 	@Value("${skip.check.token.paths:/**/program/order/create/v1,/**/program/order/create/v2,/**/program/order/create/v3," +
-			"/**/program/order/create/v4,/**/ticket/user/add,/**/ticket/user/delete,/**/ticket/user/list,/**/user/authentication," +
+			"/**/program/order/create/v4,/**/program/order/create/v4/async,/**/program/order/create/v5,/**/ticket/user/add,/**/ticket/user/delete,/**/ticket/user/list,/**/user/authentication," +
 			"/**/user/update,/**/user/update/email,/**/user/update/mobile,/**/user/update/password," +
 			"/**/order/cancel,/**/order/create,/**/order/pay,/**/order/select/list,/**/order/get,/**/order/cancel}")
 	private String[] checkTokenPaths;
@@ -13,6 +13,7 @@ import com.damai.enums.RuleTimeUnit;
 import com.damai.exception.DaMaiFrameException;
 import com.damai.kafka.ApiDataMessageSend;
 import com.damai.property.GatewayProperty;
+import com.damai.redis.RedisBatch;
 import com.damai.redis.RedisCache;
 import com.damai.redis.RedisKeyBuild;
 import com.damai.service.lua.ApiRestrictCacheOperate;
@@ -29,6 +30,7 @@ import org.springframework.util.AntPathMatcher;
 import org.springframework.util.PathMatcher;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -123,9 +125,14 @@ public class ApiRestrictService {
 			try {
 				List<DepthRuleVo> depthRuleVoList = new ArrayList<>();
 
-				RuleVo ruleVo = redisCache.getForHash(RedisKeyBuild.createRedisKey(RedisKeyManage.ALL_RULE_HASH), RedisKeyBuild.createRedisKey(RedisKeyManage.RULE).getRelKey(), RuleVo.class);
+				//普通规则和深度规则在同一个hash中，一次pipeline读取
+				RedisBatch redisBatch = redisCache.batch();
+				CompletableFuture<RuleVo> ruleVoFuture = redisBatch.getForHash(RedisKeyBuild.createRedisKey(RedisKeyManage.ALL_RULE_HASH), RedisKeyBuild.createRedisKey(RedisKeyManage.RULE).getRelKey(), RuleVo.class);
+				CompletableFuture<String> depthRuleStrFuture = redisBatch.getForHash(RedisKeyBuild.createRedisKey(RedisKeyManage.ALL_RULE_HASH), RedisKeyBuild.createRedisKey(RedisKeyManage.DEPTH_RULE).getRelKey(), String.class);
+				redisBatch.execute();
+				RuleVo ruleVo = ruleVoFuture.join();
 
-				String depthRuleStr = redisCache.getForHash(RedisKeyBuild.createRedisKey(RedisKeyManage.ALL_RULE_HASH), RedisKeyBuild.createRedisKey(RedisKeyManage.DEPTH_RULE).getRelKey(), String.class);
+				String depthRuleStr = depthRuleStrFuture.join();
 				if (StringUtil.isNotEmpty(depthRuleStr)) {
 					depthRuleVoList = JSON.parseArray(depthRuleStr, DepthRuleVo.class);
 				}
@@ -9,6 +9,7 @@ import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -37,7 +38,10 @@ public class OrderProgramCacheResolutionOperate {
 		}
 	}
 
-	public void programCacheReverseOperate(List<String> keys, Object... args) {
-		redisCache.getInstance().execute(redisScript, keys, args);
+	/**
+	 * @param args 参数按位置排列，格式见 OrderProgramDataResolution.lua
+	 */
+	public void programCacheReverseOperate(List<String> args) {
+		redisCache.getInstance().execute(redisScript, Collections.emptyList(), args.toArray());
 	}
 }
@@ -3,8 +3,6 @@ package com.damai.service;
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.collection.CollectionUtil;
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
-import com.alibaba.fastjson.JSONObject;
 import com.baidu.fsg.uid.UidGenerator;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
@@ -20,15 +18,20 @@ import com.damai.entity.OrderTicketUser;
 import com.damai.entity.OrderTicketUserAggregate;
 import com.damai.enums.*;
 import com.damai.exception.DaMaiFrameException;
+import com.damai.invalidation.CacheInvalidationBus;
 import com.damai.mapper.OrderMapper;
 import com.damai.mapper.OrderTicketUserMapper;
 import com.damai.redis.RedisCache;
+import com.damai.redis.ProgramSeatCacheKeys;
 import com.damai.redis.RedisKeyBuild;
+import com.damai.repeatexecutelimit.RepeatExecuteLimitMode;
 import com.damai.repeatexecutelimit.annotion.RepeatExecuteLimit;
 import com.damai.request.CustomizeRequestWrapper;
 import com.damai.service.delaysend.DelayOperateProgramDataSend;
 import com.damai.service.properties.OrderProperties;
+import com.damai.service.properties.OrderShardingProperties;
 import com.damai.servicelock.LockType;
+import com.damai.shardingsphere.DatabaseOrderComplexGeneArithmetic;
 import com.damai.servicelock.annotion.ServiceLock;
 import com.damai.util.DateUtils;
 import com.damai.util.ServiceLockTool;
@@ -48,6 +51,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.damai.constant.Constant.ALIPAY_NOTIFY_SUCCESS_RESULT;
+import static com.damai.constant.Constant.TICKET_CATEGORY_SOLD_OUT_REGION;
 import static com.damai.core.DistributedLockConstants.*;
 import static com.damai.core.RepeatExecuteLimitConstants.*;
 
@@ -58,6 +62,9 @@ import static com.damai.core.RepeatExecuteLimitConstants.*;
 @Service
 public class OrderService extends ServiceImpl<OrderMapper, Order> {
 
+	private static final DatabaseOrderComplexGeneArithmetic DATABASE_ORDER_COMPLEX_GENE_ARITHMETIC =
+			new DatabaseOrderComplexGeneArithmetic();
+
 	@Autowired
 	private UidGenerator uidGenerator;
 
@@ -85,6 +92,9 @@ public class OrderService extends ServiceImpl<OrderMapper, Order> {
 	@Autowired
 	private OrderProperties orderProperties;
 
+	@Autowired
+	private OrderShardingProperties orderShardingProperties;
+
 	@Lazy
 	@Autowired
 	private OrderService orderService;
@@ -95,6 +105,9 @@ public class OrderService extends ServiceImpl<OrderMapper, Order> {
 	@Autowired
 	private ServiceLockTool serviceLockTool;
 
+	@Autowired
+	private CacheInvalidationBus cacheInvalidationBus;
+
 	@Transactional(rollbackFor = Exception.class)
 	public String create(OrderCreateDto orderCreateDto) {
 		LambdaQueryWrapper<Order> orderLambdaQueryWrapper =
@@ -103,10 +116,76 @@ public class OrderService extends ServiceImpl<OrderMapper, Order> {
 		if (Objects.nonNull(oldOrder)) {
 			throw new DaMaiFrameException(BaseCode.ORDER_EXIST);
 		}
+		Order order = buildOrder(orderCreateDto);
+		List<OrderTicketUser> orderTicketUserList = buildOrderTicketUserList(orderCreateDto);
+		orderMapper.insert(order);
+		orderTicketUserService.saveBatch(orderTicketUserList);
+		return String.valueOf(order.getOrderNumber());
+	}
+
+	/**
+	 * 批量创建订单，调用方需要保证这批订单属于同一个分片，这样每个分片只有一个本地事务，
+	 * 并且订单编号的in查询也能路由到正确的分片
+	 * 以订单编号保证幂等，批次内重复的和已经存在的订单会被跳过
+	 *
+	 * @param orderCreateDtoList 同一分片的订单
+	 * @return 新创建的订单编号
+	 */
+	@Transactional(rollbackFor = Exception.class)
+	public List<String> createMqBatch(List<OrderCreateDto> orderCreateDtoList) {
+		Map<Long, OrderCreateDto> orderCreateDtoMap = new LinkedHashMap<>(orderCreateDtoList.size());
+		for (OrderCreateDto orderCreateDto : orderCreateDtoList) {
+			orderCreateDtoMap.putIfAbsent(orderCreateDto.getOrderNumber(), orderCreateDto);
+		}
+		LambdaQueryWrapper<Order> orderLambdaQueryWrapper = Wrappers.lambdaQuery(Order.class)
+				.select(Order::getOrderNumber)
+				.in(Order::getOrderNumber, orderCreateDtoMap.keySet());
+		for (Order oldOrder : orderMapper.selectList(orderLambdaQueryWrapper)) {
+			log.info("批量创建订单 订单已存在 跳过 订单号 : {}", oldOrder.getOrderNumber());
+			orderCreateDtoMap.remove(oldOrder.getOrderNumber());
+		}
+		if (orderCreateDtoMap.isEmpty()) {
+			return new ArrayList<>();
+		}
+		List<Order> orderList = new ArrayList<>(orderCreateDtoMap.size());
+		List<OrderTicketUser> orderTicketUserList = new ArrayList<>();
+		for (OrderCreateDto orderCreateDto : orderCreateDtoMap.values()) {
+			orderList.add(buildOrder(orderCreateDto));
+			orderTicketUserList.addAll(buildOrderTicketUserList(orderCreateDto));
+		}
+		//连接参数开启了rewriteBatchedStatements，批量保存会被改写成多行insert
+		saveBatch(orderList);
+		orderTicketUserService.saveBatch(orderTicketUserList);
+		List<String> orderNumberList = new ArrayList<>(orderList.size());
+		for (OrderCreateDto orderCreateDto : orderCreateDtoMap.values()) {
+			String orderNumber = String.valueOf(orderCreateDto.getOrderNumber());
+			redisCache.set(RedisKeyBuild.createRedisKey(RedisKeyManage.ORDER_MQ, orderNumber), orderNumber, 1, TimeUnit.MINUTES);
+			orderNumberList.add(orderNumber);
+		}
+		return orderNumberList;
+	}
+
+	/**
+	 * 订单所在的分片(分库下标-分表下标)，分库分表数量取自shardingsphere配置，和分片算法保持一致
+	 * 同一分片的订单才能放在一批，批量查询已存在订单的in条件只会按第一个订单号路由
+	 */
+	public String getOrderShardKey(Long orderNumber) {
+		Integer tableCount = orderShardingProperties.getTableCount();
+		long databaseIndex = DATABASE_ORDER_COMPLEX_GENE_ARITHMETIC.calculateDatabaseIndex(
+				orderShardingProperties.getDatabaseCount(), orderNumber, tableCount);
+		long tableIndex = (tableCount - 1) & orderNumber;
+		return databaseIndex + "-" + tableIndex;
+	}
+
+	private Order buildOrder(OrderCreateDto orderCreateDto) {
 		Order order = new Order();
 		BeanUtil.copyProperties(orderCreateDto, order);
 		order.setDistributionMode("电子票");
 		order.setTakeTicketMode("请使用购票人身份证直接入场");
+		return order;
+	}
+
+	private List<OrderTicketUser> buildOrderTicketUserList(OrderCreateDto orderCreateDto) {
 		List<OrderTicketUser> orderTicketUserList = new ArrayList<>();
 		for (OrderTicketUserCreateDto orderTicketUserCreateDto : orderCreateDto.getOrderTicketUserCreateDtoList()) {
 			OrderTicketUser orderTicketUser = new OrderTicketUser();
@@ -114,20 +193,13 @@ public class OrderService extends ServiceImpl<OrderMapper, Order> {
 			orderTicketUser.setId(uidGenerator.getUid());
 			orderTicketUserList.add(orderTicketUser);
 		}
-		orderMapper.insert(order);
-		orderTicketUserService.saveBatch(orderTicketUserList);
-		redisCache.incrBy(RedisKeyBuild.createRedisKey(
-						RedisKeyManage.ACCOUNT_ORDER_COUNT,
-						orderCreateDto.getUserId(),
-						orderCreateDto.getProgramId()),
-				orderCreateDto.getOrderTicketUserCreateDtoList().size());
-		return String.valueOf(order.getOrderNumber());
+		return orderTicketUserList;
 	}
 
 	/**
 	 * 订单取消，以订单编号加锁
 	 */
-	@RepeatExecuteLimit(name = CANCEL_PROGRAM_ORDER, keys = {"#orderCancelDto.orderNumber"})
+	@RepeatExecuteLimit(name = CANCEL_PROGRAM_ORDER, keys = {"#orderCancelDto.orderNumber"}, mode = RepeatExecuteLimitMode.TOKEN)
 	@ServiceLock(name = ORDER_CANCEL_LOCK, keys = {"#orderCancelDto.orderNumber"})
 	@Transactional(rollbackFor = Exception.class)
 	public boolean cancel(OrderCancelDto orderCancelDto) {
@@ -355,10 +427,6 @@ public class OrderService extends ServiceImpl<OrderMapper, Order> {
 		if (CollectionUtil.isEmpty(orderTicketUserList)) {
 			throw new DaMaiFrameException(BaseCode.TICKET_USER_ORDER_NOT_EXIST);
 		}
-		if (Objects.equals(orderStatus.getCode(), OrderStatus.CANCEL.getCode())) {
-			redisCache.incrBy(RedisKeyBuild.createRedisKey(
-					RedisKeyManage.ACCOUNT_ORDER_COUNT, order.getUserId(), order.getProgramId()), -updateTicketUserOrderResult);
-		}
 		Long programId = order.getProgramId();
 		Map<Long, List<OrderTicketUser>> orderTicketUserSeatList =
 				orderTicketUserList.stream().collect(Collectors.groupingBy(OrderTicketUser::getTicketCategoryId));
@@ -367,7 +435,7 @@ public class OrderService extends ServiceImpl<OrderMapper, Order> {
 			seatMap.put(k, v.stream().map(OrderTicketUser::getSeatId).collect(Collectors.toList()));
 		});
 
-		updateProgramRelatedDataResolution(programId, seatMap, orderStatus);
+		updateProgramRelatedDataResolution(programId, order.getUserId(), seatMap, orderStatus);
 	}
 
 	public void checkOrderStatus(Order order) {
@@ -385,69 +453,58 @@ public class OrderService extends ServiceImpl<OrderMapper, Order> {
 		}
 	}
 
-	public void updateProgramRelatedDataResolution(Long programId, Map<Long, List<Long>> seatMap, OrderStatus orderStatus) {
-		Map<Long, List<SeatVo>> seatVoMap = new HashMap<>(seatMap.size());
-		seatMap.forEach((k, v) -> seatVoMap.put(k, redisCache.multiGetForHash(
-				RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_LOCK_RESOLUTION_HASH, programId, k),
-				v.stream().map(String::valueOf).collect(Collectors.toList()), SeatVo.class)));
-		if (CollectionUtil.isEmpty(seatVoMap)) {
+	/**
+	 * 修改节目服务中的余票和座位缓存，取消订单时在同一个lua脚本中归还账户下的订单数量
+	 *
+	 * @param userId 用户id，为空时不修改账户下的订单数量
+	 */
+	public void updateProgramRelatedDataResolution(Long programId, Long userId, Map<Long, List<Long>> seatMap,
+												   OrderStatus orderStatus) {
+		if (CollectionUtil.isEmpty(seatMap)) {
 			throw new DaMaiFrameException(BaseCode.LOCK_SEAT_LIST_EMPTY);
 		}
-		JSONArray jsonArray = new JSONArray();
-		JSONArray addSeatDatajsonArray = new JSONArray();
-		List<TicketCategoryCountDto> ticketCategoryCountDtoList = new ArrayList<>(seatVoMap.size());
-		JSONArray unLockSeatIdjsonArray = new JSONArray();
+		Integer sellStatus = Objects.equals(orderStatus.getCode(), OrderStatus.PAY.getCode()) ?
+				SellStatus.SOLD.getCode() : SellStatus.NO_SOLD.getCode();
+		//只有取消订单才恢复余票
+		boolean recoverRemainNumber = Objects.equals(orderStatus.getCode(), OrderStatus.CANCEL.getCode());
+		List<TicketCategoryCountDto> ticketCategoryCountDtoList = new ArrayList<>(seatMap.size());
 		List<Long> unLockSeatIdList = new ArrayList<>();
-		seatVoMap.forEach((k, v) -> {
-			JSONObject unLockSeatIdjsonObject = new JSONObject();
-			unLockSeatIdjsonObject.put("programSeatLockHashKey", RedisKeyBuild.createRedisKey(
-					RedisKeyManage.PROGRAM_SEAT_LOCK_RESOLUTION_HASH, programId, k).getRelKey());
-			unLockSeatIdjsonObject.put("unLockSeatIdList", v.stream()
-					.map(SeatVo::getId).map(String::valueOf).collect(Collectors.toList()));
-			unLockSeatIdjsonArray.add(unLockSeatIdjsonObject);
-			JSONObject seatDatajsonObject = new JSONObject();
-			String seatHashKeyAdd = "";
-			if (Objects.equals(orderStatus.getCode(), OrderStatus.CANCEL.getCode())) {
-				seatHashKeyAdd = RedisKeyBuild.createRedisKey(
-						RedisKeyManage.PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH, programId, k).getRelKey();
-				for (SeatVo seatVo : v) {
-					seatVo.setSellStatus(SellStatus.NO_SOLD.getCode());
-				}
-			}
-			else if (Objects.equals(orderStatus.getCode(), OrderStatus.PAY.getCode())) {
-				seatHashKeyAdd = RedisKeyBuild.createRedisKey(
-						RedisKeyManage.PROGRAM_SEAT_SOLD_RESOLUTION_HASH, programId, k).getRelKey();
-				for (SeatVo seatVo : v) {
-					seatVo.setSellStatus(SellStatus.SOLD.getCode());
-				}
-			}
-			seatDatajsonObject.put("seatHashKeyAdd", seatHashKeyAdd);
-			List<String> seatDataList = new ArrayList<>();
-			for (SeatVo seatVo : v) {
-				seatDataList.add(String.valueOf(seatVo.getId()));
-				seatDataList.add(JSON.toJSONString(seatVo));
+		//参数按位置排列，格式见 OrderProgramDataResolution.lua
+		List<String> args = new ArrayList<>(2 + seatMap.size() * 9);
+		if (recoverRemainNumber && Objects.nonNull(userId)) {
+			args.add(RedisKeyBuild.createRedisKey(RedisKeyManage.ACCOUNT_ORDER_COUNT, userId, programId).getRelKey());
+			args.add(String.valueOf(-seatMap.values().stream().mapToInt(List::size).sum()));
+		}
+		else {
+			args.add("");
+			args.add("0");
+		}
+		seatMap.forEach((k, v) -> {
+			ProgramSeatCacheKeys programSeatCacheKeys = ProgramSeatCacheKeys.of(programId, k);
+			args.add(programSeatCacheKeys.getTicketRemainNumberHashKey());
+			args.add(programSeatCacheKeys.getTicketCategoryId());
+			args.add(recoverRemainNumber ? String.valueOf(v.size()) : "0");
+			args.add(programSeatCacheKeys.getSeatIndexHashKey());
+			args.add(programSeatCacheKeys.getSeatStateKey());
+			args.add(programSeatCacheKeys.getSeatFreeRunKey());
+			args.add(programSeatCacheKeys.getSeatVersionKey());
+			args.add(String.valueOf(sellStatus));
+			args.add(String.valueOf(v.size()));
+			for (Long seatId : v) {
+				args.add(String.valueOf(seatId));
 			}
-			seatDatajsonObject.put("seatDataList", seatDataList);
-			addSeatDatajsonArray.add(seatDatajsonObject);
-			JSONObject jsonObject = new JSONObject();
-			jsonObject.put("programTicketRemainNumberHashKey", RedisKeyBuild.createRedisKey(
-					RedisKeyManage.PROGRAM_TICKET_REMAIN_NUMBER_HASH_RESOLUTION, programId, k).getRelKey());
-			jsonObject.put("ticketCategoryId", String.valueOf(k));
-			jsonObject.put("count", v.size());
-			jsonArray.add(jsonObject);
 			TicketCategoryCountDto ticketCategoryCountDto = new TicketCategoryCountDto();
 			ticketCategoryCountDto.setTicketCategoryId(k);
 			ticketCategoryCountDto.setCount((long) v.size());
 			ticketCategoryCountDtoList.add(ticketCategoryCountDto);
-			unLockSeatIdList.addAll(v.stream().map(SeatVo::getId).toList());
+			unLockSeatIdList.addAll(v);
 		});
-		List<String> keys = new ArrayList<>();
-		keys.add(String.valueOf(orderStatus.getCode()));
-		Object[] data = new String[3];
-		data[0] = JSON.toJSONString(unLockSeatIdjsonArray);
-		data[1] = JSON.toJSONString(addSeatDatajsonArray);
-		data[2] = JSON.toJSONString(jsonArray);
-		orderProgramCacheResolutionOperate.programCacheReverseOperate(keys, data);
+		orderProgramCacheResolutionOperate.programCacheReverseOperate(args);
+		//取消订单恢复了余票，广播清除节目服务各节点的票档售罄标记，key为 节目id-票档id
+		if (Objects.equals(orderStatus.getCode(), OrderStatus.CANCEL.getCode())) {
+			cacheInvalidationBus.publish(TICKET_CATEGORY_SOLD_OUT_REGION, seatMap.keySet().stream()
+					.map(ticketCategoryId -> programId + "-" + ticketCategoryId).collect(Collectors.toList()));
+		}
 		if (Objects.equals(orderStatus.getCode(), OrderStatus.PAY.getCode())) {
 			ProgramOperateDataDto programOperateDataDto = new ProgramOperateDataDto();
 			programOperateDataDto.setProgramId(programId);
@@ -559,7 +616,7 @@ public class OrderService extends ServiceImpl<OrderMapper, Order> {
 	}
 
 
-	@RepeatExecuteLimit(name = CREATE_PROGRAM_ORDER_MQ, keys = {"#orderCreateDto.orderNumber"})
+	@RepeatExecuteLimit(name = CREATE_PROGRAM_ORDER_MQ, keys = {"#orderCreateDto.orderNumber"}, mode = RepeatExecuteLimitMode.TOKEN)
 	@Transactional(rollbackFor = Exception.class)
 	public String createMq(OrderCreateDto orderCreateDto) {
 		String orderNumber = create(orderCreateDto);
@@ -568,15 +625,16 @@ public class OrderService extends ServiceImpl<OrderMapper, Order> {
 	}
 
 	@RepeatExecuteLimit(name = PROGRAM_CACHE_REVERSE_MQ, keys = {"#programId"})
-	public void updateProgramRelatedDataMq(Long programId, Map<Long, List<Long>> seatMap, OrderStatus orderStatus) {
-		updateProgramRelatedDataResolution(programId, seatMap, orderStatus);
+	public void updateProgramRelatedDataMq(Long programId, Long userId, Map<Long, List<Long>> seatMap,
+										   OrderStatus orderStatus) {
+		updateProgramRelatedDataResolution(programId, userId, seatMap, orderStatus);
 	}
 
 	public String getCache(OrderGetDto orderGetDto) {
 		return redisCache.get(RedisKeyBuild.createRedisKey(RedisKeyManage.ORDER_MQ, orderGetDto.getOrderNumber()), String.class);
 	}
 
-	@RepeatExecuteLimit(name = CANCEL_PROGRAM_ORDER, keys = {"#orderCancelDto.orderNumber"})
+	@RepeatExecuteLimit(name = CANCEL_PROGRAM_ORDER, keys = {"#orderCancelDto.orderNumber"}, mode = RepeatExecuteLimitMode.TOKEN)
 	@ServiceLock(name = ORDER_CANCEL_LOCK, keys = {"#orderCancelDto.orderNumber"})
 	@Transactional(rollbackFor = Exception.class)
 	public boolean initiateCancel(OrderCancelDto orderCancelDto) {
@@ -12,9 +12,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -23,6 +25,7 @@ import static com.damai.constant.Constant.SPRING_INJECT_PREFIX_DISTINCTION_NAME;
 /**
  * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
  * @description: kafka 创建订单 消费
+ * 配置 createOrderBatchConsume=true 时使用批量消费，否则逐条消费，两者只会启动一个
  * @author: 阿星不是程序员
  **/
 @Slf4j
@@ -34,40 +37,96 @@ public class CreateOrderConsumer {
 	@Autowired
 	private OrderService orderService;
 
-	@KafkaListener(topics = {SPRING_INJECT_PREFIX_DISTINCTION_NAME + "-" + "${spring.kafka.topic:create_order}"})
+	@KafkaListener(topics = {SPRING_INJECT_PREFIX_DISTINCTION_NAME + "-" + "${spring.kafka.topic:create_order}"},
+			autoStartup = "#{!${createOrderBatchConsume:false}}")
 	public void consumerOrderMessage(ConsumerRecord<String, String> consumerRecord) {
 		try {
 			Optional.ofNullable(consumerRecord.value()).map(String::valueOf).ifPresent(value -> {
 
 				OrderCreateDto orderCreateDto = JSON.parseObject(value, OrderCreateDto.class);
 
-				long createOrderTimeTimestamp = orderCreateDto.getCreateOrderTime().getTime();
-
-				long currentTimeTimestamp = System.currentTimeMillis();
-
-				long delayTime = currentTimeTimestamp - createOrderTimeTimestamp;
-
-				log.info("消费到kafka的创建订单消息 消息体: {} 延迟时间 : {} 毫秒", value, delayTime);
-
-				if (currentTimeTimestamp - createOrderTimeTimestamp > MESSAGE_DELAY_TIME) {
-					log.info("消费到kafka的创建订单消息延迟时间大于了 {} 毫秒 此订单消息被丢弃 订单号 : {}",
-							delayTime, orderCreateDto.getOrderNumber());
-					Map<Long, List<OrderTicketUserCreateDto>> orderTicketUserSeatList =
-							orderCreateDto.getOrderTicketUserCreateDtoList().stream().collect(Collectors.groupingBy(OrderTicketUserCreateDto::getTicketCategoryId));
-					Map<Long, List<Long>> seatMap = new HashMap<>(orderTicketUserSeatList.size());
-					orderTicketUserSeatList.forEach((k, v) -> {
-						seatMap.put(k, v.stream().map(OrderTicketUserCreateDto::getSeatId).collect(Collectors.toList()));
-					});
-					orderService.updateProgramRelatedDataMq(orderCreateDto.getProgramId(), seatMap, OrderStatus.CANCEL);
-				}
-				else {
-					String orderNumber = orderService.createMq(orderCreateDto);
-					log.info("消费到kafka的创建订单消息 创建订单成功 订单号 : {}", orderNumber);
+				if (discardDelayMessage(value, orderCreateDto)) {
+					return;
 				}
+				String orderNumber = orderService.createMq(orderCreateDto);
+				log.info("消费到kafka的创建订单消息 创建订单成功 订单号 : {}", orderNumber);
 			});
 		}
 		catch (Exception e) {
 			log.error("处理消费到kafka的创建订单消息失败 error", e);
 		}
 	}
+
+	/**
+	 * 批量消费，按照订单编号的基因分片分组，每个分片一个事务批量插入
+	 */
+	@KafkaListener(topics = {SPRING_INJECT_PREFIX_DISTINCTION_NAME + "-" + "${spring.kafka.topic:create_order}"},
+			batch = "true", autoStartup = "${createOrderBatchConsume:false}")
+	public void consumerOrderMessageBatch(List<ConsumerRecord<String, String>> consumerRecordList) {
+		Map<String, List<OrderCreateDto>> shardOrderCreateDtoMap = new HashMap<>(8);
+		for (ConsumerRecord<String, String> consumerRecord : consumerRecordList) {
+			try {
+				String value = consumerRecord.value();
+				if (Objects.isNull(value)) {
+					continue;
+				}
+				OrderCreateDto orderCreateDto = JSON.parseObject(value, OrderCreateDto.class);
+				if (discardDelayMessage(value, orderCreateDto)) {
+					continue;
+				}
+				shardOrderCreateDtoMap.computeIfAbsent(orderService.getOrderShardKey(orderCreateDto.getOrderNumber()),
+						k -> new ArrayList<>()).add(orderCreateDto);
+			}
+			catch (Exception e) {
+				log.error("处理消费到kafka的创建订单消息失败 error", e);
+			}
+		}
+		shardOrderCreateDtoMap.forEach((shardKey, orderCreateDtoList) -> {
+			try {
+				List<String> orderNumberList = orderService.createMqBatch(orderCreateDtoList);
+				log.info("消费到kafka的创建订单消息 批量创建订单成功 分片 : {} 消息数量 : {} 创建数量 : {}",
+						shardKey, orderCreateDtoList.size(), orderNumberList.size());
+			}
+			catch (Exception e) {
+				//批量事务失败(例如并发重复消费触发了订单编号唯一索引)时退化成逐条创建，避免一条消息影响整个分片
+				log.error("批量创建订单失败 退化为逐条创建 分片 : {}", shardKey, e);
+				for (OrderCreateDto orderCreateDto : orderCreateDtoList) {
+					try {
+						orderService.createMq(orderCreateDto);
+					}
+					catch (Exception ex) {
+						log.error("处理消费到kafka的创建订单消息失败 订单号 : {}", orderCreateDto.getOrderNumber(), ex);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * 延迟时间过长的消息直接丢弃，并恢复节目的缓存数据
+	 */
+	private boolean discardDelayMessage(String value, OrderCreateDto orderCreateDto) {
+		long createOrderTimeTimestamp = orderCreateDto.getCreateOrderTime().getTime();
+
+		long currentTimeTimestamp = System.currentTimeMillis();
+
+		long delayTime = currentTimeTimestamp - createOrderTimeTimestamp;
+
+		log.info("消费到kafka的创建订单消息 消息体: {} 延迟时间 : {} 毫秒", value, delayTime);
+
+		if (delayTime <= MESSAGE_DELAY_TIME) {
+			return false;
+		}
+		log.info("消费到kafka的创建订单消息延迟时间大于了 {} 毫秒 此订单消息被丢弃 订单号 : {}",
+				delayTime, orderCreateDto.getOrderNumber());
+		Map<Long, List<OrderTicketUserCreateDto>> orderTicketUserSeatList =
+				orderCreateDto.getOrderTicketUserCreateDtoList().stream().collect(Collectors.groupingBy(OrderTicketUserCreateDto::getTicketCategoryId));
+		Map<Long, List<Long>> seatMap = new HashMap<>(orderTicketUserSeatList.size());
+		orderTicketUserSeatList.forEach((k, v) -> {
+			seatMap.put(k, v.stream().map(OrderTicketUserCreateDto::getSeatId).collect(Collectors.toList()));
+		});
+		orderService.updateProgramRelatedDataMq(orderCreateDto.getProgramId(), orderCreateDto.getUserId(), seatMap,
+				OrderStatus.CANCEL);
+		return true;
+	}
 }
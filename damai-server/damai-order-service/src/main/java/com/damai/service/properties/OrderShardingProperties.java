@@ -0,0 +1,114 @@
+package com.damai.service.properties;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import org.apache.shardingsphere.driver.api.yaml.YamlJDBCConfiguration;
+import org.apache.shardingsphere.infra.util.yaml.YamlEngine;
+import org.apache.shardingsphere.infra.yaml.config.pojo.algorithm.YamlAlgorithmConfiguration;
+import org.apache.shardingsphere.infra.yaml.config.pojo.rule.YamlRuleConfiguration;
+import org.apache.shardingsphere.sharding.yaml.config.YamlShardingRuleConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 订单分库分表数量，直接读取数据源使用的shardingsphere配置，避免和分片算法不一致
+ * @author: 阿星不是程序员
+ **/
+@Getter
+@Component
+public class OrderShardingProperties {
+
+	private static final String URL_PREFIX = "jdbc:shardingsphere:";
+
+	private static final String ABSOLUTE_PATH_PREFIX = "absolutepath:";
+
+	private static final String ORDER_DATABASE_ALGORITHM_NAME = "databaseOrderComplexGeneArithmetic";
+
+	private static final String ORDER_TICKET_USER_DATABASE_ALGORITHM_NAME = "databaseOrderTicketUserComplexGeneArithmetic";
+
+	private static final String SHARDING_COUNT_KEY_NAME = "sharding-count";
+
+	private static final String TABLE_SHARDING_COUNT_KEY_NAME = "table-sharding-count";
+
+	@Value("${spring.datasource.url}")
+	private String dataSourceUrl;
+
+	private final ResourceLoader resourceLoader;
+
+	/**
+	 * 订单分库数量
+	 */
+	private Integer databaseCount;
+
+	/**
+	 * 订单分表数量
+	 */
+	private Integer tableCount;
+
+	public OrderShardingProperties(ResourceLoader resourceLoader) {
+		this.resourceLoader = resourceLoader;
+	}
+
+	@PostConstruct
+	public void init() {
+		Map<String, YamlAlgorithmConfiguration> shardingAlgorithms = loadShardingAlgorithms();
+		Properties orderProps = getAlgorithmProps(shardingAlgorithms, ORDER_DATABASE_ALGORITHM_NAME);
+		Properties orderTicketUserProps = getAlgorithmProps(shardingAlgorithms, ORDER_TICKET_USER_DATABASE_ALGORITHM_NAME);
+		databaseCount = getCount(orderProps, SHARDING_COUNT_KEY_NAME);
+		tableCount = getCount(orderProps, TABLE_SHARDING_COUNT_KEY_NAME);
+		if (!databaseCount.equals(getCount(orderTicketUserProps, SHARDING_COUNT_KEY_NAME)) ||
+				!tableCount.equals(getCount(orderTicketUserProps, TABLE_SHARDING_COUNT_KEY_NAME))) {
+			throw new IllegalStateException(String.format("%s and %s must use the same sharding counts in %s",
+					ORDER_DATABASE_ALGORITHM_NAME, ORDER_TICKET_USER_DATABASE_ALGORITHM_NAME, dataSourceUrl));
+		}
+	}
+
+	private Map<String, YamlAlgorithmConfiguration> loadShardingAlgorithms() {
+		if (!dataSourceUrl.startsWith(URL_PREFIX)) {
+			throw new IllegalStateException("spring.datasource.url is not a shardingsphere url : " + dataSourceUrl);
+		}
+		String location = dataSourceUrl.substring(URL_PREFIX.length());
+		if (location.startsWith(ABSOLUTE_PATH_PREFIX)) {
+			location = "file:" + location.substring(ABSOLUTE_PATH_PREFIX.length());
+		}
+		Resource resource = resourceLoader.getResource(location);
+		YamlJDBCConfiguration configuration;
+		try (InputStream inputStream = resource.getInputStream()) {
+			configuration = YamlEngine.unmarshal(inputStream.readAllBytes(), YamlJDBCConfiguration.class);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("read shardingsphere config failed : " + location, e);
+		}
+		for (YamlRuleConfiguration rule : configuration.getRules()) {
+			if (rule instanceof YamlShardingRuleConfiguration shardingRule) {
+				return shardingRule.getShardingAlgorithms();
+			}
+		}
+		throw new IllegalStateException("sharding rule not found in " + location);
+	}
+
+	private Properties getAlgorithmProps(Map<String, YamlAlgorithmConfiguration> shardingAlgorithms, String algorithmName) {
+		YamlAlgorithmConfiguration algorithm = shardingAlgorithms.get(algorithmName);
+		if (Objects.isNull(algorithm) || Objects.isNull(algorithm.getProps())) {
+			throw new IllegalStateException("sharding algorithm not found : " + algorithmName);
+		}
+		return algorithm.getProps();
+	}
+
+	private Integer getCount(Properties props, String key) {
+		Object value = props.get(key);
+		if (Objects.isNull(value)) {
+			throw new IllegalStateException("sharding algorithm property not found : " + key);
+		}
+		return Integer.parseInt(String.valueOf(value));
+	}
+}
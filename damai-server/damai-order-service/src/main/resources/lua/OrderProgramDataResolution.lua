@@ -1,24 +1,100 @@
-local operate_order_status = tonumber(KEYS[1])
-local un_lock_seat_id_json_array = cjson.decode(ARGV[1])
-local add_seat_data_json_array = cjson.decode(ARGV[2])
-for index, un_lock_seat_id_json_object in pairs(un_lock_seat_id_json_array) do
-    local program_seat_hash_key = un_lock_seat_id_json_object.programSeatLockHashKey
-    local un_lock_seat_id_list = un_lock_seat_id_json_object.unLockSeatIdList
-    redis.call('HDEL', program_seat_hash_key, unpack(un_lock_seat_id_list))
+-- 参数全部按位置排列，不做json解析，格式为：
+-- 账户下订单数量key, 账户下订单数量变化数量(0为不变),
+-- 然后是每个票档：余票hash key, 票档id, 余票变化数量(0为不变), 座位槽位索引key, 座位状态位图key, 每排连续空座索引key, 座位图版本号key, 座位要修改成的售卖状态, 座位数量m, m个座位id
+
+-- 以下函数在 programDataResolution.lua、programDataCreateOrderResolution.lua、OrderProgramDataResolution.lua 中
+-- 各有一份完全相同的副本，redis脚本不能引用公共代码，修改时需要同步修改全部副本
+-- 重新计算某一排的最长连续未售卖座位数，写回每排1个字节的索引(128 + min(连续数, 127))
+local function refresh_free_run(seat_state_key, seat_free_run_key, row_stride, row)
+    local start_slot = row * row_stride
+    local end_slot = start_slot + row_stride - 1
+    local start_byte = math.floor(start_slot / 4)
+    local row_state = redis.call('getrange', seat_state_key, start_byte, math.floor(end_slot / 4))
+    local max_run = 0
+    local run = 0
+    for slot = start_slot, end_slot do
+        local b = string.byte(row_state, math.floor(slot / 4) - start_byte + 1) or 0
+        if bit.band(bit.rshift(b, 6 - (slot % 4) * 2), 3) == 1 then
+            run = run + 1
+            max_run = math.max(max_run, run)
+        else
+            run = 0
+        end
+    end
+    redis.call('setrange', seat_free_run_key, row, string.char(128 + math.min(max_run, 127)))
+end
+
+-- 以下函数在 programSeatInit.lua、programDel.lua、programDataResolution.lua、programDataCreateOrderResolution.lua、
+-- OrderProgramDataResolution.lua 中各有一份完全相同的副本，redis脚本不能引用公共代码，修改时需要同步修改全部副本
+-- 递增节目的座位图版本号，key不存在时用服务器时间(微秒)作为初始值，避免key重建后版本号回退和之前的版本重复
+-- expire_second大于0时把版本号的过期时间延长到和座位缓存一致(演出时间)，不会缩短已有的过期时间
+local function bump_seat_version(seat_version_key, expire_second)
+    if redis.call('exists', seat_version_key) == 0 then
+        local time = redis.call('time')
+        redis.call('set', seat_version_key, time[1] .. string.format('%06d', tonumber(time[2])))
+    end
+    redis.call('incr', seat_version_key)
+    if expire_second and expire_second > 0 and redis.call('ttl', seat_version_key) < expire_second then
+        redis.call('expire', seat_version_key, expire_second)
+    end
 end
 
-for index, add_seat_data_json_object in pairs(add_seat_data_json_array) do
-    local seat_hash_key_add = add_seat_data_json_object.seatHashKeyAdd
-    local seat_data_list = add_seat_data_json_object.seatDataList
-    redis.call('HMSET', seat_hash_key_add, unpack(seat_data_list))
+-- 取消订单归还账户下的订单数量，缓存已经过期的话不处理，下次下单会从订单服务重新加载
+local account_order_count_key = ARGV[1]
+local account_order_count_increase = tonumber(ARGV[2])
+if (account_order_count_increase ~= 0 and redis.call('EXISTS', account_order_count_key) == 1) then
+    redis.call('INCRBY', account_order_count_key, account_order_count_increase)
 end
 
-if (operate_order_status == 2) then
-    local ticket_category_list = cjson.decode(ARGV[3])
-    for index, increase_data in ipairs(ticket_category_list) do
-        local program_ticket_remain_number_hash_key = increase_data.programTicketRemainNumberHashKey
-        local ticket_category_id = increase_data.ticketCategoryId
-        local increase_count = increase_data.count
+local cursor = 3
+-- 同一个节目的多个票档只递增一次版本号
+local bumped_version_key_list = {}
+while cursor <= #ARGV do
+    local program_ticket_remain_number_hash_key = ARGV[cursor]
+    local ticket_category_id = ARGV[cursor + 1]
+    local increase_count = tonumber(ARGV[cursor + 2])
+    local seat_index_hash_key = ARGV[cursor + 3]
+    local seat_state_key = ARGV[cursor + 4]
+    local seat_free_run_key = ARGV[cursor + 5]
+    local seat_version_key = ARGV[cursor + 6]
+    local sell_status = tonumber(ARGV[cursor + 7])
+    local seat_count = tonumber(ARGV[cursor + 8])
+    local seat_id_list = { unpack(ARGV, cursor + 9, cursor + 8 + seat_count) }
+    cursor = cursor + 9 + seat_count
+    if (increase_count ~= 0) then
         redis.call('HINCRBY', program_ticket_remain_number_hash_key, ticket_category_id, increase_count)
     end
-end
\ No newline at end of file
+    if (seat_count > 0) then
+        local slot_list = redis.call('HMGET', seat_index_hash_key, unpack(seat_id_list))
+        local bitfield_args = {}
+        for index, slot in ipairs(slot_list) do
+            if slot then
+                table.insert(bitfield_args, 'SET')
+                table.insert(bitfield_args, 'u2')
+                table.insert(bitfield_args, '#' .. slot)
+                table.insert(bitfield_args, sell_status)
+            end
+        end
+        if #bitfield_args > 0 then
+            redis.call('BITFIELD', seat_state_key, unpack(bitfield_args))
+            if not bumped_version_key_list[seat_version_key] then
+                bumped_version_key_list[seat_version_key] = true
+                bump_seat_version(seat_version_key, redis.call('ttl', seat_state_key))
+            end
+        end
+        -- 支付只是 锁定->已售卖，不影响连续空座，只有取消订单需要刷新每排连续空座索引
+        if #bitfield_args > 0 and sell_status == 1 then
+            local row_stride = tonumber(redis.call('HGET', seat_index_hash_key, '_row_stride'))
+            local refreshed_row_list = {}
+            for index, slot in ipairs(slot_list) do
+                if slot then
+                    local row = math.floor(tonumber(slot) / row_stride)
+                    if not refreshed_row_list[row] then
+                        refreshed_row_list[row] = true
+                        refresh_free_run(seat_state_key, seat_free_run_key, row_stride, row)
+                    end
+                end
+            end
+        end
+    end
+end
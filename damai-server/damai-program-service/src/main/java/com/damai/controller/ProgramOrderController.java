@@ -3,15 +3,19 @@ package com.damai.controller;
 import com.damai.common.ApiResponse;
 import com.damai.dto.ProgramOrderCreateDto;
 import com.damai.enums.ProgramOrderVersion;
+import com.damai.service.ProgramOrderService;
 import com.damai.service.strategy.ProgramOrderContext;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
  * @description: 节目订单 控制层
@@ -22,9 +26,13 @@ import org.springframework.web.bind.annotation.RestController;
 @Tag(name = "program-order", description = "节目订单")
 public class ProgramOrderController {
 
+	@Autowired
+	private ProgramOrderService programOrderService;
+
 	@Operation(summary = "购票V1")
 	@PostMapping(value = "/create/v1")
 	public ApiResponse<String> createV1(@Valid @RequestBody ProgramOrderCreateDto programOrderCreateDto) {
+		programOrderService.checkTicketCategorySoldOut(programOrderCreateDto);
 		return ApiResponse.ok(ProgramOrderContext.get(ProgramOrderVersion.V1_VERSION.getVersion())
 				.createOrder(programOrderCreateDto));
 	}
@@ -32,6 +40,7 @@ public class ProgramOrderController {
 	@Operation(summary = "购票V2")
 	@PostMapping(value = "/create/v2")
 	public ApiResponse<String> createV2(@Valid @RequestBody ProgramOrderCreateDto programOrderCreateDto) {
+		programOrderService.checkTicketCategorySoldOut(programOrderCreateDto);
 		return ApiResponse.ok(ProgramOrderContext.get(ProgramOrderVersion.V2_VERSION.getVersion())
 				.createOrder(programOrderCreateDto));
 	}
@@ -39,6 +48,7 @@ public class ProgramOrderController {
 	@Operation(summary = "购票V3")
 	@PostMapping(value = "/create/v3")
 	public ApiResponse<String> createV3(@Valid @RequestBody ProgramOrderCreateDto programOrderCreateDto) {
+		programOrderService.checkTicketCategorySoldOut(programOrderCreateDto);
 		return ApiResponse.ok(ProgramOrderContext.get(ProgramOrderVersion.V3_VERSION.getVersion())
 				.createOrder(programOrderCreateDto));
 	}
@@ -46,7 +56,24 @@ public class ProgramOrderController {
 	@Operation(summary = "购票V4")
 	@PostMapping(value = "/create/v4")
 	public ApiResponse<String> createV4(@Valid @RequestBody ProgramOrderCreateDto programOrderCreateDto) {
+		programOrderService.checkTicketCategorySoldOut(programOrderCreateDto);
 		return ApiResponse.ok(ProgramOrderContext.get(ProgramOrderVersion.V4_VERSION.getVersion())
 				.createOrder(programOrderCreateDto));
 	}
+
+	@Operation(summary = "购票V4(异步)")
+	@PostMapping(value = "/create/v4/async")
+	public CompletableFuture<ApiResponse<String>> createV4Async(@Valid @RequestBody ProgramOrderCreateDto programOrderCreateDto) {
+		programOrderService.checkTicketCategorySoldOut(programOrderCreateDto);
+		return ProgramOrderContext.get(ProgramOrderVersion.V4_VERSION.getVersion())
+				.createOrderAsync(programOrderCreateDto).thenApply(ApiResponse::ok);
+	}
+
+	@Operation(summary = "购票V5")
+	@PostMapping(value = "/create/v5")
+	public ApiResponse<String> createV5(@Valid @RequestBody ProgramOrderCreateDto programOrderCreateDto) {
+		programOrderService.checkTicketCategorySoldOut(programOrderCreateDto);
+		return ApiResponse.ok(ProgramOrderContext.get(ProgramOrderVersion.V5_VERSION.getVersion())
+				.createOrder(programOrderCreateDto));
+	}
 }
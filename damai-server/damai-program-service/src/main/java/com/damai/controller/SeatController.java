@@ -10,11 +10,17 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Objects;
+
 /**
  * SeatController类负责处理与座位相关的HTTP请求，
  * 提供座位添加、批量添加和查询座位相关信息的功能。
@@ -56,13 +62,24 @@ public class SeatController {
 
 	/**
 	 * 查询座位相关信息。
+	 * 响应头中的ETag由节目id和座位图版本号组成，客户端通过If-None-Match带回，座位图没有变化时返回304且没有响应体。
 	 *
 	 * @param seatListDto 包含了用于查询座位信息的条件。
+	 * @param ifNoneMatch 客户端上一次收到的ETag。
 	 * @return 返回一个包含座位相关信息的ApiResponse对象。
 	 */
 	@Operation(summary = "查询座位相关信息")
 	@PostMapping(value = "/relate/info")
-	public ApiResponse<SeatRelateInfoVo> relateInfo(@Valid @RequestBody SeatListDto seatListDto) {
-		return ApiResponse.ok(seatService.relateInfo(seatListDto));
+	public ResponseEntity<ApiResponse<SeatRelateInfoVo>> relateInfo(@Valid @RequestBody SeatListDto seatListDto,
+																	@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		SeatRelateInfoVo seatRelateInfoVo = seatService.relateInfo(seatListDto);
+		if (Objects.isNull(seatRelateInfoVo.getVersion())) {
+			return ResponseEntity.ok(ApiResponse.ok(seatRelateInfoVo));
+		}
+		String eTag = "\"" + seatRelateInfoVo.getProgramId() + "-" + seatRelateInfoVo.getVersion() + "\"";
+		if (eTag.equals(ifNoneMatch)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+		}
+		return ResponseEntity.ok().eTag(eTag).body(ApiResponse.ok(seatRelateInfoVo));
 	}
 }
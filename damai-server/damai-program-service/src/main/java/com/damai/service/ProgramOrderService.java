@@ -2,9 +2,8 @@ package com.damai.service;
 
 import cn.hutool.core.collection.CollectionUtil;
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
-import com.alibaba.fastjson.JSONObject;
 import com.baidu.fsg.uid.UidGenerator;
+import com.damai.BusinessThreadPool;
 import com.damai.client.OrderClient;
 import com.damai.common.ApiResponse;
 import com.damai.core.RedisKeyManage;
@@ -14,15 +13,22 @@ import com.damai.enums.BaseCode;
 import com.damai.enums.OrderStatus;
 import com.damai.enums.SellStatus;
 import com.damai.exception.DaMaiFrameException;
+import com.damai.redis.ProgramSeatCacheKeys;
+import com.damai.redis.RedisCache;
 import com.damai.redis.RedisKeyBuild;
+import com.damai.service.batch.ProgramCacheCreateOrderBatch;
+import com.damai.service.cache.local.LocalCacheTicketCategorySoldOut;
 import com.damai.service.delaysend.DelayOrderCancelSend;
 import com.damai.service.kafka.CreateOrderMqDomain;
 import com.damai.service.kafka.CreateOrderSend;
+import com.damai.service.lease.TicketCategoryStockLease;
 import com.damai.service.lua.ProgramCacheCreateOrderData;
 import com.damai.service.lua.ProgramCacheCreateOrderResolutionOperate;
 import com.damai.service.lua.ProgramCacheResolutionOperate;
 import com.damai.service.tool.SeatMatch;
+import com.damai.service.tool.TokenExpireManager;
 import com.damai.util.DateUtils;
+import com.damai.vo.AccountOrderCountVo;
 import com.damai.vo.ProgramVo;
 import com.damai.vo.SeatVo;
 import com.damai.vo.TicketCategoryVo;
@@ -33,8 +39,11 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.damai.service.constant.ProgramOrderConstant.ORDER_TABLE_COUNT;
@@ -76,11 +85,51 @@ public class ProgramOrderService {
 	@Autowired
 	private SeatService seatService;
 
-	public List<TicketCategoryVo> getTicketCategoryList(ProgramOrderCreateDto programOrderCreateDto, Date showTime) {
+	@Autowired
+	private LocalCacheTicketCategorySoldOut localCacheTicketCategorySoldOut;
+
+	@Autowired
+	private ProgramCacheCreateOrderBatch programCacheCreateOrderBatch;
+
+	@Autowired
+	private RedisCache redisCache;
+
+	@Autowired
+	private TokenExpireManager tokenExpireManager;
+
+	@Autowired
+	private TicketCategoryStockLease ticketCategoryStockLease;
+
+	/**
+	 * 在进入防重复提交、校验、加锁和lua脚本之前，通过本地的票档售罄标记快速拒绝
+	 */
+	public void checkTicketCategorySoldOut(ProgramOrderCreateDto programOrderCreateDto) {
+		Long programId = programOrderCreateDto.getProgramId();
+		Map<Long, Long> ticketCategoryCountMap;
+		if (CollectionUtil.isNotEmpty(programOrderCreateDto.getSeatDtoList())) {
+			ticketCategoryCountMap = programOrderCreateDto.getSeatDtoList().stream()
+					.filter(seatDto -> Objects.nonNull(seatDto.getTicketCategoryId()))
+					.collect(Collectors.groupingBy(SeatDto::getTicketCategoryId, Collectors.counting()));
+		}
+		else if (Objects.nonNull(programOrderCreateDto.getTicketCategoryId())
+				&& Objects.nonNull(programOrderCreateDto.getTicketCount())) {
+			ticketCategoryCountMap = Map.of(programOrderCreateDto.getTicketCategoryId(),
+					programOrderCreateDto.getTicketCount().longValue());
+		}
+		else {
+			return;
+		}
+		for (Entry<Long, Long> entry : ticketCategoryCountMap.entrySet()) {
+			if (localCacheTicketCategorySoldOut.isSoldOut(programId, entry.getKey(), entry.getValue())) {
+				throw new DaMaiFrameException(BaseCode.TICKET_REMAIN_NUMBER_NOT_SUFFICIENT);
+			}
+		}
+	}
+
+	public List<TicketCategoryVo> getTicketCategoryList(ProgramOrderCreateDto programOrderCreateDto) {
 		List<TicketCategoryVo> getTicketCategoryVoList = new ArrayList<>();
 		List<TicketCategoryVo> ticketCategoryVoList =
-				ticketCategoryService.selectTicketCategoryListByProgramIdMultipleCache(programOrderCreateDto.getProgramId(),
-						showTime);
+				ticketCategoryService.selectTicketCategoryListByProgramIdMultipleCache(programOrderCreateDto.getProgramId());
 		Map<Long, TicketCategoryVo> ticketCategoryVoMap =
 				ticketCategoryVoList.stream()
 						.collect(Collectors.toMap(TicketCategoryVo::getId, ticketCategoryVo -> ticketCategoryVo));
@@ -112,7 +161,7 @@ public class ProgramOrderService {
 		ProgramShowTime programShowTime =
 				programShowTimeService.selectProgramShowTimeByProgramIdMultipleCache(programOrderCreateDto.getProgramId());
 		List<TicketCategoryVo> getTicketCategoryList =
-				getTicketCategoryList(programOrderCreateDto, programShowTime.getShowTime());
+				getTicketCategoryList(programOrderCreateDto);
 		BigDecimal parameterOrderPrice = new BigDecimal("0");
 		BigDecimal databaseOrderPrice = new BigDecimal("0");
 		List<SeatVo> purchaseSeatList = new ArrayList<>();
@@ -169,7 +218,8 @@ public class ProgramOrderService {
 				throw new DaMaiFrameException(BaseCode.SEAT_OCCUPY);
 			}
 		}
-		updateProgramCacheDataResolution(programOrderCreateDto.getProgramId(), purchaseSeatList, OrderStatus.NO_PAY);
+		updateProgramCacheDataResolution(programOrderCreateDto.getProgramId(), programOrderCreateDto.getUserId(),
+				purchaseSeatList, OrderStatus.NO_PAY);
 		return doCreate(programOrderCreateDto, purchaseSeatList);
 	}
 
@@ -184,68 +234,177 @@ public class ProgramOrderService {
 		return doCreateV2(programOrderCreateDto, purchaseSeatList);
 	}
 
+	/**
+	 * 不阻塞请求线程，kafka确认发送之后才完成
+	 */
+	public CompletableFuture<String> createNewAsyncNonBlocking(ProgramOrderCreateDto programOrderCreateDto) {
+		List<SeatVo> purchaseSeatList = createOrderOperateProgramCacheResolution(programOrderCreateDto);
+		OrderCreateDto orderCreateDto = buildCreateOrderParam(programOrderCreateDto, purchaseSeatList);
+		//kafka回调线程不做阻塞操作，发送成功后的后续处理交给业务线程池，并使用请求线程的上下文
+		Executor callbackExecutor = BusinessThreadPool.contextExecutor();
+		return createOrderByMqAsync(orderCreateDto, purchaseSeatList).thenApplyAsync(orderNumber -> {
+			DelayOrderCancelDto delayOrderCancelDto = new DelayOrderCancelDto();
+			delayOrderCancelDto.setOrderNumber(orderCreateDto.getOrderNumber());
+			delayOrderCancelSend.sendMessage(JSON.toJSONString(delayOrderCancelDto));
+			return orderNumber;
+		}, callbackExecutor);
+	}
+
+	public String createNewBatch(ProgramOrderCreateDto programOrderCreateDto) {
+		//订单编号提前生成，作为批量扣减的结果标记
+		Long orderNumber = uidGenerator.getOrderNumber(programOrderCreateDto.getUserId(), ORDER_TABLE_COUNT);
+		List<SeatVo> purchaseSeatList = createOrderOperateProgramCacheResolutionBatch(programOrderCreateDto, orderNumber);
+		return doCreateV2(buildCreateOrderParam(programOrderCreateDto, purchaseSeatList, orderNumber), purchaseSeatList);
+	}
+
 	public List<SeatVo> createOrderOperateProgramCacheResolution(ProgramOrderCreateDto programOrderCreateDto) {
+		boolean leased = acquireStockLease(programOrderCreateDto);
+		try {
+			List<String> args = buildProgramCacheCreateOrderArgs(programOrderCreateDto, leased, "");
+			ProgramCacheCreateOrderData programCacheCreateOrderData =
+					programCacheCreateOrderResolutionOperate.programCacheOperate(args).get(0);
+			if (Objects.equals(programCacheCreateOrderData.getCode(), BaseCode.ACCOUNT_ORDER_COUNT_NOT_EXIST.getCode())) {
+				loadAccountOrderCount(programOrderCreateDto.getUserId(), programOrderCreateDto.getProgramId());
+				programCacheCreateOrderData = programCacheCreateOrderResolutionOperate.programCacheOperate(args).get(0);
+			}
+			return resolveProgramCacheCreateOrderData(programOrderCreateDto.getProgramId(), programCacheCreateOrderData);
+		}
+		catch (RuntimeException e) {
+			if (leased) {
+				ticketCategoryStockLease.release(programOrderCreateDto.getProgramId(),
+						programOrderCreateDto.getTicketCategoryId(), programOrderCreateDto.getTicketCount());
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 开启余票租借时，不选座的订单先在本地租借的余票中扣减，lua脚本中只分配座位
+	 *
+	 * @return 是否已经在本地扣减了余票
+	 */
+	private boolean acquireStockLease(ProgramOrderCreateDto programOrderCreateDto) {
+		if (!ticketCategoryStockLease.isEnable() || CollectionUtil.isNotEmpty(programOrderCreateDto.getSeatDtoList())) {
+			return false;
+		}
+		Long programId = programOrderCreateDto.getProgramId();
+		Long ticketCategoryId = programOrderCreateDto.getTicketCategoryId();
+		ticketCategoryStockLease.acquire(programId, ticketCategoryId, programOrderCreateDto.getTicketCount(),
+				() -> ticketCategoryService.getRedisRemainNumberResolution(programId, ticketCategoryId));
+		return true;
+	}
+
+	/**
+	 * 同一票档的请求合并成一次lua调用执行
+	 * 脚本为每个订单写入以订单编号为key的结果标记，批次调用在客户端报错时根据标记确认每个订单是否已经扣减
+	 */
+	public List<SeatVo> createOrderOperateProgramCacheResolutionBatch(ProgramOrderCreateDto programOrderCreateDto, Long orderNumber) {
+		Long programId = programOrderCreateDto.getProgramId();
+		RedisKeyBuild resultKey = RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_ORDER_CREATE_RESULT, orderNumber);
+		List<String> args = buildProgramCacheCreateOrderArgs(programOrderCreateDto, false, resultKey.getRelKey());
+		List<SeatDto> seatDtoList = programOrderCreateDto.getSeatDtoList();
+		String batchKey = CollectionUtil.isNotEmpty(seatDtoList) ?
+				programId + "-" + seatDtoList.stream().map(SeatDto::getTicketCategoryId).distinct().sorted()
+						.map(String::valueOf).collect(Collectors.joining("-")) :
+				programId + "-" + programOrderCreateDto.getTicketCategoryId();
+		Consumer<ProgramCacheCreateOrderData> abandonHandler = abandonData -> updateProgramCacheDataResolution(programId,
+				programOrderCreateDto.getUserId(), resolveProgramCacheCreateOrderData(programId, abandonData),
+				OrderStatus.CANCEL);
+		ProgramCacheCreateOrderData programCacheCreateOrderData =
+				programCacheCreateOrderBatch.submit(batchKey, args, resultKey, abandonHandler);
+		if (Objects.equals(programCacheCreateOrderData.getCode(), BaseCode.ACCOUNT_ORDER_COUNT_NOT_EXIST.getCode())) {
+			loadAccountOrderCount(programOrderCreateDto.getUserId(), programId);
+			programCacheCreateOrderData = programCacheCreateOrderBatch.submit(batchKey, args, resultKey, abandonHandler);
+		}
+		return resolveProgramCacheCreateOrderData(programId, programCacheCreateOrderData);
+	}
+
+	/**
+	 * 构建lua脚本的参数，按位置排列，格式见 programDataCreateOrderResolution.lua
+	 *
+	 * @param leased    余票是否已经在本地租借的余票中扣减
+	 * @param resultKey 订单结果标记key，空字符串表示不记录
+	 */
+	private List<String> buildProgramCacheCreateOrderArgs(ProgramOrderCreateDto programOrderCreateDto, boolean leased,
+														  String resultKey) {
 		ProgramShowTime programShowTime =
 				programShowTimeService.selectProgramShowTimeByProgramIdMultipleCache(programOrderCreateDto.getProgramId());
 		List<TicketCategoryVo> getTicketCategoryList =
-				getTicketCategoryList(programOrderCreateDto, programShowTime.getShowTime());
+				getTicketCategoryList(programOrderCreateDto);
 		for (TicketCategoryVo ticketCategory : getTicketCategoryList) {
 			seatService.selectSeatResolution(programOrderCreateDto.getProgramId(), ticketCategory.getId(),
 					DateUtils.countBetweenSecond(DateUtils.now(), programShowTime.getShowTime()), TimeUnit.SECONDS);
-			ticketCategoryService.getRedisRemainNumberResolution(
-					programOrderCreateDto.getProgramId(), ticketCategory.getId());
+			if (!leased) {
+				ticketCategoryService.getRedisRemainNumberResolution(
+						programOrderCreateDto.getProgramId(), ticketCategory.getId());
+			}
 		}
 		Long programId = programOrderCreateDto.getProgramId();
+		String accountOrderCountKey = RedisKeyBuild.createRedisKey(RedisKeyManage.ACCOUNT_ORDER_COUNT,
+				programOrderCreateDto.getUserId(), programId).getRelKey();
+		String perAccountLimitPurchaseCount = String.valueOf(programService.simpleGetProgramAndShowMultipleCache(programId)
+				.getPerAccountLimitPurchaseCount());
 		List<SeatDto> seatDtoList = programOrderCreateDto.getSeatDtoList();
-		List<String> keys = new ArrayList<>();
-		String[] data = new String[2];
-		JSONArray jsonArray = new JSONArray();
-		JSONArray addSeatDatajsonArray = new JSONArray();
+		List<String> args;
 		if (CollectionUtil.isNotEmpty(seatDtoList)) {
-			keys.add("1");
 			Map<Long, List<SeatDto>> seatTicketCategoryDtoCount = seatDtoList.stream()
 					.collect(Collectors.groupingBy(SeatDto::getTicketCategoryId));
+			args = new ArrayList<>(5 + seatTicketCategoryDtoCount.size() * 9 + seatDtoList.size() * 2);
+			args.add("1");
+			args.add(accountOrderCountKey);
+			args.add(perAccountLimitPurchaseCount);
+			args.add(resultKey);
+			args.add(String.valueOf(seatTicketCategoryDtoCount.size()));
 			for (Entry<Long, List<SeatDto>> entry : seatTicketCategoryDtoCount.entrySet()) {
-				Long ticketCategoryId = entry.getKey();
-				int ticketCount = entry.getValue().size();
-				JSONObject jsonObject = new JSONObject();
-				jsonObject.put("programTicketRemainNumberHashKey", RedisKeyBuild.createRedisKey(
-						RedisKeyManage.PROGRAM_TICKET_REMAIN_NUMBER_HASH_RESOLUTION, programId, ticketCategoryId).getRelKey());
-				jsonObject.put("ticketCategoryId", ticketCategoryId);
-				jsonObject.put("ticketCount", ticketCount);
-				jsonArray.add(jsonObject);
-
-				JSONObject seatDatajsonObject = new JSONObject();
-				seatDatajsonObject.put("seatNoSoldHashKey", RedisKeyBuild.createRedisKey(
-						RedisKeyManage.PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH, programId, ticketCategoryId).getRelKey());
-				seatDatajsonObject.put("seatDataList", JSON.toJSONString(seatDtoList));
-				addSeatDatajsonArray.add(seatDatajsonObject);
+				List<SeatDto> ticketCategorySeatDtoList = entry.getValue();
+				addTicketCategoryArgs(args, ProgramSeatCacheKeys.of(programId, entry.getKey()),
+						ticketCategorySeatDtoList.size(), ticketCategorySeatDtoList.size(), false);
+				for (SeatDto seatDto : ticketCategorySeatDtoList) {
+					args.add(String.valueOf(seatDto.getId()));
+					args.add(seatDto.getPrice().toPlainString());
+				}
 			}
 		}
 		else {
-			keys.add("2");
-			Long ticketCategoryId = programOrderCreateDto.getTicketCategoryId();
-			Integer ticketCount = programOrderCreateDto.getTicketCount();
-			JSONObject jsonObject = new JSONObject();
-			jsonObject.put("programTicketRemainNumberHashKey", RedisKeyBuild.createRedisKey(
-					RedisKeyManage.PROGRAM_TICKET_REMAIN_NUMBER_HASH_RESOLUTION, programId, ticketCategoryId).getRelKey());
-			jsonObject.put("ticketCategoryId", ticketCategoryId);
-			jsonObject.put("ticketCount", ticketCount);
-			jsonObject.put("seatNoSoldHashKey", RedisKeyBuild.createRedisKey(
-					RedisKeyManage.PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH, programId, ticketCategoryId).getRelKey());
-			jsonArray.add(jsonObject);
+			args = new ArrayList<>(14);
+			args.add("2");
+			args.add(accountOrderCountKey);
+			args.add(perAccountLimitPurchaseCount);
+			args.add(resultKey);
+			args.add("1");
+			addTicketCategoryArgs(args, ProgramSeatCacheKeys.of(programId, programOrderCreateDto.getTicketCategoryId()),
+					programOrderCreateDto.getTicketCount(), 0, leased);
 		}
-		keys.add(RedisKeyBuild.getRedisKey(RedisKeyManage.PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH));
-		keys.add(RedisKeyBuild.getRedisKey(RedisKeyManage.PROGRAM_SEAT_LOCK_RESOLUTION_HASH));
-		keys.add(String.valueOf(programOrderCreateDto.getProgramId()));
-		data[0] = JSON.toJSONString(jsonArray);
-		data[1] = JSON.toJSONString(addSeatDatajsonArray);
-		ProgramCacheCreateOrderData programCacheCreateOrderData =
-				programCacheCreateOrderResolutionOperate.programCacheOperate(keys, data);
+		return args;
+	}
+
+	private void addTicketCategoryArgs(List<String> args, ProgramSeatCacheKeys programSeatCacheKeys,
+									   int ticketCount, int seatCount, boolean leased) {
+		args.add(leased ? "" : programSeatCacheKeys.getTicketRemainNumberHashKey());
+		args.add(programSeatCacheKeys.getTicketCategoryId());
+		args.add(String.valueOf(ticketCount));
+		args.add(programSeatCacheKeys.getSeatMetaHashKey());
+		args.add(programSeatCacheKeys.getSeatIndexHashKey());
+		args.add(programSeatCacheKeys.getSeatStateKey());
+		args.add(programSeatCacheKeys.getSeatFreeRunKey());
+		args.add(programSeatCacheKeys.getSeatVersionKey());
+		args.add(String.valueOf(seatCount));
+	}
+
+	private List<SeatVo> resolveProgramCacheCreateOrderData(Long programId,
+															ProgramCacheCreateOrderData programCacheCreateOrderData) {
 		if (!Objects.equals(programCacheCreateOrderData.getCode(), BaseCode.SUCCESS.getCode())) {
+			if (Objects.equals(programCacheCreateOrderData.getCode(), BaseCode.TICKET_REMAIN_NUMBER_NOT_SUFFICIENT.getCode())
+					&& Objects.nonNull(programCacheCreateOrderData.getTicketCategoryId())) {
+				localCacheTicketCategorySoldOut.mark(programId, programCacheCreateOrderData.getTicketCategoryId(),
+						programCacheCreateOrderData.getRemainNumber());
+			}
 			throw new DaMaiFrameException(Objects.requireNonNull(BaseCode.getRc(programCacheCreateOrderData.getCode())));
 		}
-		return programCacheCreateOrderData.getPurchaseSeatList();
+		List<SeatVo> purchaseSeatList = programCacheCreateOrderData.getPurchaseSeatList();
+		//缓存中的座位静态数据不包含售卖状态，这里的座位已经被脚本锁定
+		purchaseSeatList.forEach(seatVo -> seatVo.setSellStatus(SellStatus.LOCK.getCode()));
+		return purchaseSeatList;
 	}
 
 	private String doCreate(ProgramOrderCreateDto programOrderCreateDto, List<SeatVo> purchaseSeatList) {
@@ -261,8 +420,10 @@ public class ProgramOrderService {
 	}
 
 	private String doCreateV2(ProgramOrderCreateDto programOrderCreateDto, List<SeatVo> purchaseSeatList) {
-		OrderCreateDto orderCreateDto = buildCreateOrderParam(programOrderCreateDto, purchaseSeatList);
+		return doCreateV2(buildCreateOrderParam(programOrderCreateDto, purchaseSeatList), purchaseSeatList);
+	}
 
+	private String doCreateV2(OrderCreateDto orderCreateDto, List<SeatVo> purchaseSeatList) {
 		String orderNumber = createOrderByMq(orderCreateDto, purchaseSeatList);
 
 		DelayOrderCancelDto delayOrderCancelDto = new DelayOrderCancelDto();
@@ -273,9 +434,15 @@ public class ProgramOrderService {
 	}
 
 	private OrderCreateDto buildCreateOrderParam(ProgramOrderCreateDto programOrderCreateDto, List<SeatVo> purchaseSeatList) {
+		return buildCreateOrderParam(programOrderCreateDto, purchaseSeatList,
+				uidGenerator.getOrderNumber(programOrderCreateDto.getUserId(), ORDER_TABLE_COUNT));
+	}
+
+	private OrderCreateDto buildCreateOrderParam(ProgramOrderCreateDto programOrderCreateDto, List<SeatVo> purchaseSeatList,
+												 Long orderNumber) {
 		ProgramVo programVo = programService.simpleGetProgramAndShowMultipleCache(programOrderCreateDto.getProgramId());
 		OrderCreateDto orderCreateDto = new OrderCreateDto();
-		orderCreateDto.setOrderNumber(uidGenerator.getOrderNumber(programOrderCreateDto.getUserId(), ORDER_TABLE_COUNT));
+		orderCreateDto.setOrderNumber(orderNumber);
 		orderCreateDto.setProgramId(programOrderCreateDto.getProgramId());
 		orderCreateDto.setProgramItemPicture(programVo.getItemPicture());
 		orderCreateDto.setUserId(programOrderCreateDto.getUserId());
@@ -317,7 +484,8 @@ public class ProgramOrderService {
 		ApiResponse<String> createOrderResponse = orderClient.create(orderCreateDto);
 		if (!Objects.equals(createOrderResponse.getCode(), BaseCode.SUCCESS.getCode())) {
 			log.error("创建订单失败 需人工处理 orderCreateDto : {}", JSON.toJSONString(orderCreateDto));
-			updateProgramCacheDataResolution(orderCreateDto.getProgramId(), purchaseSeatList, OrderStatus.CANCEL);
+			updateProgramCacheDataResolution(orderCreateDto.getProgramId(), orderCreateDto.getUserId(),
+					purchaseSeatList, OrderStatus.CANCEL);
 			throw new DaMaiFrameException(createOrderResponse);
 		}
 		return createOrderResponse.getData();
@@ -334,7 +502,8 @@ public class ProgramOrderService {
 		}, ex -> {
 			log.error("创建订单kafka发送消息失败 error", ex);
 			log.error("创建订单失败 需人工处理 orderCreateDto : {}", JSON.toJSONString(orderCreateDto));
-			updateProgramCacheDataResolution(orderCreateDto.getProgramId(), purchaseSeatList, OrderStatus.CANCEL);
+			updateProgramCacheDataResolution(orderCreateDto.getProgramId(), orderCreateDto.getUserId(),
+					purchaseSeatList, OrderStatus.CANCEL);
 			createOrderMqDomain.daMaiFrameException = new DaMaiFrameException(ex);
 			latch.countDown();
 		});
@@ -351,99 +520,94 @@ public class ProgramOrderService {
 		return createOrderMqDomain.orderNumber;
 	}
 
-	private void updateProgramCacheDataResolution(Long programId, List<SeatVo> seatVoList, OrderStatus orderStatus) {
+	private CompletableFuture<String> createOrderByMqAsync(OrderCreateDto orderCreateDto, List<SeatVo> purchaseSeatList) {
+		CompletableFuture<String> completableFuture = new CompletableFuture<>();
+		createOrderSend.sendMessage(JSON.toJSONString(orderCreateDto), sendResult -> {
+			assert sendResult != null;
+			log.info("创建订单kafka发送消息成功 topic : {}", sendResult.getRecordMetadata().topic());
+			completableFuture.complete(String.valueOf(orderCreateDto.getOrderNumber()));
+		}, ex -> {
+			log.error("创建订单kafka发送消息失败 error", ex);
+			log.error("创建订单失败 需人工处理 orderCreateDto : {}", JSON.toJSONString(orderCreateDto));
+			try {
+				updateProgramCacheDataResolution(orderCreateDto.getProgramId(), orderCreateDto.getUserId(),
+						purchaseSeatList, OrderStatus.CANCEL);
+			}
+			finally {
+				completableFuture.completeExceptionally(new DaMaiFrameException(ex));
+			}
+		});
+		return completableFuture;
+	}
+
+	/**
+	 * 从订单服务加载账户下的订单数量放入缓存，缓存已经存在时不覆盖，避免覆盖掉lua脚本已经累加的数量
+	 */
+	private void loadAccountOrderCount(Long userId, Long programId) {
+		AccountOrderCountDto accountOrderCountDto = new AccountOrderCountDto();
+		accountOrderCountDto.setUserId(userId);
+		accountOrderCountDto.setProgramId(programId);
+		ApiResponse<AccountOrderCountVo> apiResponse = orderClient.accountOrderCount(accountOrderCountDto);
+		if (!Objects.equals(apiResponse.getCode(), BaseCode.SUCCESS.getCode())) {
+			log.error("order client rpc accountOrderCount response : {}", JSON.toJSONString(apiResponse));
+			throw new DaMaiFrameException(apiResponse);
+		}
+		Integer count = Optional.ofNullable(apiResponse.getData()).map(AccountOrderCountVo::getCount).orElse(0);
+		redisCache.setIfAbsent(RedisKeyBuild.createRedisKey(RedisKeyManage.ACCOUNT_ORDER_COUNT, userId, programId),
+				count, tokenExpireManager.getTokenExpireTime() + 1, TimeUnit.MINUTES);
+	}
+
+	private void updateProgramCacheDataResolution(Long programId, Long userId, List<SeatVo> seatVoList,
+												  OrderStatus orderStatus) {
 		//如果要操作的订单状态不是未支付和取消，那么直接拒绝
 		if (!(Objects.equals(orderStatus.getCode(), OrderStatus.NO_PAY.getCode()) ||
 				Objects.equals(orderStatus.getCode(), OrderStatus.CANCEL.getCode()))) {
 			throw new DaMaiFrameException(BaseCode.OPERATE_ORDER_STATUS_NOT_PERMIT);
 		}
-		List<String> keys = new ArrayList<>();
-		//这里key只是占位，并不起实际作用
-		keys.add("#");
-
-		String[] data = new String[3];
-		Map<Long, Long> ticketCategoryCountMap =
-				seatVoList.stream().collect(Collectors.groupingBy(SeatVo::getTicketCategoryId, Collectors.counting()));
-		//更新票档数据集合
-		JSONArray jsonArray = new JSONArray();
-		ticketCategoryCountMap.forEach((k, v) -> {
-			//这里是计算更新票档数据
-			JSONObject jsonObject = new JSONObject();
-			//票档数量的key
-			jsonObject.put("programTicketRemainNumberHashKey", RedisKeyBuild.createRedisKey(
-					RedisKeyManage.PROGRAM_TICKET_REMAIN_NUMBER_HASH_RESOLUTION, programId, k).getRelKey());
-			//票档id
-			jsonObject.put("ticketCategoryId", String.valueOf(k));
-			//如果是生成订单操作，则将扣减余票数量
-			if (Objects.equals(orderStatus.getCode(), OrderStatus.NO_PAY.getCode())) {
-				jsonObject.put("count", "-" + v);
-				//如果是取消订单操作，则将恢复余票数量
-			}
-			else if (Objects.equals(orderStatus.getCode(), OrderStatus.CANCEL.getCode())) {
-				jsonObject.put("count", v);
-			}
-			jsonArray.add(jsonObject);
-		});
 		//座位map key:票档id  value:座位集合
 		Map<Long, List<SeatVo>> seatVoMap =
 				seatVoList.stream().collect(Collectors.groupingBy(SeatVo::getTicketCategoryId));
-		JSONArray delSeatIdjsonArray = new JSONArray();
-		JSONArray addSeatDatajsonArray = new JSONArray();
+		//如果是生成订单操作，则将座位修改为锁定状态，如果是取消订单操作，则将座位修改为未售卖状态
+		Integer sellStatus = Objects.equals(orderStatus.getCode(), OrderStatus.NO_PAY.getCode()) ?
+				SellStatus.LOCK.getCode() : SellStatus.NO_SOLD.getCode();
+		//参数按位置排列，格式见 programDataResolution.lua
+		List<String> args = new ArrayList<>(3 + seatVoMap.size() * 9 + seatVoList.size());
+		//如果是生成订单操作，则校验并累加账户下的订单数量，如果是取消订单操作，则归还账户下的订单数量
+		boolean noPay = Objects.equals(orderStatus.getCode(), OrderStatus.NO_PAY.getCode());
+		args.add(RedisKeyBuild.createRedisKey(RedisKeyManage.ACCOUNT_ORDER_COUNT, userId, programId).getRelKey());
+		args.add(String.valueOf(noPay ? seatVoList.size() : -seatVoList.size()));
+		args.add(noPay ? String.valueOf(programService.simpleGetProgramAndShowMultipleCache(programId)
+				.getPerAccountLimitPurchaseCount()) : "-1");
 		seatVoMap.forEach((k, v) -> {
-			JSONObject delSeatIdjsonObject = new JSONObject();
-			JSONObject seatDatajsonObject = new JSONObject();
-			String seatHashKeyDel = "";
-			String seatHashKeyAdd = "";
-			//如果是生成订单操作，则将座位修改为锁定状态
-			if (Objects.equals(orderStatus.getCode(), OrderStatus.NO_PAY.getCode())) {
-				//没有售卖座位的key
-				seatHashKeyDel = (RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH, programId, k).getRelKey());
-				//锁定座位的key
-				seatHashKeyAdd = (RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_LOCK_RESOLUTION_HASH, programId, k).getRelKey());
-				for (SeatVo seatVo : v) {
-					seatVo.setSellStatus(SellStatus.LOCK.getCode());
-				}
-				//如果是取消订单操作，则将座位修改为未售卖状态
-			}
-			else if (Objects.equals(orderStatus.getCode(), OrderStatus.CANCEL.getCode())) {
-				//锁定座位的key
-				seatHashKeyDel = (RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_LOCK_RESOLUTION_HASH, programId, k).getRelKey());
-				//没有售卖座位的key
-				seatHashKeyAdd = (RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH, programId, k).getRelKey());
-				for (SeatVo seatVo : v) {
-					seatVo.setSellStatus(SellStatus.NO_SOLD.getCode());
-				}
-			}
-			//要进行删除座位的key
-			delSeatIdjsonObject.put("seatHashKeyDel", seatHashKeyDel);
-			//如果是订单创建，那么就扣除未售卖的座位id
-			//如果是订单取消，那么就扣除锁定的座位id
-			delSeatIdjsonObject.put("seatIdList", v.stream().map(SeatVo::getId).map(String::valueOf).collect(Collectors.toList()));
-			delSeatIdjsonArray.add(delSeatIdjsonObject);
-			//要进行添加座位的key
-			seatDatajsonObject.put("seatHashKeyAdd", seatHashKeyAdd);
-			//如果是订单创建的操作，那么添加到锁定的座位数据
-			//如果是订单订单的操作，那么添加到未售卖的座位数据
-			List<String> seatDataList = new ArrayList<>();
-			//循环座位
+			ProgramSeatCacheKeys programSeatCacheKeys = ProgramSeatCacheKeys.of(programId, k);
+			args.add(programSeatCacheKeys.getTicketRemainNumberHashKey());
+			args.add(programSeatCacheKeys.getTicketCategoryId());
+			//如果是生成订单操作，则将扣减余票数量，如果是取消订单操作，则将恢复余票数量
+			args.add(Objects.equals(orderStatus.getCode(), OrderStatus.NO_PAY.getCode()) ?
+					String.valueOf(-v.size()) : String.valueOf(v.size()));
+			args.add(programSeatCacheKeys.getSeatIndexHashKey());
+			args.add(programSeatCacheKeys.getSeatStateKey());
+			args.add(programSeatCacheKeys.getSeatFreeRunKey());
+			args.add(programSeatCacheKeys.getSeatVersionKey());
+			args.add(String.valueOf(sellStatus));
+			args.add(String.valueOf(v.size()));
 			for (SeatVo seatVo : v) {
-				//选放入座位的id
-				seatDataList.add(String.valueOf(seatVo.getId()));
-				//接着放入座位对象
-				seatDataList.add(JSON.toJSONString(seatVo));
+				args.add(String.valueOf(seatVo.getId()));
+				seatVo.setSellStatus(sellStatus);
 			}
-			//要进行添加座位的数据
-			seatDatajsonObject.put("seatDataList", seatDataList);
-			addSeatDatajsonArray.add(seatDatajsonObject);
 		});
-
-		//票档相关数据
-		data[0] = JSON.toJSONString(jsonArray);
-		//要进行删除座位的key
-		data[1] = JSON.toJSONString(delSeatIdjsonArray);
-		//要进行添加座位的相关数据
-		data[2] = JSON.toJSONString(addSeatDatajsonArray);
 		//执行lua脚本
-		programCacheResolutionOperate.programCacheOperate(keys, data);
+		Integer code = programCacheResolutionOperate.programCacheOperate(args);
+		if (Objects.equals(code, BaseCode.ACCOUNT_ORDER_COUNT_NOT_EXIST.getCode())) {
+			loadAccountOrderCount(userId, programId);
+			code = programCacheResolutionOperate.programCacheOperate(args);
+		}
+		if (!Objects.equals(code, BaseCode.SUCCESS.getCode())) {
+			throw new DaMaiFrameException(Objects.requireNonNull(BaseCode.getRc(code)));
+		}
+		//取消订单恢复了余票，广播清除各节点的票档售罄标记
+		if (Objects.equals(orderStatus.getCode(), OrderStatus.CANCEL.getCode())) {
+			localCacheTicketCategorySoldOut.recover(programId, new ArrayList<>(seatVoMap.keySet()));
+		}
 	}
 }
@@ -27,30 +27,40 @@ import com.damai.initialize.impl.composite.CompositeContainer;
 import com.damai.mapper.*;
 import com.damai.page.PageUtil;
 import com.damai.page.PageVo;
+import com.damai.redis.RedisBatch;
 import com.damai.redis.RedisCache;
 import com.damai.redis.RedisKeyBuild;
+import com.damai.redis.multiple.MultipleCache;
+import com.damai.redis.multiple.MultipleCacheManager;
 import com.damai.repeatexecutelimit.annotion.RepeatExecuteLimit;
-import com.damai.service.cache.local.*;
+import com.damai.service.cache.MultipleCacheInvalidationRegister;
+import com.damai.service.cache.local.LocalCacheTicketCategorySoldOut;
+import com.damai.service.constant.MultipleCacheName;
 import com.damai.service.constant.ProgramTimeType;
 import com.damai.service.es.ProgramEs;
+import com.damai.service.lease.TicketCategoryStockLease;
 import com.damai.service.lua.ProgramDelCacheData;
 import com.damai.service.tool.TokenExpireManager;
 import com.damai.servicelock.LockType;
-import com.damai.servicelock.annotion.ServiceLock;
 import com.damai.threadlocal.BaseParameterHolder;
 import com.damai.util.DateUtils;
 import com.damai.util.ServiceLockTool;
 import com.damai.util.StringUtil;
 import com.damai.vo.*;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -123,19 +133,16 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 	private RedisStreamPushHandler redisStreamPushHandler;
 
 	@Autowired
-	private LocalCacheProgram localCacheProgram;
+	private MultipleCacheManager multipleCacheManager;
 
 	@Autowired
-	private LocalCacheProgramGroup localCacheProgramGroup;
+	private MultipleCacheInvalidationRegister multipleCacheInvalidationRegister;
 
 	@Autowired
-	private LocalCacheProgramCategory localCacheProgramCategory;
+	private LocalCacheTicketCategorySoldOut localCacheTicketCategorySoldOut;
 
 	@Autowired
-	private LocalCacheProgramShowTime localCacheProgramShowTime;
-
-	@Autowired
-	private LocalCacheTicketCategory localCacheTicketCategory;
+	private TicketCategoryStockLease ticketCategoryStockLease;
 
 	@Autowired
 	private CompositeContainer compositeContainer;
@@ -146,6 +153,62 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 	@Autowired
 	private ProgramDelCacheData programDelCacheData;
 
+	/**
+	 * 本地缓存的容量
+	 */
+	@Value("${maximumSize:10000}")
+	private Long maximumSize;
+
+	/**
+	 * 多级缓存快要过期之前多久开始后台刷新(秒)
+	 */
+	@Value("${multipleCacheRefreshAheadSeconds:60}")
+	private Long refreshAheadSeconds;
+
+	private MultipleCache<Long, ProgramVo> programMultipleCache;
+
+	private MultipleCache<Long, ProgramGroupVo> programGroupMultipleCache;
+
+	private MultipleCache<Long, ProgramCategory> programCategoryMultipleCache;
+
+	/**
+	 * 节目、节目分组、节目类型的多级缓存
+	 * 节目和节目分组在本地缓存和redis中都到演出时间过期，快要过期时在后台刷新，
+	 * 演出时间续期时由续期任务重新加载，见 {@link #reloadMultipleCache(Long)}
+	 * 节目类型只有本地缓存，不过期
+	 */
+	@PostConstruct
+	public void initMultipleCache() {
+		programMultipleCache = multipleCacheManager.<Long, ProgramVo>builder(MultipleCacheName.PROGRAM)
+				.maximumSize(maximumSize)
+				.redisKey(programId -> RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM, programId))
+				.redisValueType(ProgramVo.class)
+				.lock(programId -> serviceLockTool.getLock(LockType.Reentrant, GET_PROGRAM_LOCK,
+						new String[]{String.valueOf(programId)}))
+				.loader(programId -> {
+					log.info("查询节目详情 从缓存没有查询到 节目id : {}", programId);
+					return createProgramVo(programId);
+				})
+				.expireAt((programId, programVo) ->
+						programShowTimeService.selectProgramShowTimeByProgramIdMultipleCache(programId).getShowTime())
+				.refreshAhead(Duration.ofSeconds(refreshAheadSeconds), BusinessThreadPool::execute)
+				.build();
+		programGroupMultipleCache = multipleCacheManager.<Long, ProgramGroupVo>builder(MultipleCacheName.PROGRAM_GROUP)
+				.maximumSize(maximumSize)
+				.redisKey(programGroupId -> RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_GROUP, programGroupId))
+				.redisValueType(ProgramGroupVo.class)
+				.lock(programGroupId -> serviceLockTool.getLock(LockType.Reentrant, GET_PROGRAM_LOCK,
+						new String[]{String.valueOf(programGroupId)}))
+				.loader(this::createProgramGroupVo)
+				.expireAt((programGroupId, programGroupVo) -> programGroupVo.getRecentShowTime())
+				.refreshAhead(Duration.ofSeconds(refreshAheadSeconds), BusinessThreadPool::execute)
+				.build();
+		programCategoryMultipleCache = multipleCacheManager.<Long, ProgramCategory>builder(MultipleCacheName.PROGRAM_CATEGORY)
+				.maximumSize(maximumSize)
+				.loader(this::getProgramCategory)
+				.build();
+	}
+
 	/**
 	 * 添加节目
 	 *
@@ -497,8 +560,7 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 		ProgramShowTime programShowTime = programShowTimeService.selectProgramShowTimeByProgramId(programIdFromDto);
 
 		// 从节目表获取数据，以及区域信息
-		long expireTime = DateUtils.countBetweenSecond(DateUtils.now(), programShowTime.getShowTime());
-		ProgramVo programVo = programService.getById(programIdFromDto, expireTime, TimeUnit.SECONDS);
+		ProgramVo programVo = programService.getByIdRemoteCache(programIdFromDto);
 		programVo.setShowTime(programShowTime.getShowTime());
 		programVo.setShowDayTime(programShowTime.getShowDayTime());
 		programVo.setShowWeekTime(programShowTime.getShowWeekTime());
@@ -507,12 +569,9 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 		ProgramGroupVo programGroupVo = programService.getProgramGroup(programVo.getProgramGroupId());
 		programVo.setProgramGroupVo(programGroupVo);
 
-		// 预先加载用户购票人
-		preloadTicketUserList(programVo.getHighHeat());
-
-		// 预先加载用户下节目订单数量
+		// 预先加载用户购票人和用户下节目订单数量
 		Long programId = programVo.getId();
-		preloadAccountOrderCount(programId);
+		preload(programVo.getHighHeat(), programId);
 
 		// 设置节目类型相关信息
 		ProgramCategory programCategory = getProgramCategory(programVo.getProgramCategoryId());
@@ -527,7 +586,7 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 		}
 
 		// 查询节目票档信息
-		List<TicketCategoryVo> ticketCategoryVoList = ticketCategoryService.selectTicketCategoryListByProgramId(programId, expireTime, TimeUnit.SECONDS);
+		List<TicketCategoryVo> ticketCategoryVoList = ticketCategoryService.selectTicketCategoryListByProgramId(programId);
 		programVo.setTicketCategoryVoList(ticketCategoryVoList);
 
 		return programVo;
@@ -553,7 +612,7 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 				programShowTimeService.selectProgramShowTimeByProgramIdMultipleCache(programGetDto.getId());
 
 		// 根据节目ID和播出时间查询节目基本信息
-		ProgramVo programVo = programService.getByIdMultipleCache(programGetDto.getId(), programShowTime.getShowTime());
+		ProgramVo programVo = programService.getByIdMultipleCache(programGetDto.getId());
 
 		// 设置节目播出时间相关信息
 		programVo.setShowTime(programShowTime.getShowTime());
@@ -564,11 +623,8 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 		ProgramGroupVo programGroupVo = programService.getProgramGroupMultipleCache(programVo.getProgramGroupId());
 		programVo.setProgramGroupVo(programGroupVo);
 
-		// 预加载热门票务用户列表，可能用于后续的票务推荐或显示
-		preloadTicketUserList(programVo.getHighHeat());
-
-		// 预加载账户订单数量，可能用于个性化展示或业务逻辑判断
-		preloadAccountOrderCount(programVo.getId());
+		// 预加载热门票务用户列表和账户订单数量，用于后续的下单
+		preload(programVo.getHighHeat(), programVo.getId());
 
 		// 查询并设置节目类别信息
 		ProgramCategory programCategory = getProgramCategoryMultipleCache(programVo.getProgramCategoryId());
@@ -582,7 +638,7 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 		}
 
 		// 查询并设置票务类别列表
-		List<TicketCategoryVo> ticketCategoryVoList = ticketCategoryService.selectTicketCategoryListByProgramIdMultipleCache(programVo.getId(), programShowTime.getShowTime());
+		List<TicketCategoryVo> ticketCategoryVoList = ticketCategoryService.selectTicketCategoryListByProgramIdMultipleCache(programVo.getId());
 		programVo.setTicketCategoryVoList(ticketCategoryVoList);
 
 		// 返回填充完毕的节目详情对象
@@ -594,39 +650,20 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 	 * 查询节目表详情执行（多级）
 	 *
 	 * @param programId 节目id
-	 * @param showTime  节目演出时间
 	 * @return 执行后的结果
 	 */
-	public ProgramVo getByIdMultipleCache(Long programId, Date showTime) {
-		RedisKeyBuild redisKey = RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM, programId);
-		return localCacheProgram.getCache(
-				redisKey.getRelKey(),
-				key -> {
-					log.info("查询节目详情 从本地缓存没有查询到 节目id : {}", programId);
-					long expireTime = DateUtils.countBetweenSecond(DateUtils.now(), showTime);
-					ProgramVo programVo = getById(programId, expireTime, TimeUnit.SECONDS);
-					programVo.setShowTime(showTime);
-					return programVo;
-				});
+	public ProgramVo getByIdMultipleCache(Long programId) {
+		return programMultipleCache.get(programId);
 	}
 
 	/**
-	 * 根据节目ID获取节目信息，使用本地缓存和Redis缓存
-	 * 首先尝试从本地缓存中获取节目信息，如果未命中，则从Redis缓存中获取
+	 * 根据节目ID获取节目信息，使用本地缓存和Redis缓存，都没有命中时不从数据库加载
 	 *
 	 * @param programId 节目ID
 	 * @return 节目信息对象，如果未找到则返回null
 	 */
 	public ProgramVo simpleGetByIdMultipleCache(Long programId) {
-		// 创建Redis键
-		RedisKeyBuild redisKey = RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM, programId);
-		// 尝试从本地缓存中获取节目信息
-		ProgramVo programVoCache = localCacheProgram.getCache(redisKey.getRelKey());
-		if (Objects.nonNull(programVoCache)) {
-			return programVoCache;
-		}
-		// 如果本地缓存未命中，则从Redis缓存中获取节目信息
-		return redisCache.get(redisKey, ProgramVo.class);
+		return programMultipleCache.getWithoutLoad(programId);
 	}
 
 	/**
@@ -663,112 +700,39 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 	}
 
 	/**
-	 * 根据节目ID获取节目详细信息
-	 * 本方法使用了两个锁，一个是方法级别的ServiceLock，读锁，另一个是在缓存未命中时才加的RLock
+	 * 根据节目ID获取节目详细信息，不经过本地缓存
 	 * 首先尝试从Redis缓存中获取节目信息.
 	 * 如果缓存未命中，则需要加分布式锁来保证数据的一致性：避免在高并发场景下出现多个线程重复创建同一份节目信息、缓存不一致等问题
-	 * 线程在获取RLock锁之后，再次尝试从Redis获取数据，如果仍然没有，则调用创建节目信息的方法
+	 * 线程在获取锁之后，再次尝试从Redis获取数据，如果仍然没有，则调用创建节目信息的方法
 	 * 并将结果缓存到Redis中
 	 *
-	 * @param programId  节目ID
-	 * @param expireTime 缓存过期时间
-	 * @param timeUnit   缓存过期时间单位
+	 * @param programId 节目ID
 	 * @return 节目详细信息对象
 	 */
-	@ServiceLock(lockType = LockType.Read, name = PROGRAM_LOCK, keys = {"#programId"})
-	public ProgramVo getById(Long programId, Long expireTime, TimeUnit timeUnit) {
-		// 尝试从Redis缓存中获取节目信息
-		RedisKeyBuild redisKey = RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM, programId);
-		ProgramVo programVo = redisCache.get(redisKey, ProgramVo.class);
-
-		// 如果缓存中存在节目信息，则直接返回
-		if (Objects.nonNull(programVo)) {
-			return programVo;
-		}
-
-		// 记录日志，表示从Redis缓存中未查询到节目详情
-		log.info("查询节目详情 从Redis缓存没有查询到 节目id : {}", programId);
-
-		// 获取服务端锁，确保接下来的操作数据一致性
-		RLock lock = serviceLockTool.getLock(LockType.Reentrant, GET_PROGRAM_LOCK, new String[]{String.valueOf(programId)});
-
-		// 加锁，避免并发环境下多个线程重复创建同一份节目信息造成的缓存不一致问题
-		lock.lock();
-		try {
-			// 再次尝试从Redis获取节目信息，如果仍然没有，则调用创建节目信息的方法
-			// 并将结果缓存到Redis中
-			return redisCache.get(
-					redisKey,
-					ProgramVo.class,
-					() -> createProgramVo(programId),
-					expireTime,
-					timeUnit);
-		}
-		finally {
-			// 释放锁，确保其他线程可以继续执行
-			lock.unlock();
-		}
+	public ProgramVo getByIdRemoteCache(Long programId) {
+		return programMultipleCache.getRemote(programId);
 	}
 
 	/**
 	 * 根据节目组ID获取节目组信息，使用本地缓存和Redis缓存双重缓存策略
-	 * 首先尝试从本地缓存中获取数据，如果未命中，则调用getProgramGroup方法从Redis缓存或数据库中获取数据
 	 *
 	 * @param programGroupId 节目组ID
 	 * @return 节目组信息对象
 	 */
 	public ProgramGroupVo getProgramGroupMultipleCache(Long programGroupId) {
-		return localCacheProgramGroup.getCache(
-				RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_GROUP, programGroupId).getRelKey(),
-				key -> getProgramGroup(programGroupId)
-		);
+		return programGroupMultipleCache.get(programGroupId);
 	}
 
 	/**
-	 * 获取节目组信息，使用服务端锁防止并发情况下出现缓存穿透
+	 * 获取节目组信息，不经过本地缓存
 	 * 首先尝试从Redis缓存中获取数据，如果未命中，则加锁后再次尝试从Redis中获取数据
 	 * 如果数据仍然未命中，则从数据库中查询并放入缓存
 	 *
 	 * @param programGroupId 节目组ID
 	 * @return 节目组信息对象
 	 */
-	@ServiceLock(lockType = LockType.Read, name = PROGRAM_GROUP_LOCK, keys = {"#programGroupId"})
 	public ProgramGroupVo getProgramGroup(Long programGroupId) {
-		// 构建Redis缓存键
-		RedisKeyBuild redisKey = RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_GROUP, programGroupId);
-
-		// 尝试从Redis缓存中获取节目组信息
-		ProgramGroupVo programGroupVo = redisCache.get(redisKey, ProgramGroupVo.class);
-
-		// 如果缓存中存在节目组信息，则直接返回
-		if (Objects.nonNull(programGroupVo)) {
-			return programGroupVo;
-		}
-
-		// 如果缓存中不存在节目组信息，则需要加分布式锁来保证数据的一致性
-		RLock lock = serviceLockTool.getLock(LockType.Reentrant, GET_PROGRAM_LOCK, new String[]{String.valueOf(programGroupId)});
-
-		// 加锁，避免并发环境下多个线程重复创建同一份节目组信息造成的缓存不一致问题
-		lock.lock();
-
-		try {
-			// 再次尝试从Redis获取节目组信息，如果仍然没有，则调用创建节目组信息的方法
-			programGroupVo = redisCache.get(redisKey, ProgramGroupVo.class);
-
-			// 如果数据仍然未命中（说明是缓存失效后第一个进入此代码块的线程），则从数据库中查询并放入缓存
-			if (Objects.isNull(programGroupVo)) {
-				// 从数据库中查询并放入缓存
-				programGroupVo = createProgramGroupVo(programGroupId);
-				long ttl = DateUtils.countBetweenSecond(DateUtils.now(), programGroupVo.getRecentShowTime());
-				redisCache.set(redisKey, programGroupVo, ttl, TimeUnit.SECONDS);
-			}
-			// 返回结果
-			return programGroupVo;
-		}
-		finally {
-			// 释放锁，确保其他线程可以继续执行
-			lock.unlock();
-		}
+		return programGroupMultipleCache.getRemote(programGroupId);
 	}
 
 	/**
@@ -931,6 +895,22 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 		return programs.stream().map(Program::getId).collect(Collectors.toList());
 	}
 
+	/**
+	 * 查询上架发行时间在指定时间范围内的节目
+	 *
+	 * @param startTime 开始时间
+	 * @param endTime   结束时间
+	 * @return 节目id集合
+	 */
+	public List<Long> selectProgramIdListByIssueTime(Date startTime, Date endTime) {
+		LambdaQueryWrapper<Program> programLambdaQueryWrapper =
+				Wrappers.lambdaQuery(Program.class).eq(Program::getProgramStatus, BusinessStatus.YES.getCode())
+						.between(Program::getIssueTime, startTime, endTime)
+						.select(Program::getId);
+		List<Program> programs = programMapper.selectList(programLambdaQueryWrapper);
+		return programs.stream().map(Program::getId).collect(Collectors.toList());
+	}
+
 	public ProgramVo getDetailFromDb(Long programId) {
 		ProgramVo programVo = createProgramVo(programId);
 
@@ -956,17 +936,14 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 	}
 
 	/**
-	 * 预加载购票用户列表到缓存中
-	 * 此方法旨在为用户购买票证时，预先加载用户列表到Redis缓存，以提高访问效率
+	 * 预加载购票用户列表和账户订单数量到缓存中
+	 * 用户登录状态、购票人列表和账户订单数量是否已经存在，通过一次pipeline查询，
+	 * 需要加载的数据在业务线程池中执行，别耽误查询节目详情的主线程
 	 *
-	 * @param highHeat 业务状态码，用于判断是否需要执行预加载操作
+	 * @param highHeat  业务状态码，用于判断是否需要预加载购票用户列表
+	 * @param programId 节目ID，用于指定查询的节目
 	 */
-	private void preloadTicketUserList(Integer highHeat) {
-		// 检查业务状态码是否指示不需要执行预加载操作
-		if (Objects.equals(highHeat, BusinessStatus.NO.getCode())) {
-			return;
-		}
-
+	private void preload(Integer highHeat, Long programId) {
 		// 获取用户ID和认证码
 		String userId = BaseParameterHolder.getParameter(USER_ID);
 		String code = BaseParameterHolder.getParameter(CODE);
@@ -976,109 +953,102 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 			return;
 		}
 
+		boolean preloadTicketUserList = !Objects.equals(highHeat, BusinessStatus.NO.getCode());
+		RedisKeyBuild accountOrderCountKey = RedisKeyBuild.createRedisKey(RedisKeyManage.ACCOUNT_ORDER_COUNT, userId, programId);
+		RedisBatch redisBatch = redisCache.batch();
+		CompletableFuture<Boolean> userLogin =
+				redisBatch.hasKey(RedisKeyBuild.createRedisKey(RedisKeyManage.USER_LOGIN, code, userId));
+		CompletableFuture<Boolean> hasPreloadedTicketUserList = preloadTicketUserList ?
+				redisBatch.hasKey(RedisKeyBuild.createRedisKey(RedisKeyManage.TICKET_USER_LIST, userId)) :
+				CompletableFuture.completedFuture(true);
+		CompletableFuture<Boolean> hasPreloadedAccountOrderCount = redisBatch.hasKey(accountOrderCountKey);
+		redisBatch.execute();
+
 		// 如果用户没有登录，也不用预先加载了
-		Boolean userLogin = redisCache.hasKey(RedisKeyBuild.createRedisKey(RedisKeyManage.USER_LOGIN, code, userId));
-		if (!userLogin) {
+		if (!userLogin.join()) {
 			return;
 		}
-
-		// 异步加载购票人信息，别耽误查询节目详情的主线程
-		BusinessThreadPool.execute(() -> {
-			try {
-				// 如果已经预热加载了，就不用再执行了
-				Boolean hasPreloaded = redisCache.hasKey(RedisKeyBuild.createRedisKey(RedisKeyManage.TICKET_USER_LIST, userId));
-				if (!hasPreloaded) {
-					// 创建请求对象并设置用户ID
-					TicketUserListDto ticketUserListDto = new TicketUserListDto();
-					ticketUserListDto.setUserId(Long.parseLong(userId));
-
-					// 调用用户服务获取购票用户列表
-					ApiResponse<List<TicketUserVo>> apiResponse = userClient.list(ticketUserListDto);
-
-					// 检查服务调用是否成功
-					if (Objects.equals(apiResponse.getCode(), BaseCode.SUCCESS.getCode())) {
-						// 将获取到的用户列表存储到缓存中
-						Optional.ofNullable(apiResponse.getData())
-								.filter(CollectionUtil::isNotEmpty)
-								.ifPresent(ticketUserVoList ->
-										redisCache.set(RedisKeyBuild.createRedisKey(RedisKeyManage.TICKET_USER_LIST, userId), ticketUserVoList));
-					}
-					else {
-						// 记录服务调用失败的日志
-						log.warn("userClient.select 调用失败 apiResponse : {}", JSON.toJSONString(apiResponse));
-					}
-				}
-			}
-			catch (Exception e) {
-				// 记录预加载操作中的异常
-				log.error("预热加载购票人列表失败", e);
-			}
-		});
+		// 如果已经预热加载了，就不用再执行了
+		if (!hasPreloadedTicketUserList.join()) {
+			BusinessThreadPool.execute(() -> loadTicketUserList(userId));
+		}
+		if (!hasPreloadedAccountOrderCount.join()) {
+			BusinessThreadPool.execute(() -> loadAccountOrderCount(userId, programId, accountOrderCountKey));
+		}
 	}
 
-
 	/**
-	 * 预加载账户订单数量
-	 * 此方法旨在预先加载用户账户的订单数量到缓存中，以提高后续查询效率
-	 * 它首先检查必要的参数是否可用，然后验证用户登录状态，最后在后台线程中执行实际的订单数量查询和缓存操作
+	 * 从用户服务加载购票用户列表到缓存中
 	 *
-	 * @param programId 程序ID，用于指定查询的程序
+	 * @param userId 用户ID
 	 */
-	private void preloadAccountOrderCount(Long programId) {
-		// 获取用户ID和验证码，用于后续的验证和查询
-		String userId = BaseParameterHolder.getParameter(USER_ID);
-		String code = BaseParameterHolder.getParameter(CODE);
-
-		// 如果用户ID或验证码为空，则直接返回，不执行后续操作
-		if (StringUtil.isEmpty(userId) || StringUtil.isEmpty(code)) {
-			return;
+	private void loadTicketUserList(String userId) {
+		try {
+			// 创建请求对象并设置用户ID
+			TicketUserListDto ticketUserListDto = new TicketUserListDto();
+			ticketUserListDto.setUserId(Long.parseLong(userId));
+
+			// 调用用户服务获取购票用户列表
+			ApiResponse<List<TicketUserVo>> apiResponse = userClient.list(ticketUserListDto);
+
+			// 检查服务调用是否成功
+			if (Objects.equals(apiResponse.getCode(), BaseCode.SUCCESS.getCode())) {
+				// 将获取到的用户列表存储到缓存中
+				Optional.ofNullable(apiResponse.getData())
+						.filter(CollectionUtil::isNotEmpty)
+						.ifPresent(ticketUserVoList ->
+								redisCache.set(RedisKeyBuild.createRedisKey(RedisKeyManage.TICKET_USER_LIST, userId), ticketUserVoList));
+			}
+			else {
+				// 记录服务调用失败的日志
+				log.warn("userClient.select 调用失败 apiResponse : {}", JSON.toJSONString(apiResponse));
+			}
 		}
-
-		// 检查用户登录状态，如果未登录，则直接返回
-		Boolean userLogin =
-				redisCache.hasKey(RedisKeyBuild.createRedisKey(RedisKeyManage.USER_LOGIN, code, userId));
-		if (!userLogin) {
-			return;
+		catch (Exception e) {
+			// 记录预加载操作中的异常
+			log.error("预热加载购票人列表失败", e);
 		}
+	}
 
-		// 使用业务线程池执行预加载操作，避免阻塞当前线程
-		BusinessThreadPool.execute(() -> {
-			try {
-				// 如果缓存中不存在账户订单数量，则进行查询并缓存结果
-				RedisKeyBuild redisKey = RedisKeyBuild.createRedisKey(RedisKeyManage.ACCOUNT_ORDER_COUNT, userId, programId);
-				if (!redisCache.hasKey(redisKey)) {
-					AccountOrderCountDto accountOrderCountDto = new AccountOrderCountDto();
-					accountOrderCountDto.setUserId(Long.parseLong(userId));
-					accountOrderCountDto.setProgramId(programId);
-
-					// 调用订单客户端获取账户订单数量
-					ApiResponse<AccountOrderCountVo> apiResponse = orderClient.accountOrderCount(accountOrderCountDto);
-
-					// 如果调用成功，则将结果缓存
-					if (Objects.equals(apiResponse.getCode(), BaseCode.SUCCESS.getCode())) {
-						Optional.ofNullable(apiResponse.getData())
-								.ifPresent(accountOrderCountVo -> {
-									Integer count = accountOrderCountVo.getCount();
-									long ttl = tokenExpireManager.getTokenExpireTime() + 1;
-									redisCache.set(redisKey, count, ttl, TimeUnit.MINUTES);
-								});
-					}
-					// 如果调用失败，则记录日志
-					else {
-						log.warn("orderClient.accountOrderCount 调用失败 apiResponse : {}", JSON.toJSONString(apiResponse));
-					}
-				}
+	/**
+	 * 从订单服务加载账户订单数量到缓存中
+	 *
+	 * @param userId    用户ID
+	 * @param programId 节目ID
+	 * @param redisKey  账户订单数量的key
+	 */
+	private void loadAccountOrderCount(String userId, Long programId, RedisKeyBuild redisKey) {
+		try {
+			AccountOrderCountDto accountOrderCountDto = new AccountOrderCountDto();
+			accountOrderCountDto.setUserId(Long.parseLong(userId));
+			accountOrderCountDto.setProgramId(programId);
+
+			// 调用订单客户端获取账户订单数量
+			ApiResponse<AccountOrderCountVo> apiResponse = orderClient.accountOrderCount(accountOrderCountDto);
+
+			// 如果调用成功，则将结果缓存
+			if (Objects.equals(apiResponse.getCode(), BaseCode.SUCCESS.getCode())) {
+				Optional.ofNullable(apiResponse.getData())
+						.ifPresent(accountOrderCountVo -> {
+							Integer count = accountOrderCountVo.getCount();
+							long ttl = tokenExpireManager.getTokenExpireTime() + 1;
+							// 下单的lua脚本会累加这个数量，已经存在时不能覆盖
+							redisCache.setIfAbsent(redisKey, count, ttl, TimeUnit.MINUTES);
+						});
 			}
-			// 捕获并记录任何在执行过程中发生的异常
-			catch (Exception e) {
-				log.error("预热加载账户订单数量失败", e);
+			// 如果调用失败，则记录日志
+			else {
+				log.warn("orderClient.accountOrderCount 调用失败 apiResponse : {}", JSON.toJSONString(apiResponse));
 			}
-		});
+		}
+		// 捕获并记录任何在执行过程中发生的异常
+		catch (Exception e) {
+			log.error("预热加载账户订单数量失败", e);
+		}
 	}
 
 	public ProgramCategory getProgramCategoryMultipleCache(Long programCategoryId) {
-		return localCacheProgramCategory.get(String.valueOf(programCategoryId),
-				key -> getProgramCategory(programCategoryId));
+		return programCategoryMultipleCache.get(programCategoryId);
 	}
 
 	public ProgramCategory getProgramCategory(Long programCategoryId) {
@@ -1118,8 +1088,11 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 				ticketCategoryMapper.update(ticketCategoryUpdate, ticketCategoryUpdateWrapper);
 			}
 		}
-		delRedisData(programId);
-		delLocalCache(programId);
+		//事务提交之后再删除缓存，避免其他请求在提交前把旧数据重新加载进缓存
+		afterCommit(() -> {
+			delRedisData(programId);
+			delClusterLocalCache(programId);
+		});
 		return true;
 	}
 
@@ -1130,11 +1103,13 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM, programId).getRelKey());
 		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_GROUP, program.getProgramGroupId()).getRelKey());
 		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SHOW_TIME, programId).getRelKey());
-		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH, programId, "*").getRelKey());
-		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_LOCK_RESOLUTION_HASH, programId, "*").getRelKey());
-		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_SOLD_RESOLUTION_HASH, programId, "*").getRelKey());
+		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_META_RESOLUTION_HASH, programId, "*").getRelKey());
+		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_INDEX_RESOLUTION_HASH, programId, "*").getRelKey());
+		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_STATE_RESOLUTION_BITMAP, programId, "*").getRelKey());
 		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_TICKET_CATEGORY_LIST, programId).getRelKey());
 		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_TICKET_REMAIN_NUMBER_HASH_RESOLUTION, programId, "*").getRelKey());
+		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_FREE_RUN_RESOLUTION_INDEX, programId, "*").getRelKey());
+		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_VERSION, programId).getRelKey());
 		programDelCacheData.del(keys, new String[]{});
 	}
 
@@ -1155,15 +1130,84 @@ public class ProgramService extends ServiceImpl<ProgramMapper, Program> {
 	}
 
 	public ProgramVo localDetail(final ProgramGetDto programGetDto) {
-		return localCacheProgram.getCache(String.valueOf(programGetDto.getId()));
+		return programMultipleCache.getIfPresent(programGetDto.getId());
 	}
 
 	public void delLocalCache(Long programId) {
 		log.info("删除本地缓存 programId : {}", programId);
-		localCacheProgram.del(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM, programId).getRelKey());
-		localCacheProgramGroup.del(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_GROUP, programId).getRelKey());
-		localCacheProgramShowTime.del(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SHOW_TIME, programId).getRelKey());
-		localCacheTicketCategory.del(programId);
+		// 节目分组的缓存key是节目分组id，通过本地缓存中的节目找到
+		ProgramVo programVo = programMultipleCache.getIfPresent(programId);
+		if (Objects.nonNull(programVo)) {
+			programGroupMultipleCache.invalidate(programVo.getProgramGroupId());
+		}
+		programMultipleCache.invalidate(programId);
+		programShowTimeService.delLocalCache(programId);
+		ticketCategoryService.delLocalCache(programId);
+		localCacheTicketCategorySoldOut.del(programId);
+		ticketCategoryStockLease.giveBack(programId);
+	}
+
+	/**
+	 * 删除本节点节目相关的多级缓存中的本地缓存，并通过本地缓存失效广播通知其他节点删除
+	 * 用于节目数据被修改但节目仍然有效的场景，节目失效时仍然通过节目失效的redis-stream通知
+	 */
+	public void delClusterLocalCache(Long programId) {
+		Program program = programMapper.selectById(programId);
+		if (Objects.nonNull(program)) {
+			programGroupMultipleCache.invalidate(program.getProgramGroupId());
+			multipleCacheInvalidationRegister.publish(MultipleCacheName.PROGRAM_GROUP, program.getProgramGroupId());
+		}
+		delLocalCache(programId);
+		multipleCacheInvalidationRegister.publish(MultipleCacheName.PROGRAM, programId);
+		multipleCacheInvalidationRegister.publish(MultipleCacheName.PROGRAM_SHOW_TIME, programId);
+		multipleCacheInvalidationRegister.publish(MultipleCacheName.TICKET_CATEGORY, programId);
+	}
+
+	/**
+	 * 后台修改了节目的票档或者演出时间，事务提交之后删除节目、节目分组、演出时间和票档在redis中的多级缓存，
+	 * 并删除所有节点的本地缓存，座位和余票的缓存不受影响
+	 */
+	public void delMultipleCacheAfterCommit(Long programId) {
+		afterCommit(() -> {
+			Program program = programMapper.selectById(programId);
+			if (Objects.isNull(program)) {
+				return;
+			}
+			redisCache.del(List.of(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM, programId),
+					RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_GROUP, program.getProgramGroupId()),
+					RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SHOW_TIME, programId),
+					RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_TICKET_CATEGORY_LIST, programId)));
+			delClusterLocalCache(programId);
+		});
+	}
+
+	/**
+	 * 当前有事务时在事务提交之后执行，没有事务时直接执行
+	 */
+	private void afterCommit(Runnable runnable) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			runnable.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				runnable.run();
+			}
+		});
+	}
+
+	/**
+	 * 重新加载节目相关的多级缓存，新值写入redis和本节点的本地缓存
+	 * 演出时间会影响节目和票档的过期时间，所以先加载演出时间
+	 */
+	public void reloadMultipleCache(Long programId) {
+		programShowTimeService.reloadMultipleCache(programId);
+		ProgramVo programVo = programMultipleCache.reload(programId);
+		if (Objects.nonNull(programVo)) {
+			programGroupMultipleCache.reload(programVo.getProgramGroupId());
+		}
+		ticketCategoryService.reloadMultipleCache(programId);
 	}
 }
 
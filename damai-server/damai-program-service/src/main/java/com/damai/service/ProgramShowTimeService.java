@@ -9,6 +9,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.damai.BusinessThreadPool;
 import com.damai.core.RedisKeyManage;
 import com.damai.dto.ProgramShowTimeAddDto;
 import com.damai.entity.Program;
@@ -19,23 +20,24 @@ import com.damai.exception.DaMaiFrameException;
 import com.damai.mapper.ProgramGroupMapper;
 import com.damai.mapper.ProgramMapper;
 import com.damai.mapper.ProgramShowTimeMapper;
-import com.damai.redis.RedisCache;
 import com.damai.redis.RedisKeyBuild;
-import com.damai.service.cache.local.LocalCacheProgramShowTime;
+import com.damai.redis.multiple.MultipleCache;
+import com.damai.redis.multiple.MultipleCacheManager;
+import com.damai.service.constant.MultipleCacheName;
 import com.damai.servicelock.LockType;
-import com.damai.servicelock.annotion.ServiceLock;
 import com.damai.util.DateUtils;
 import com.damai.util.ServiceLockTool;
-import org.redisson.api.RLock;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 
 import static com.damai.core.DistributedLockConstants.GET_PROGRAM_SHOW_TIME_LOCK;
-import static com.damai.core.DistributedLockConstants.PROGRAM_SHOW_TIME_LOCK;
 
 /**
  * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
@@ -48,8 +50,9 @@ public class ProgramShowTimeService extends ServiceImpl<ProgramShowTimeMapper, P
 	@Autowired
 	private UidGenerator uidGenerator;
 
+	@Lazy
 	@Autowired
-	private RedisCache redisCache;
+	private ProgramService programService;
 
 	@Autowired
 	private ProgramMapper programMapper;
@@ -64,7 +67,21 @@ public class ProgramShowTimeService extends ServiceImpl<ProgramShowTimeMapper, P
 	private ServiceLockTool serviceLockTool;
 
 	@Autowired
-	private LocalCacheProgramShowTime localCacheProgramShowTime;
+	private MultipleCacheManager multipleCacheManager;
+
+	/**
+	 * 本地缓存的容量
+	 */
+	@Value("${maximumSize:10000}")
+	private Long maximumSize;
+
+	/**
+	 * 多级缓存快要过期之前多久开始后台刷新(秒)
+	 */
+	@Value("${multipleCacheRefreshAheadSeconds:60}")
+	private Long refreshAheadSeconds;
+
+	private MultipleCache<Long, ProgramShowTime> programShowTimeMultipleCache;
 
 
 	@Transactional(rollbackFor = Exception.class)
@@ -73,71 +90,58 @@ public class ProgramShowTimeService extends ServiceImpl<ProgramShowTimeMapper, P
 		BeanUtil.copyProperties(programShowTimeAddDto, programShowTime);
 		programShowTime.setId(uidGenerator.getUid());
 		programShowTimeMapper.insert(programShowTime);
+		programService.delMultipleCacheAfterCommit(programShowTime.getProgramId());
 		return programShowTime.getId();
 	}
 
+	/**
+	 * 节目演出时间多级缓存，本地缓存和redis的过期时间都到演出时间为止，快要过期时在后台刷新
+	 */
+	@PostConstruct
+	public void initMultipleCache() {
+		programShowTimeMultipleCache = multipleCacheManager.<Long, ProgramShowTime>builder(MultipleCacheName.PROGRAM_SHOW_TIME)
+				.maximumSize(maximumSize)
+				.redisKey(programId -> RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SHOW_TIME, programId))
+				.redisValueType(ProgramShowTime.class)
+				.lock(programId -> serviceLockTool.getLock(LockType.Reentrant, GET_PROGRAM_SHOW_TIME_LOCK,
+						new String[]{String.valueOf(programId)}))
+				.loader(programId -> {
+					LambdaQueryWrapper<ProgramShowTime> programShowTimeLambdaQueryWrapper =
+							Wrappers.lambdaQuery(ProgramShowTime.class).eq(ProgramShowTime::getProgramId, programId);
+					return Optional.ofNullable(programShowTimeMapper.selectOne(programShowTimeLambdaQueryWrapper))
+							.orElseThrow(() -> new DaMaiFrameException(BaseCode.PROGRAM_SHOW_TIME_NOT_EXIST));
+				})
+				.expireAt((programId, programShowTime) -> programShowTime.getShowTime())
+				.refreshAhead(Duration.ofSeconds(refreshAheadSeconds), BusinessThreadPool::execute)
+				.build();
+	}
+
 	public ProgramShowTime selectProgramShowTimeByProgramIdMultipleCache(Long programId) {
-		return localCacheProgramShowTime.getCache(RedisKeyBuild.createRedisKey
-						(RedisKeyManage.PROGRAM_SHOW_TIME, programId).getRelKey(),
-				key -> selectProgramShowTimeByProgramId(programId));
+		return programShowTimeMultipleCache.get(programId);
 	}
 
 	public ProgramShowTime simpleSelectProgramShowTimeByProgramIdMultipleCache(Long programId) {
-		ProgramShowTime programShowTimeCache = localCacheProgramShowTime.getCache(RedisKeyBuild.createRedisKey(
-				RedisKeyManage.PROGRAM_SHOW_TIME, programId).getRelKey());
-		if (Objects.nonNull(programShowTimeCache)) {
-			return programShowTimeCache;
-		}
-		return redisCache.get(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SHOW_TIME,
-				programId), ProgramShowTime.class);
+		return programShowTimeMultipleCache.getWithoutLoad(programId);
 	}
 
 	/**
-	 * 根据节目ID选择节目播出时间
-	 * 此方法使用了服务端锁来避免并发情况下可能出现的脏读问题
-	 * 它首先尝试从Redis缓存中获取节目播出时间信息，如果未找到，则加锁后从数据库中查询，并将结果缓存
+	 * 根据节目ID选择节目播出时间，不经过本地缓存
+	 * 先从Redis缓存中获取节目播出时间信息，如果未找到，则加锁后再检查一次Redis，仍然没有再从数据库中查询，并将结果缓存
 	 *
 	 * @param programId 节目ID，用于查询节目播出时间
 	 * @return ProgramShowTime 节目播出时间对象
 	 * @throws DaMaiFrameException 如果未找到对应的节目播出时间信息，则抛出此异常
 	 */
-	@ServiceLock(lockType = LockType.Read, name = PROGRAM_SHOW_TIME_LOCK, keys = {"#programId"})
 	public ProgramShowTime selectProgramShowTimeByProgramId(Long programId) {
+		return programShowTimeMultipleCache.getRemote(programId);
+	}
 
-		// 构建Redis存储键
-		RedisKeyBuild redisKey = RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SHOW_TIME, programId);
-
-		// 尝试从Redis缓存中获取节目播出时间信息
-		ProgramShowTime programShowTime = redisCache.get(redisKey, ProgramShowTime.class);
-
-		// 如果缓存中存在节目播出时间信息，则直接返回
-		if (Objects.nonNull(programShowTime)) {
-			return programShowTime;
-		}
+	public void delLocalCache(Long programId) {
+		programShowTimeMultipleCache.invalidate(programId);
+	}
 
-		// 获取锁
-		RLock lock = serviceLockTool.getLock(LockType.Reentrant, GET_PROGRAM_SHOW_TIME_LOCK,
-				new String[]{String.valueOf(programId)});
-		lock.lock();
-		try {
-			// 再次尝试从Redis缓存中获取节目播出时间信息，以避免并发情况下重复查询数据库
-			programShowTime = redisCache.get(redisKey, ProgramShowTime.class);
-			// 如果缓存中不存在节目播出时间信息，则从数据库中查询
-			if (Objects.isNull(programShowTime)) {
-				LambdaQueryWrapper<ProgramShowTime> programShowTimeLambdaQueryWrapper =
-						Wrappers.lambdaQuery(ProgramShowTime.class).eq(ProgramShowTime::getProgramId, programId);
-				programShowTime = Optional.ofNullable(programShowTimeMapper.selectOne(programShowTimeLambdaQueryWrapper))
-						.orElseThrow(() -> new DaMaiFrameException(BaseCode.PROGRAM_SHOW_TIME_NOT_EXIST));
-				// 将查询到的节目播出时间信息存入Redis缓存
-				redisCache.set(redisKey, programShowTime
-						, DateUtils.countBetweenSecond(DateUtils.now(), programShowTime.getShowTime()), TimeUnit.SECONDS);
-			}
-			return programShowTime;
-		}
-		finally {
-			// 释放锁
-			lock.unlock();
-		}
+	public ProgramShowTime reloadMultipleCache(Long programId) {
+		return programShowTimeMultipleCache.reload(programId);
 	}
 
 	@Transactional(rollbackFor = Exception.class)
@@ -2,6 +2,7 @@ package com.damai.service;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.collection.CollectionUtil;
+import com.alibaba.fastjson.JSON;
 import com.baidu.fsg.uid.UidGenerator;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
@@ -18,16 +19,16 @@ import com.damai.exception.DaMaiFrameException;
 import com.damai.mapper.SeatMapper;
 import com.damai.redis.RedisCache;
 import com.damai.redis.RedisKeyBuild;
+import com.damai.service.cache.local.LocalCacheSeatRelateInfo;
 import com.damai.service.lua.ProgramSeatCacheData;
-import com.damai.servicelock.LockType;
-import com.damai.servicelock.annotion.ServiceLock;
+import com.damai.service.lua.ProgramSeatCacheInitOperate;
+import com.damai.service.tool.SeatSlotLayout;
 import com.damai.util.DateUtils;
 import com.damai.util.ServiceLockTool;
 import com.damai.vo.ProgramVo;
 import com.damai.vo.SeatRelateInfoVo;
 import com.damai.vo.SeatVo;
 import com.damai.vo.TicketCategoryVo;
-import org.redisson.api.RLock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -38,7 +39,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.damai.core.DistributedLockConstants.GET_SEAT_LOCK;
-import static com.damai.core.DistributedLockConstants.SEAT_LOCK;
 
 /**
  * 座位 service
@@ -70,6 +70,12 @@ public class SeatService extends ServiceImpl<SeatMapper, Seat> {
 	@Autowired
 	private ProgramSeatCacheData programSeatCacheData;
 
+	@Autowired
+	private ProgramSeatCacheInitOperate programSeatCacheInitOperate;
+
+	@Autowired
+	private LocalCacheSeatRelateInfo localCacheSeatRelateInfo;
+
 	/**
 	 * 添加座位
 	 */
@@ -89,77 +95,95 @@ public class SeatService extends ServiceImpl<SeatMapper, Seat> {
 		return seat.getId();
 	}
 
-	@ServiceLock(lockType = LockType.Read, name = SEAT_LOCK, keys = {"#programId", "#ticketCategoryId"})
+	/**
+	 * 查询票档的座位，缓存命中时不加锁，未命中时才加锁从数据库加载
+	 */
 	public List<SeatVo> selectSeatResolution(Long programId, Long ticketCategoryId, Long expireTime, TimeUnit timeUnit) {
-		List<SeatVo> seatVoList = getSeatVoListByCacheResolution(programId, ticketCategoryId);
-		if (CollectionUtil.isNotEmpty(seatVoList)) {
-			return seatVoList;
+		return serviceLockTool.getOrLoad(() -> getSeatVoListByCacheResolution(programId, ticketCategoryId),
+				CollectionUtil::isNotEmpty,
+				() -> loadSeatResolution(programId, ticketCategoryId, expireTime, timeUnit),
+				GET_SEAT_LOCK, new String[]{String.valueOf(programId), String.valueOf(ticketCategoryId)});
+	}
+
+	/**
+	 * 预热座位缓存，状态位图存在说明座位缓存已经写入(一次lua脚本写入全部结构)，只判断key是否存在，不读取座位
+	 */
+	public void warmUpSeatResolution(Long programId, Long ticketCategoryId, Long expireTime, TimeUnit timeUnit) {
+		RedisKeyBuild seatStateKey = RedisKeyBuild.createRedisKey(
+				RedisKeyManage.PROGRAM_SEAT_STATE_RESOLUTION_BITMAP, programId, ticketCategoryId);
+		if (Boolean.TRUE.equals(redisCache.hasKey(seatStateKey))) {
+			return;
 		}
-		RLock lock = serviceLockTool.getLock(LockType.Reentrant, GET_SEAT_LOCK, new String[]{String.valueOf(programId),
-				String.valueOf(ticketCategoryId)});
-		lock.lock();
-		try {
-			seatVoList = getSeatVoListByCacheResolution(programId, ticketCategoryId);
-			if (CollectionUtil.isNotEmpty(seatVoList)) {
-				return seatVoList;
-			}
-			LambdaQueryWrapper<Seat> seatLambdaQueryWrapper =
-					Wrappers.lambdaQuery(Seat.class).eq(Seat::getProgramId, programId)
-							.eq(Seat::getTicketCategoryId, ticketCategoryId);
-			List<Seat> seats = seatMapper.selectList(seatLambdaQueryWrapper);
-			for (Seat seat : seats) {
-				SeatVo seatVo = new SeatVo();
-				BeanUtil.copyProperties(seat, seatVo);
-				seatVo.setSeatTypeName(SeatType.getMsg(seat.getSeatType()));
-				seatVoList.add(seatVo);
-			}
-			Map<Integer, List<SeatVo>> seatMap = seatVoList.stream().collect(Collectors.groupingBy(SeatVo::getSellStatus));
-			List<SeatVo> noSoldSeatVoList = seatMap.get(SellStatus.NO_SOLD.getCode());
-			List<SeatVo> lockSeatVoList = seatMap.get(SellStatus.LOCK.getCode());
-			List<SeatVo> soldSeatVoList = seatMap.get(SellStatus.SOLD.getCode());
-			if (CollectionUtil.isNotEmpty(noSoldSeatVoList)) {
-				redisCache.putHash(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH,
-								programId, ticketCategoryId), noSoldSeatVoList.stream()
-								.collect(Collectors.toMap(s -> String.valueOf(s.getId()), s -> s, (v1, v2) -> v2))
-						, expireTime, timeUnit);
-			}
-			if (CollectionUtil.isNotEmpty(lockSeatVoList)) {
-				redisCache.putHash(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_LOCK_RESOLUTION_HASH,
-								programId, ticketCategoryId), lockSeatVoList.stream()
-								.collect(Collectors.toMap(s -> String.valueOf(s.getId()), s -> s, (v1, v2) -> v2))
-						, expireTime, timeUnit);
-			}
-			if (CollectionUtil.isNotEmpty(soldSeatVoList)) {
-				redisCache.putHash(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_SOLD_RESOLUTION_HASH,
-								programId, ticketCategoryId)
-						, soldSeatVoList.stream()
-								.collect(Collectors.toMap(s -> String.valueOf(s.getId()), s -> s, (v1, v2) -> v2))
-						, expireTime, timeUnit);
-			}
-			seatVoList = seatVoList.stream()
-					.sorted(Comparator.comparingInt(SeatVo::getRowCode).thenComparingInt(SeatVo::getColCode))
-					.collect(Collectors.toList());
-			return seatVoList;
+		selectSeatResolution(programId, ticketCategoryId, expireTime, timeUnit);
+	}
+
+	private List<SeatVo> loadSeatResolution(Long programId, Long ticketCategoryId, Long expireTime, TimeUnit timeUnit) {
+		List<SeatVo> seatVoList = new ArrayList<>();
+		LambdaQueryWrapper<Seat> seatLambdaQueryWrapper =
+				Wrappers.lambdaQuery(Seat.class).eq(Seat::getProgramId, programId)
+						.eq(Seat::getTicketCategoryId, ticketCategoryId);
+		List<Seat> seats = seatMapper.selectList(seatLambdaQueryWrapper);
+		for (Seat seat : seats) {
+			SeatVo seatVo = new SeatVo();
+			BeanUtil.copyProperties(seat, seatVo);
+			seatVo.setSeatTypeName(SeatType.getMsg(seat.getSeatType()));
+			seatVoList.add(seatVo);
 		}
-		finally {
-			lock.unlock();
+		if (CollectionUtil.isNotEmpty(seatVoList)) {
+			initSeatCacheResolution(programId, ticketCategoryId, seatVoList, expireTime, timeUnit);
 		}
+		return seatVoList.stream()
+				.sorted(Comparator.comparingInt(SeatVo::getRowCode).thenComparingInt(SeatVo::getColCode))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * 将座位写入缓存：静态数据只存一份，售卖状态用每个座位2位的位图表示，并生成每排最长连续空座索引
+	 */
+	private void initSeatCacheResolution(Long programId, Long ticketCategoryId, List<SeatVo> seatVoList,
+										 Long expireTime, TimeUnit timeUnit) {
+		SeatSlotLayout seatSlotLayout = SeatSlotLayout.of(seatVoList);
+		String[] args = new String[seatVoList.size() * 4 + 2];
+		args[0] = String.valueOf(timeUnit.toSeconds(expireTime));
+		args[1] = String.valueOf(seatSlotLayout.getRowStride());
+		int index = 2;
+		for (SeatVo seatVo : seatVoList) {
+			Integer sellStatus = seatVo.getSellStatus();
+			seatVo.setSellStatus(null);
+			args[index++] = String.valueOf(seatSlotLayout.slot(seatVo));
+			args[index++] = String.valueOf(seatVo.getId());
+			args[index++] = String.valueOf(sellStatus);
+			args[index++] = JSON.toJSONString(seatVo);
+			seatVo.setSellStatus(sellStatus);
+		}
+		List<String> keys = new ArrayList<>(5);
+		keys.add(RedisKeyBuild.createRedisKey(
+				RedisKeyManage.PROGRAM_SEAT_META_RESOLUTION_HASH, programId, ticketCategoryId).getRelKey());
+		keys.add(RedisKeyBuild.createRedisKey(
+				RedisKeyManage.PROGRAM_SEAT_INDEX_RESOLUTION_HASH, programId, ticketCategoryId).getRelKey());
+		keys.add(RedisKeyBuild.createRedisKey(
+				RedisKeyManage.PROGRAM_SEAT_STATE_RESOLUTION_BITMAP, programId, ticketCategoryId).getRelKey());
+		keys.add(RedisKeyBuild.createRedisKey(
+				RedisKeyManage.PROGRAM_SEAT_FREE_RUN_RESOLUTION_INDEX, programId, ticketCategoryId).getRelKey());
+		keys.add(RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_VERSION, programId).getRelKey());
+		programSeatCacheInitOperate.seatCacheInit(keys, args);
 	}
 
 	public List<SeatVo> getSeatVoListByCacheResolution(Long programId, Long ticketCategoryId) {
-		List<String> keys = new ArrayList<>(4);
-		keys.add(RedisKeyBuild
-				.createRedisKey(RedisKeyManage.PROGRAM_SEAT_NO_SOLD_RESOLUTION_HASH, programId, ticketCategoryId)
-				.getRelKey());
+		List<String> keys = new ArrayList<>(2);
 		keys.add(RedisKeyBuild
-				.createRedisKey(RedisKeyManage.PROGRAM_SEAT_LOCK_RESOLUTION_HASH, programId, ticketCategoryId)
+				.createRedisKey(RedisKeyManage.PROGRAM_SEAT_META_RESOLUTION_HASH, programId, ticketCategoryId)
 				.getRelKey());
 		keys.add(RedisKeyBuild
-				.createRedisKey(RedisKeyManage.PROGRAM_SEAT_SOLD_RESOLUTION_HASH, programId, ticketCategoryId)
+				.createRedisKey(RedisKeyManage.PROGRAM_SEAT_STATE_RESOLUTION_BITMAP, programId, ticketCategoryId)
 				.getRelKey());
 		return programSeatCacheData.getData(keys, new String[]{});
 	}
 
+	/**
+	 * 查询座位图，先读取版本号再读取座位，之后座位再发生变化的话版本号也会递增，
+	 * 所以快照的数据不会比它的版本号旧，版本号没有变化时直接返回本地快照
+	 */
 	public SeatRelateInfoVo relateInfo(SeatListDto seatListDto) {
 		SeatRelateInfoVo seatRelateInfoVo = new SeatRelateInfoVo();
 		ProgramVo programVo =
@@ -169,9 +193,18 @@ public class SeatService extends ServiceImpl<SeatMapper, Seat> {
 			programGetDto.setId(seatListDto.getProgramId());
 			programVo = programService.detail(programGetDto);
 		}
+		if (programVo.getPermitChooseSeat().equals(BusinessStatus.NO.getCode())) {
+			throw new DaMaiFrameException(BaseCode.PROGRAM_NOT_ALLOW_CHOOSE_SEAT);
+		}
+		Long version = redisCache.get(
+				RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_SEAT_VERSION, programVo.getId()), Long.class);
+		SeatRelateInfoVo snapshot = localCacheSeatRelateInfo.get(programVo.getId(), version);
+		if (Objects.nonNull(snapshot)) {
+			return snapshot;
+		}
 		ProgramShowTime programShowTime = programShowTimeService.selectProgramShowTimeByProgramId(seatListDto.getProgramId());
 		List<TicketCategoryVo> ticketCategoryVoList = ticketCategoryService
-				.selectTicketCategoryListByProgramIdMultipleCache(programVo.getId(), programShowTime.getShowTime());
+				.selectTicketCategoryListByProgramIdMultipleCache(programVo.getId());
 
 		List<SeatVo> seatVos = new ArrayList<>();
 		for (TicketCategoryVo ticketCategoryVo : ticketCategoryVoList) {
@@ -179,10 +212,6 @@ public class SeatService extends ServiceImpl<SeatMapper, Seat> {
 					DateUtils.countBetweenSecond(DateUtils.now(), programShowTime.getShowTime()), TimeUnit.SECONDS));
 		}
 
-		if (programVo.getPermitChooseSeat().equals(BusinessStatus.NO.getCode())) {
-			throw new DaMaiFrameException(BaseCode.PROGRAM_NOT_ALLOW_CHOOSE_SEAT);
-		}
-
 		Map<String, List<SeatVo>> seatVoMap = seatVos.stream()
 				.collect(Collectors.groupingBy(seatVo -> seatVo.getPrice().toString()));
 		seatRelateInfoVo.setProgramId(programVo.getId());
@@ -191,6 +220,9 @@ public class SeatService extends ServiceImpl<SeatMapper, Seat> {
 		seatRelateInfoVo.setShowWeekTime(programShowTime.getShowWeekTime());
 		seatRelateInfoVo.setPriceList(seatVoMap.keySet().stream().sorted().collect(Collectors.toList()));
 		seatRelateInfoVo.setSeatVoMap(seatVoMap);
+		//座位缓存是这次请求构建的话版本号为空，不保存快照，下次请求再保存
+		seatRelateInfoVo.setVersion(version);
+		localCacheSeatRelateInfo.put(seatRelateInfoVo);
 		return seatRelateInfoVo;
 	}
 
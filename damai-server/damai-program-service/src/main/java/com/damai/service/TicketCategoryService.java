@@ -7,6 +7,7 @@ import com.baidu.fsg.uid.UidGenerator;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.damai.BusinessThreadPool;
 import com.damai.core.RedisKeyManage;
 import com.damai.dto.TicketCategoryAddDto;
 import com.damai.dto.TicketCategoryDto;
@@ -14,23 +15,24 @@ import com.damai.entity.TicketCategory;
 import com.damai.mapper.TicketCategoryMapper;
 import com.damai.redis.RedisCache;
 import com.damai.redis.RedisKeyBuild;
-import com.damai.service.cache.local.LocalCacheTicketCategory;
+import com.damai.redis.multiple.MultipleCache;
+import com.damai.redis.multiple.MultipleCacheManager;
+import com.damai.service.constant.MultipleCacheName;
 import com.damai.servicelock.LockType;
-import com.damai.servicelock.annotion.ServiceLock;
-import com.damai.util.DateUtils;
 import com.damai.util.ServiceLockTool;
 import com.damai.vo.TicketCategoryDetailVo;
 import com.damai.vo.TicketCategoryVo;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Date;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.damai.core.DistributedLockConstants.*;
@@ -48,6 +50,10 @@ public class TicketCategoryService extends ServiceImpl<TicketCategoryMapper, Tic
 	@Autowired
 	private RedisCache redisCache;
 
+	@Lazy
+	@Autowired
+	private ProgramService programService;
+
 	@Autowired
 	private TicketCategoryMapper ticketCategoryMapper;
 
@@ -55,7 +61,24 @@ public class TicketCategoryService extends ServiceImpl<TicketCategoryMapper, Tic
 	private ServiceLockTool serviceLockTool;
 
 	@Autowired
-	private LocalCacheTicketCategory localCacheTicketCategory;
+	private ProgramShowTimeService programShowTimeService;
+
+	@Autowired
+	private MultipleCacheManager multipleCacheManager;
+
+	/**
+	 * 本地缓存的容量
+	 */
+	@Value("${maximumSize:10000}")
+	private Long maximumSize;
+
+	/**
+	 * 多级缓存快要过期之前多久开始后台刷新(秒)
+	 */
+	@Value("${multipleCacheRefreshAheadSeconds:60}")
+	private Long refreshAheadSeconds;
+
+	private MultipleCache<Long, List<TicketCategoryVo>> ticketCategoryMultipleCache;
 
 	/**
 	 * 添加票档
@@ -69,122 +92,93 @@ public class TicketCategoryService extends ServiceImpl<TicketCategoryMapper, Tic
 		BeanUtil.copyProperties(ticketCategoryAddDto, ticketCategory);
 		ticketCategory.setId(uidGenerator.getUid());
 		ticketCategoryMapper.insert(ticketCategory);
+		programService.delMultipleCacheAfterCommit(ticketCategory.getProgramId());
 		return ticketCategory.getId();
 	}
 
+	/**
+	 * 票档列表多级缓存，本地缓存和redis中都到演出时间过期，快要过期时在后台刷新
+	 */
+	@PostConstruct
+	public void initMultipleCache() {
+		ticketCategoryMultipleCache = multipleCacheManager.<Long, List<TicketCategoryVo>>builder(MultipleCacheName.TICKET_CATEGORY)
+				.maximumSize(maximumSize)
+				.redisKey(programId -> RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_TICKET_CATEGORY_LIST, programId))
+				.redisReader(redisKey -> redisCache.getValueIsList(redisKey, TicketCategoryVo.class))
+				.lock(programId -> serviceLockTool.getLock(LockType.Reentrant, GET_TICKET_CATEGORY_LOCK,
+						new String[]{String.valueOf(programId)}))
+				.loader(programId -> {
+					LambdaQueryWrapper<TicketCategory> ticketCategoryLambdaQueryWrapper =
+							Wrappers.lambdaQuery(TicketCategory.class).eq(TicketCategory::getProgramId, programId);
+					List<TicketCategory> ticketCategoryList =
+							ticketCategoryMapper.selectList(ticketCategoryLambdaQueryWrapper);
+					return ticketCategoryList.stream().map(ticketCategory -> {
+						//这里需要把remainNumber设置为null，因为准确的剩余票数是在Redis中更新的，数据库会有延迟
+						// 故此处直接将剩余票数置空，不在前端展示
+						ticketCategory.setRemainNumber(null);
+						TicketCategoryVo ticketCategoryVo = new TicketCategoryVo();
+						BeanUtil.copyProperties(ticketCategory, ticketCategoryVo);
+						return ticketCategoryVo;
+					}).collect(Collectors.toList());
+				})
+				.expireAt((programId, ticketCategoryVoList) ->
+						programShowTimeService.selectProgramShowTimeByProgramIdMultipleCache(programId).getShowTime())
+				.refreshAhead(Duration.ofSeconds(refreshAheadSeconds), BusinessThreadPool::execute)
+				.build();
+	}
+
 	/**
 	 * 通过节目ID查询票档列表，使用多级缓存
 	 *
 	 * @param programId 节目ID
-	 * @param showTime  演出时间
 	 * @return 票档列表
 	 */
-	public List<TicketCategoryVo> selectTicketCategoryListByProgramIdMultipleCache(Long programId, Date showTime) {
-		return localCacheTicketCategory.getCache(programId, key -> {
-			long expireTime = DateUtils.countBetweenSecond(DateUtils.now(), showTime);
-			return selectTicketCategoryListByProgramId(programId, expireTime, TimeUnit.SECONDS);
-		});
+	public List<TicketCategoryVo> selectTicketCategoryListByProgramIdMultipleCache(Long programId) {
+		return ticketCategoryMultipleCache.get(programId);
 	}
 
 	/**
-	 * 通过节目ID查询票档列表，带有服务锁
+	 * 通过节目ID查询票档列表，不经过本地缓存
 	 *
-	 * @param programId  节目ID
-	 * @param expireTime 过期时间
-	 * @param timeUnit   时间单位
+	 * @param programId 节目ID
 	 * @return 票档列表
 	 */
-	@ServiceLock(lockType = LockType.Read, name = TICKET_CATEGORY_LOCK, keys = {"#programId"})
-	public List<TicketCategoryVo> selectTicketCategoryListByProgramId(Long programId, Long expireTime, TimeUnit timeUnit) {
-		// 根据programId查询Redis
-		RedisKeyBuild redisKey = RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_TICKET_CATEGORY_LIST, programId);
-
-		// 获取Redis中的查询结果
-		List<TicketCategoryVo> ticketCategoryVoList = redisCache.getValueIsList(redisKey, TicketCategoryVo.class);
-
-		// 若redis中存在数据，直接返回
-		if (CollectionUtil.isNotEmpty(ticketCategoryVoList)) {
-			return ticketCategoryVoList;
-		}
-
-		// 若redis中不存在数据，则
-		RLock lock = serviceLockTool.getLock(LockType.Reentrant, GET_TICKET_CATEGORY_LOCK, new String[]{String.valueOf(programId)});
-		lock.lock();
-		try {
-			return redisCache.getValueIsList(
-					redisKey,
-					TicketCategoryVo.class,
-					() -> {
-						LambdaQueryWrapper<TicketCategory> ticketCategoryLambdaQueryWrapper =
-								Wrappers.lambdaQuery(TicketCategory.class).eq(TicketCategory::getProgramId, programId);
-						List<TicketCategory> ticketCategoryList =
-								ticketCategoryMapper.selectList(ticketCategoryLambdaQueryWrapper);
-						return ticketCategoryList.stream().map(ticketCategory -> {
-							//这里需要把remainNumber设置为null，因为准确的剩余票数是在Redis中更新的，数据库会有延迟
-							// 故此处直接将剩余票数置空，不在前端展示
-							ticketCategory.setRemainNumber(null);
-							TicketCategoryVo ticketCategoryVo = new TicketCategoryVo();
-							BeanUtil.copyProperties(ticketCategory, ticketCategoryVo);
-							return ticketCategoryVo;
-						}).collect(Collectors.toList());
-					}, expireTime, timeUnit);
-		}
-		finally {
-			lock.unlock();
-		}
+	public List<TicketCategoryVo> selectTicketCategoryListByProgramId(Long programId) {
+		return ticketCategoryMultipleCache.getRemote(programId);
+	}
+
+	public void delLocalCache(Long programId) {
+		ticketCategoryMultipleCache.invalidate(programId);
+	}
+
+	public void reloadMultipleCache(Long programId) {
+		ticketCategoryMultipleCache.reload(programId);
 	}
 
 	/**
-	 * 获取Redis中的剩余票数，带有服务锁
+	 * 获取Redis中的剩余票数，缓存命中时不加锁，未命中时才加锁从数据库加载
 	 *
 	 * @param programId        节目ID
 	 * @param ticketCategoryId 票档ID
 	 * @return 剩余票数映射
 	 */
-	@ServiceLock(lockType = LockType.Read, name = REMAIN_NUMBER_LOCK, keys = {"#programId", "#ticketCategoryId"})
 	public Map<String, Long> getRedisRemainNumberResolution(Long programId, Long ticketCategoryId) {
 		// 构建redis存储键
 		RedisKeyBuild redisKey = RedisKeyBuild.createRedisKey(RedisKeyManage.PROGRAM_TICKET_REMAIN_NUMBER_HASH_RESOLUTION, programId, ticketCategoryId);
-
-		// 尝试从redis中获取剩余票数
-		Map<String, Long> ticketCategoryRemainNumber = redisCache.getAllMapForHash(redisKey, Long.class);
-
-		// 若redis中存在数据，直接返回
-		if (CollectionUtil.isNotEmpty(ticketCategoryRemainNumber)) {
-			return ticketCategoryRemainNumber;
-		}
-
-		// 若redis中不存在数据，则需要由一个线程去获取锁，然后从数据库中查询数据，放入缓存
-		RLock lock = serviceLockTool.getLock(LockType.Reentrant, GET_REMAIN_NUMBER_LOCK,
-				new String[]{String.valueOf(programId), String.valueOf(ticketCategoryId)});
-
-		// 加锁
-		lock.lock();
-		try {
-			// 尝试从缓存中获取数据，这里之所以要再次获取数据是为了保证只有一条线程去读取数据库并放入缓存
-			// 这是双重检测锁思想的一种运用
-			ticketCategoryRemainNumber = redisCache.getAllMapForHash(redisKey, Long.class);
-
-			// 若缓存中已经有数据，则直接返回
-			if (CollectionUtil.isNotEmpty(ticketCategoryRemainNumber)) {
-				return ticketCategoryRemainNumber;
-			}
-
-			// 若缓存中没有数据，则查询数据库，并置入缓存
-			LambdaQueryWrapper<TicketCategory> ticketCategoryLambdaQueryWrapper = Wrappers.lambdaQuery(TicketCategory.class)
-					.eq(TicketCategory::getProgramId, programId).eq(TicketCategory::getId, ticketCategoryId);
-			List<TicketCategory> ticketCategoryList = ticketCategoryMapper.selectList(ticketCategoryLambdaQueryWrapper);
-
-			// 根据从数据库中查询的结果构建要放入缓存中的Map，以id为票档ID为键，剩余票数为值
-			Map<String, Long> map = ticketCategoryList.stream()
-					.collect(Collectors.toMap(t -> String.valueOf(t.getId()), TicketCategory::getRemainNumber, (v1, v2) -> v2));
-			redisCache.putHash(redisKey, map);
-			return map;
-		}
-		finally {
-			// 释放锁
-			lock.unlock();
-		}
+		// 先从redis中获取剩余票数，不存在时由一个线程加锁后再检查一次，仍然不存在再从数据库中查询并放入缓存
+		return serviceLockTool.getOrLoad(() -> redisCache.getAllMapForHash(redisKey, Long.class),
+				CollectionUtil::isNotEmpty,
+				() -> {
+					LambdaQueryWrapper<TicketCategory> ticketCategoryLambdaQueryWrapper = Wrappers.lambdaQuery(TicketCategory.class)
+							.eq(TicketCategory::getProgramId, programId).eq(TicketCategory::getId, ticketCategoryId);
+					List<TicketCategory> ticketCategoryList = ticketCategoryMapper.selectList(ticketCategoryLambdaQueryWrapper);
+					// 根据从数据库中查询的结果构建要放入缓存中的Map，以id为票档ID为键，剩余票数为值
+					Map<String, Long> map = ticketCategoryList.stream()
+							.collect(Collectors.toMap(t -> String.valueOf(t.getId()), TicketCategory::getRemainNumber, (v1, v2) -> v2));
+					redisCache.putHash(redisKey, map);
+					return map;
+				},
+				GET_REMAIN_NUMBER_LOCK, new String[]{String.valueOf(programId), String.valueOf(ticketCategoryId)});
 	}
 
 	/**
@@ -0,0 +1,255 @@
+package com.damai.service.batch;
+
+import com.alibaba.fastjson.JSON;
+import com.damai.enums.BaseCode;
+import com.damai.exception.DaMaiFrameException;
+import com.damai.redis.RedisCache;
+import com.damai.redis.RedisKeyBuild;
+import com.damai.service.lua.ProgramCacheCreateOrderData;
+import com.damai.service.lua.ProgramCacheCreateOrderResolutionOperate;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 节目订单批量提交
+ * 同一个票档的并发下单请求先在本地收集一个很短的时间窗口，然后合并成一次lua调用，
+ * redis本身就是串行执行脚本的，合并之后热点票档的吞吐量不再受限于每个请求一次的网络往返
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+@Component
+public class ProgramCacheCreateOrderBatch {
+
+	/**
+	 * 调用方放弃订单的结果标记，lua脚本看到标记已经存在就不再执行这个订单
+	 */
+	private static final String ABANDONED_RESULT = "abandoned";
+
+	/**
+	 * 结果标记的过期时间(秒)，和 programDataCreateOrderResolution.lua 中保持一致
+	 */
+	private static final long RESULT_EXPIRE_SECOND = 300;
+
+	/**
+	 * 收集请求的时间窗口(微秒)
+	 */
+	@Value("${orderBatchWindowMicros:300}")
+	private Long orderBatchWindowMicros;
+
+	/**
+	 * 一次lua调用最多处理的请求数量
+	 */
+	@Value("${orderBatchMaxSize:64}")
+	private Integer orderBatchMaxSize;
+
+	/**
+	 * 请求等待批次结果的最长时间(毫秒)
+	 */
+	@Value("${orderBatchWaitMillis:3000}")
+	private Long orderBatchWaitMillis;
+
+	@Autowired
+	private ProgramCacheCreateOrderResolutionOperate programCacheCreateOrderResolutionOperate;
+
+	@Autowired
+	private RedisCache redisCache;
+
+	/**
+	 * key:批次key value:等待提交的请求
+	 * 队列被淘汰后已经入队的请求仍然会被已调度的任务处理，新的请求会进入新的队列
+	 */
+	private Cache<String, BatchQueue> batchQueueCache;
+
+	private ScheduledThreadPoolExecutor batchExecutor;
+
+	@PostConstruct
+	public void init() {
+		batchQueueCache = Caffeine.newBuilder()
+				.expireAfterAccess(10, TimeUnit.MINUTES)
+				.build();
+		AtomicInteger threadCount = new AtomicInteger(1);
+		batchExecutor = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), r -> {
+			Thread thread = new Thread(r);
+			thread.setName("program-order-batch-task-" + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		batchExecutor.shutdown();
+	}
+
+	/**
+	 * 提交到批次中并等待结果
+	 *
+	 * @param batchKey       批次key，相同key的请求会被合并
+	 * @param args           订单的lua脚本参数
+	 * @param resultKey      订单结果标记key，lua脚本扣减成功后写入，批次调用报错时用来确认订单是否已经扣减
+	 * @param abandonHandler 请求等待超时放弃之后，批次才执行成功时的回滚操作
+	 * @return 订单的执行结果
+	 */
+	public ProgramCacheCreateOrderData submit(String batchKey, List<String> args, RedisKeyBuild resultKey,
+											  Consumer<ProgramCacheCreateOrderData> abandonHandler) {
+		BatchRequest batchRequest = new BatchRequest(args, resultKey, abandonHandler);
+		BatchQueue batchQueue = batchQueueCache.get(batchKey, key -> new BatchQueue());
+		batchQueue.requestQueue.add(batchRequest);
+		if (batchQueue.scheduled.compareAndSet(false, true)) {
+			batchExecutor.schedule(() -> flush(batchQueue), orderBatchWindowMicros, TimeUnit.MICROSECONDS);
+		}
+		try {
+			return batchRequest.future.get(orderBatchWaitMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			return abandon(batchRequest, e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return abandon(batchRequest, e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof DaMaiFrameException daMaiFrameException) {
+				throw daMaiFrameException;
+			}
+			throw new DaMaiFrameException(e.getCause());
+		}
+	}
+
+	private ProgramCacheCreateOrderData abandon(BatchRequest batchRequest, Exception e) {
+		if (batchRequest.future.cancel(false)) {
+			log.warn("program order batch wait timeout, request abandoned");
+			throw new DaMaiFrameException(BaseCode.SYSTEM_ERROR);
+		}
+		//放弃的同时批次刚好执行完成，结果仍然有效
+		try {
+			return batchRequest.future.join();
+		}
+		catch (Exception ex) {
+			throw new DaMaiFrameException(e);
+		}
+	}
+
+	private void flush(BatchQueue batchQueue) {
+		//先重置调度标记，之后到达的请求会调度新的任务，不会被遗漏
+		batchQueue.scheduled.set(false);
+		List<BatchRequest> batchRequestList = new ArrayList<>(orderBatchMaxSize);
+		BatchRequest batchRequest;
+		while ((batchRequest = batchQueue.requestQueue.poll()) != null) {
+			if (batchRequest.future.isDone()) {
+				continue;
+			}
+			batchRequestList.add(batchRequest);
+			if (batchRequestList.size() >= orderBatchMaxSize) {
+				execute(batchRequestList);
+				batchRequestList = new ArrayList<>(orderBatchMaxSize);
+			}
+		}
+		if (!batchRequestList.isEmpty()) {
+			execute(batchRequestList);
+		}
+	}
+
+	private void execute(List<BatchRequest> batchRequestList) {
+		List<String> args = new ArrayList<>(batchRequestList.size() * 12);
+		for (BatchRequest batchRequest : batchRequestList) {
+			args.addAll(batchRequest.args);
+		}
+		List<ProgramCacheCreateOrderData> resultList;
+		try {
+			resultList = programCacheCreateOrderResolutionOperate.programCacheOperate(args);
+		}
+		catch (Exception e) {
+			log.error("program order batch execute error size : {}", batchRequestList.size(), e);
+			batchRequestList.forEach(batchRequest -> reconcile(batchRequest, e));
+			return;
+		}
+		for (int i = 0; i < batchRequestList.size(); i++) {
+			BatchRequest batchRequest = batchRequestList.get(i);
+			ProgramCacheCreateOrderData programCacheCreateOrderData = resultList.get(i);
+			if (batchRequest.future.complete(programCacheCreateOrderData)) {
+				continue;
+			}
+			if (Objects.equals(programCacheCreateOrderData.getCode(), BaseCode.SUCCESS.getCode())) {
+				try {
+					batchRequest.abandonHandler.accept(programCacheCreateOrderData);
+				}
+				catch (Exception e) {
+					log.error("program order batch abandon rollback error", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 批次调用在客户端报错(超时、连接断开)时，脚本可能已经执行了一部分订单，redis不会回滚这些修改
+	 * 先写入放弃标记，写入成功说明脚本还没有执行这个订单，之后也不会再执行；
+	 * 写入失败说明脚本已经扣减成功，标记中是扣减结果，按成功返回给调用方继续创建订单
+	 */
+	private void reconcile(BatchRequest batchRequest, Exception e) {
+		try {
+			if (redisCache.setIfAbsent(batchRequest.resultKey, ABANDONED_RESULT, RESULT_EXPIRE_SECOND, TimeUnit.SECONDS)) {
+				batchRequest.future.completeExceptionally(e);
+				return;
+			}
+			String result = redisCache.get(batchRequest.resultKey, String.class);
+			if (Objects.isNull(result) || ABANDONED_RESULT.equals(result)) {
+				batchRequest.future.completeExceptionally(e);
+				return;
+			}
+			ProgramCacheCreateOrderData programCacheCreateOrderData = JSON.parseObject(result, ProgramCacheCreateOrderData.class);
+			if (!batchRequest.future.complete(programCacheCreateOrderData)) {
+				batchRequest.abandonHandler.accept(programCacheCreateOrderData);
+			}
+		}
+		catch (Exception ex) {
+			log.error("program order batch reconcile error resultKey : {}", batchRequest.resultKey.getRelKey(), ex);
+			batchRequest.future.completeExceptionally(e);
+		}
+	}
+
+	private static class BatchQueue {
+
+		private final Queue<BatchRequest> requestQueue = new ConcurrentLinkedQueue<>();
+
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	}
+
+	private static class BatchRequest {
+
+		private final List<String> args;
+
+		private final RedisKeyBuild resultKey;
+
+		private final Consumer<ProgramCacheCreateOrderData> abandonHandler;
+
+		private final CompletableFuture<ProgramCacheCreateOrderData> future = new CompletableFuture<>();
+
+		private BatchRequest(List<String> args, RedisKeyBuild resultKey, Consumer<ProgramCacheCreateOrderData> abandonHandler) {
+			this.args = args;
+			this.resultKey = resultKey;
+			this.abandonHandler = abandonHandler;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.damai.service.cache;
+
+import com.damai.invalidation.CacheInvalidationBus;
+import com.damai.invalidation.CacheInvalidationHandler;
+import com.damai.redis.multiple.MultipleCache;
+import com.damai.redis.multiple.MultipleCacheManager;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 把节目服务的多级缓存注册到本地缓存失效广播，区域就是缓存的名字，节目服务的多级缓存key都是Long类型
+ * @author: 阿星不是程序员
+ **/
+@Component
+public class MultipleCacheInvalidationRegister {
+
+	@Autowired
+	private MultipleCacheManager multipleCacheManager;
+
+	@Autowired
+	private CacheInvalidationBus cacheInvalidationBus;
+
+	@PostConstruct
+	public void init() {
+		multipleCacheManager.addRegisterListener(multipleCache ->
+				cacheInvalidationBus.register(multipleCache.getName(), new LongKeyHandler(multipleCache)));
+	}
+
+	/**
+	 * 发布失效key，本节点的本地缓存由调用方删除
+	 */
+	public void publish(String cacheName, Long key) {
+		cacheInvalidationBus.publish(cacheName, String.valueOf(key));
+	}
+
+	private static class LongKeyHandler implements CacheInvalidationHandler {
+
+		private final MultipleCache<Long, ?> multipleCache;
+
+		@SuppressWarnings("unchecked")
+		private LongKeyHandler(MultipleCache<?, ?> multipleCache) {
+			this.multipleCache = (MultipleCache<Long, ?>) multipleCache;
+		}
+
+		@Override
+		public void invalidate(Collection<String> keyList) {
+			for (String key : keyList) {
+				multipleCache.invalidate(Long.parseLong(key));
+			}
+		}
+
+		@Override
+		public void invalidateAll() {
+			multipleCache.invalidateAll();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.damai.service.cache.local;
+
+import com.damai.vo.SeatRelateInfoVo;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 座位图快照本地缓存
+ * 每个节目只保留最新版本的快照，座位售卖状态的每次变化都会在lua脚本中递增节目的座位图版本号，
+ * 版本号相同时快照一定可以直接使用，不需要再逐个票档读取座位数据和分组
+ * @author: 阿星不是程序员
+ **/
+@Component
+public class LocalCacheSeatRelateInfo {
+
+	/**
+	 * 本地缓存 key:节目id value:座位图快照
+	 */
+	private Cache<Long, SeatRelateInfoVo> localCache;
+
+	/**
+	 * 本地缓存的容量
+	 */
+	@Value("${seatRelateInfoMaximumSize:1000}")
+	private Long seatRelateInfoMaximumSize;
+
+	/**
+	 * 快照没有被访问后的过期时间(秒)
+	 */
+	@Value("${seatRelateInfoDurationTime:300}")
+	private Long seatRelateInfoDurationTime;
+
+	@PostConstruct
+	public void localCacheInit() {
+		localCache = Caffeine.newBuilder()
+				.maximumSize(seatRelateInfoMaximumSize)
+				.expireAfterAccess(seatRelateInfoDurationTime, TimeUnit.SECONDS)
+				.build();
+	}
+
+	/**
+	 * 获取指定版本的快照，版本不一致时返回空
+	 */
+	public SeatRelateInfoVo get(Long programId, Long version) {
+		if (Objects.isNull(version)) {
+			return null;
+		}
+		SeatRelateInfoVo seatRelateInfoVo = localCache.getIfPresent(programId);
+		if (Objects.nonNull(seatRelateInfoVo) && version.equals(seatRelateInfoVo.getVersion())) {
+			return seatRelateInfoVo;
+		}
+		return null;
+	}
+
+	/**
+	 * 保存快照，并发构建时只保留版本更新的
+	 */
+	public void put(SeatRelateInfoVo seatRelateInfoVo) {
+		if (Objects.isNull(seatRelateInfoVo.getVersion())) {
+			return;
+		}
+		localCache.asMap().merge(seatRelateInfoVo.getProgramId(), seatRelateInfoVo,
+				(oldValue, newValue) -> oldValue.getVersion() > newValue.getVersion() ? oldValue : newValue);
+	}
+}
@@ -0,0 +1,115 @@
+package com.damai.service.cache.local;
+
+import com.damai.invalidation.CacheInvalidationBus;
+import com.damai.invalidation.CacheInvalidationHandler;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.damai.constant.Constant.TICKET_CATEGORY_SOLD_OUT_REGION;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 票档售罄标记本地缓存
+ * 当lua脚本返回余票不足时，记录下当时的余票数量，在余票恢复之前(取消订单)，余票只会减少，
+ * 所以购票数量大于记录的余票数量的请求可以直接在本节点拒绝，不需要再经过防重复提交、校验、加锁和lua脚本
+ * 余票恢复时通过本地缓存失效广播清除各节点的标记，过期时间只是兜底
+ * @author: 阿星不是程序员
+ **/
+@Component
+public class LocalCacheTicketCategorySoldOut {
+
+	/**
+	 * 本地缓存 key:节目id-票档id value:余票不足时的余票数量，每个票档的标记单独过期
+	 */
+	private Cache<String, Long> localCache;
+
+	/**
+	 * 本地缓存的容量
+	 */
+	@Value("${soldOutMaximumSize:10000}")
+	private Long soldOutMaximumSize;
+
+	/**
+	 * 售罄标记的兜底过期时间(秒)
+	 */
+	@Value("${soldOutDurationTime:30}")
+	private Long soldOutDurationTime;
+
+	@Autowired
+	private CacheInvalidationBus cacheInvalidationBus;
+
+	@PostConstruct
+	public void localCacheInit() {
+		localCache = Caffeine.newBuilder()
+				.maximumSize(soldOutMaximumSize)
+				.expireAfterWrite(soldOutDurationTime, TimeUnit.SECONDS)
+				.build();
+		cacheInvalidationBus.register(TICKET_CATEGORY_SOLD_OUT_REGION, new CacheInvalidationHandler() {
+			@Override
+			public void invalidate(Collection<String> keyList) {
+				localCache.invalidateAll(keyList);
+			}
+
+			@Override
+			public void invalidateAll() {
+				localCache.invalidateAll();
+			}
+		});
+	}
+
+	/**
+	 * 记录票档余票不足，只保留更小的余票数量
+	 */
+	public void mark(Long programId, Long ticketCategoryId, Long remainNumber) {
+		localCache.asMap().merge(getKey(programId, ticketCategoryId), Math.max(remainNumber, 0L), Math::min);
+	}
+
+	/**
+	 * 购票数量是否已经确定超过了余票数量
+	 */
+	public boolean isSoldOut(Long programId, Long ticketCategoryId, long ticketCount) {
+		Long remainNumber = localCache.getIfPresent(getKey(programId, ticketCategoryId));
+		return Objects.nonNull(remainNumber) && ticketCount > remainNumber;
+	}
+
+	public void del(Long programId, List<Long> ticketCategoryIdList) {
+		localCache.invalidateAll(getKeyList(programId, ticketCategoryIdList));
+	}
+
+	/**
+	 * 余票恢复，删除本节点的标记并广播给其他节点
+	 */
+	public void recover(Long programId, List<Long> ticketCategoryIdList) {
+		List<String> keyList = getKeyList(programId, ticketCategoryIdList);
+		localCache.invalidateAll(keyList);
+		cacheInvalidationBus.publish(TICKET_CATEGORY_SOLD_OUT_REGION, keyList);
+	}
+
+	/**
+	 * 删除节目下所有票档的标记，只在节目数据变更时调用，遍历本地缓存
+	 */
+	public void del(Long programId) {
+		String prefix = programId + "-";
+		localCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+	}
+
+	private List<String> getKeyList(Long programId, List<Long> ticketCategoryIdList) {
+		return ticketCategoryIdList.stream()
+				.map(ticketCategoryId -> getKey(programId, ticketCategoryId))
+				.collect(Collectors.toList());
+	}
+
+	private String getKey(Long programId, Long ticketCategoryId) {
+		return programId + "-" + ticketCategoryId;
+	}
+}
@@ -77,4 +77,9 @@ public class ProgramDetailCheckHandler extends AbstractProgramCheckHandler {
 	public Integer executeOrder() {
 		return 1;
 	}
+
+	@Override
+	public boolean parallel() {
+		return true;
+	}
 }
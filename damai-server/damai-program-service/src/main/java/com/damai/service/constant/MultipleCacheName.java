@@ -0,0 +1,19 @@
+package com.damai.service.constant;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 多级缓存名字，同时也是本地缓存失效广播的区域
+ * @author: 阿星不是程序员
+ **/
+public class MultipleCacheName {
+
+	public static final String PROGRAM = "program";
+
+	public static final String PROGRAM_GROUP = "programGroup";
+
+	public static final String PROGRAM_CATEGORY = "programCategory";
+
+	public static final String PROGRAM_SHOW_TIME = "programShowTime";
+
+	public static final String TICKET_CATEGORY = "ticketCategory";
+}
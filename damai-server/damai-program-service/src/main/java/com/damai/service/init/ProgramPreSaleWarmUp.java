@@ -0,0 +1,91 @@
+package com.damai.service.init;
+
+import cn.hutool.core.collection.CollectionUtil;
+import com.damai.entity.ProgramShowTime;
+import com.damai.initialize.base.AbstractApplicationPostConstructHandler;
+import com.damai.service.ProgramService;
+import com.damai.service.ProgramShowTimeService;
+import com.damai.service.SeatService;
+import com.damai.service.TicketCategoryService;
+import com.damai.util.DateUtils;
+import com.damai.vo.ProgramVo;
+import com.damai.vo.TicketCategoryVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 节目开售前缓存预热
+ * 上架发行时间在预热窗口内的节目，提前加载节目、分组、演出时间、票档的本地缓存和redis缓存，以及座位和余票的redis缓存，
+ * 开售时的请求直接命中缓存，不会集中在加载缓存的锁上等待。每个节点都会执行，redis缓存已经存在时只加载本节点的本地缓存
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+@Component
+public class ProgramPreSaleWarmUp extends AbstractApplicationPostConstructHandler {
+
+	@Autowired
+	private ProgramService programService;
+
+	@Autowired
+	private ProgramShowTimeService programShowTimeService;
+
+	@Autowired
+	private TicketCategoryService ticketCategoryService;
+
+	@Autowired
+	private SeatService seatService;
+
+	/**
+	 * 预热窗口，单位分钟，包含窗口内即将开售和刚刚开售的节目
+	 */
+	@Value("${preSaleWarmUpMinutes:30}")
+	private int preSaleWarmUpMinutes;
+
+	@Override
+	public Integer executeOrder() {
+		return 5;
+	}
+
+	@Override
+	public void executeInit(final ConfigurableApplicationContext context) {
+		Date now = DateUtils.now();
+		List<Long> programIdList = programService.selectProgramIdListByIssueTime(
+				DateUtils.addMinute(now, -preSaleWarmUpMinutes), DateUtils.addMinute(now, preSaleWarmUpMinutes));
+		if (CollectionUtil.isEmpty(programIdList)) {
+			return;
+		}
+		for (Long programId : programIdList) {
+			try {
+				warmUp(programId);
+			}
+			catch (Exception e) {
+				log.error("program pre sale warm up error programId : {}", programId, e);
+			}
+		}
+	}
+
+	private void warmUp(Long programId) {
+		ProgramVo programVo = programService.getByIdMultipleCache(programId);
+		programService.getProgramGroupMultipleCache(programVo.getProgramGroupId());
+		ProgramShowTime programShowTime = programShowTimeService.selectProgramShowTimeByProgramIdMultipleCache(programId);
+		List<TicketCategoryVo> ticketCategoryVoList =
+				ticketCategoryService.selectTicketCategoryListByProgramIdMultipleCache(programId);
+		long expireTime = DateUtils.countBetweenSecond(DateUtils.now(), programShowTime.getShowTime());
+		if (expireTime <= 0) {
+			return;
+		}
+		for (TicketCategoryVo ticketCategoryVo : ticketCategoryVoList) {
+			//座位缓存已经存在时只判断key是否存在，不存在时通过一次lua脚本写入静态数据、槽位索引、状态位图和每排连续空座索引
+			seatService.warmUpSeatResolution(programId, ticketCategoryVo.getId(), expireTime, TimeUnit.SECONDS);
+			ticketCategoryService.getRedisRemainNumberResolution(programId, ticketCategoryVo.getId());
+		}
+	}
+}
@@ -40,8 +40,11 @@ public class ProgramShowTimeRenewal extends AbstractApplicationPostConstructHand
 			businessEsHandle.deleteIndex(SpringUtil.getPrefixDistinctionName() + "-" +
 					ProgramDocumentParamName.INDEX_NAME);
 			for (Long programId : programIdSet) {
+				//座位等数据删除后按需重建，节目、演出时间、票档的多级缓存直接按新的演出时间重新加载，
+				//其他节点收到失效通知后从redis中读取，请求不会因为续期查询数据库
 				programService.delRedisData(programId);
-				programService.delLocalCache(programId);
+				programService.delClusterLocalCache(programId);
+				programService.reloadMultipleCache(programId);
 			}
 		}
 	}
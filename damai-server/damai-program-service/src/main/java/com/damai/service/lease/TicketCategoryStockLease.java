@@ -0,0 +1,235 @@
+package com.damai.service.lease;
+
+import com.damai.enums.BaseCode;
+import com.damai.exception.DaMaiFrameException;
+import com.damai.redis.ProgramSeatCacheKeys;
+import com.damai.service.cache.local.LocalCacheTicketCategorySoldOut;
+import com.damai.service.lua.TicketRemainNumberLeaseOperate;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 票档余票租借
+ * 每个节点从redis的余票中一次租借一批放到本地的原子计数器中，不选座的订单直接在本地扣减或者拒绝，
+ * redis只用来分配座位，租借的余票空闲一段时间或者服务关闭时归还给redis
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+@Component
+public class TicketCategoryStockLease {
+
+	/**
+	 * 是否开启余票租借
+	 */
+	@Value("${stockLeaseEnable:false}")
+	private Boolean stockLeaseEnable;
+
+	/**
+	 * 每次从redis租借的余票数量
+	 */
+	@Value("${stockLeaseSize:50}")
+	private Long stockLeaseSize;
+
+	/**
+	 * 租借的余票空闲多久之后归还(秒)
+	 */
+	@Value("${stockLeaseIdleSeconds:5}")
+	private Long stockLeaseIdleSeconds;
+
+	@Autowired
+	private TicketRemainNumberLeaseOperate ticketRemainNumberLeaseOperate;
+
+	@Autowired
+	private LocalCacheTicketCategorySoldOut localCacheTicketCategorySoldOut;
+
+	/**
+	 * key:节目id-票档id value:租借的余票
+	 */
+	private final Map<String, Lease> leaseMap = new ConcurrentHashMap<>(64);
+
+	private ScheduledThreadPoolExecutor giveBackExecutor;
+
+	@PostConstruct
+	public void init() {
+		if (!stockLeaseEnable) {
+			return;
+		}
+		giveBackExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r);
+			thread.setName("ticket-category-stock-lease-task");
+			thread.setDaemon(true);
+			return thread;
+		});
+		giveBackExecutor.scheduleWithFixedDelay(this::giveBackIdle, 1, 1, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (Objects.nonNull(giveBackExecutor)) {
+			giveBackExecutor.shutdown();
+		}
+		new ArrayList<>(leaseMap.values()).forEach(this::giveBack);
+	}
+
+	public boolean isEnable() {
+		return stockLeaseEnable;
+	}
+
+	/**
+	 * 从本地租借的余票中扣减，本地不足时再从redis租借，redis也不足时拒绝
+	 *
+	 * @param remainLoader redis中余票缓存不存在时的加载操作
+	 */
+	public void acquire(Long programId, Long ticketCategoryId, long count, Runnable remainLoader) {
+		String key = programId + "-" + ticketCategoryId;
+		while (true) {
+			Lease lease = leaseMap.computeIfAbsent(key, k -> new Lease(programId, ticketCategoryId));
+			if (lease.tryDecrement(count)) {
+				return;
+			}
+			synchronized (lease) {
+				//已经被归还的租借，重新获取
+				if (lease.closed) {
+					continue;
+				}
+				if (lease.tryDecrement(count)) {
+					return;
+				}
+				ProgramSeatCacheKeys programSeatCacheKeys = ProgramSeatCacheKeys.of(programId, ticketCategoryId);
+				long leaseCount = Math.max(stockLeaseSize, count - lease.remain.get());
+				long leasedCount = ticketRemainNumberLeaseOperate.lease(programSeatCacheKeys.getTicketRemainNumberHashKey(),
+						programSeatCacheKeys.getTicketCategoryId(), leaseCount);
+				if (leasedCount < 0) {
+					remainLoader.run();
+					leasedCount = ticketRemainNumberLeaseOperate.lease(programSeatCacheKeys.getTicketRemainNumberHashKey(),
+							programSeatCacheKeys.getTicketCategoryId(), leaseCount);
+					if (leasedCount < 0) {
+						throw new DaMaiFrameException(BaseCode.TICKET_CATEGORY_NOT_EXIST_V2);
+					}
+				}
+				lease.remain.addAndGet(leasedCount);
+				if (lease.tryDecrement(count)) {
+					return;
+				}
+				//redis中的余票加上本地租借的余票也不足，其他节点归还时会广播清除这个标记
+				localCacheTicketCategorySoldOut.mark(programId, ticketCategoryId, lease.remain.get());
+				throw new DaMaiFrameException(BaseCode.TICKET_REMAIN_NUMBER_NOT_SUFFICIENT);
+			}
+		}
+	}
+
+	/**
+	 * 扣减之后订单没有创建成功，放回本地租借的余票中，租借已经归还的话直接还给redis
+	 */
+	public void release(Long programId, Long ticketCategoryId, long count) {
+		Lease lease = leaseMap.get(programId + "-" + ticketCategoryId);
+		if (Objects.nonNull(lease)) {
+			synchronized (lease) {
+				if (!lease.closed) {
+					lease.remain.addAndGet(count);
+					localCacheTicketCategorySoldOut.del(programId, List.of(ticketCategoryId));
+					return;
+				}
+			}
+		}
+		giveBack(programId, ticketCategoryId, count);
+	}
+
+	/**
+	 * 归还节目下所有租借的余票
+	 */
+	public void giveBack(Long programId) {
+		String prefix = programId + "-";
+		for (Map.Entry<String, Lease> entry : leaseMap.entrySet()) {
+			if (entry.getKey().startsWith(prefix)) {
+				giveBack(entry.getValue());
+			}
+		}
+	}
+
+	private void giveBackIdle() {
+		long idleTime = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(stockLeaseIdleSeconds);
+		for (Lease lease : leaseMap.values()) {
+			if (lease.lastAccessTime < idleTime) {
+				try {
+					giveBack(lease);
+				}
+				catch (Exception e) {
+					log.error("stock lease give back error programId : {} ticketCategoryId : {}",
+							lease.programId, lease.ticketCategoryId, e);
+				}
+			}
+		}
+	}
+
+	private void giveBack(Lease lease) {
+		long remain;
+		synchronized (lease) {
+			if (lease.closed) {
+				return;
+			}
+			lease.closed = true;
+			remain = lease.remain.getAndSet(0);
+			leaseMap.remove(lease.programId + "-" + lease.ticketCategoryId, lease);
+		}
+		if (remain > 0) {
+			giveBack(lease.programId, lease.ticketCategoryId, remain);
+		}
+	}
+
+	private void giveBack(Long programId, Long ticketCategoryId, long count) {
+		ProgramSeatCacheKeys programSeatCacheKeys = ProgramSeatCacheKeys.of(programId, ticketCategoryId);
+		ticketRemainNumberLeaseOperate.giveBack(programSeatCacheKeys.getTicketRemainNumberHashKey(),
+				programSeatCacheKeys.getTicketCategoryId(), count);
+		//余票回到了redis，广播清除各节点的票档售罄标记
+		localCacheTicketCategorySoldOut.recover(programId, List.of(ticketCategoryId));
+	}
+
+	private static class Lease {
+
+		private final Long programId;
+
+		private final Long ticketCategoryId;
+
+		private final AtomicLong remain = new AtomicLong(0);
+
+		private volatile boolean closed = false;
+
+		private volatile long lastAccessTime = System.currentTimeMillis();
+
+		private Lease(Long programId, Long ticketCategoryId) {
+			this.programId = programId;
+			this.ticketCategoryId = ticketCategoryId;
+		}
+
+		/**
+		 * 只有扣减成功才算访问，持续的余票不足请求不会让剩下的少量余票一直留在本节点
+		 */
+		private boolean tryDecrement(long count) {
+			long current;
+			do {
+				current = remain.get();
+				if (current < count) {
+					return false;
+				}
+			}
+			while (!remain.compareAndSet(current, current - count));
+			lastAccessTime = System.currentTimeMillis();
+			return true;
+		}
+	}
+}
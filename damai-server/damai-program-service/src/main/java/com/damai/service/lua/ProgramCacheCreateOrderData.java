@@ -16,4 +16,14 @@ public class ProgramCacheCreateOrderData {
 	private Integer code;
 
 	private List<SeatVo> purchaseSeatList;
+
+	/**
+	 * 余票不足时的票档id
+	 */
+	private Long ticketCategoryId;
+
+	/**
+	 * 余票不足时的余票数量
+	 */
+	private Long remainNumber;
 }
@@ -10,6 +10,7 @@ import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -38,8 +39,14 @@ public class ProgramCacheCreateOrderResolutionOperate {
 		}
 	}
 
-	public ProgramCacheCreateOrderData programCacheOperate(List<String> keys, String[] args) {
-		Object object = redisCache.getInstance().execute(redisScript, keys, args);
-		return JSON.parseObject((String) object, ProgramCacheCreateOrderData.class);
+	/**
+	 * 一次lua调用可以处理一个或多个订单
+	 *
+	 * @param args 每个订单的参数按位置依次排列，格式见 programDataCreateOrderResolution.lua
+	 * @return 和订单顺序一致的每个订单的结果
+	 */
+	public List<ProgramCacheCreateOrderData> programCacheOperate(List<String> args) {
+		Object object = redisCache.getInstance().execute(redisScript, Collections.emptyList(), args.toArray());
+		return JSON.parseArray((String) object, ProgramCacheCreateOrderData.class);
 	}
 }
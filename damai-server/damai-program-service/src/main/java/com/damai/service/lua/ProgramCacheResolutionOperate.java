@@ -9,6 +9,7 @@ import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -30,14 +31,19 @@ public class ProgramCacheResolutionOperate {
 		try {
 			redisScript = new DefaultRedisScript<>();
 			redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/programDataResolution.lua")));
-			redisScript.setResultType(Integer.class);
+			redisScript.setResultType(Long.class);
 		}
 		catch (Exception e) {
 			log.error("redisScript init lua error", e);
 		}
 	}
 
-	public void programCacheOperate(List<String> keys, String[] args) {
-		redisCache.getInstance().execute(redisScript, keys, args);
+	/**
+	 * @param args 参数按位置排列，格式见 programDataResolution.lua
+	 * @return 0表示成功，其余为错误码
+	 */
+	public Integer programCacheOperate(List<String> args) {
+		Object result = redisCache.getInstance().execute(redisScript, Collections.emptyList(), args.toArray());
+		return result == null ? 0 : ((Number) result).intValue();
 	}
 }
@@ -12,9 +12,10 @@ import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
@@ -35,28 +36,40 @@ public class ProgramSeatCacheData {
 		try {
 			redisScript = new DefaultRedisScript<>();
 			redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/programSeat.lua")));
-			redisScript.setResultType(Object.class);
+			redisScript.setResultType(List.class);
 		}
 		catch (Exception e) {
 			log.error("redisScript init lua error", e);
 		}
 	}
 
+	/**
+	 * 查询座位缓存
+	 *
+	 * @param keys 座位静态数据key、座位状态位图key
+	 * @param args 无
+	 * @return 带有售卖状态的座位集合，缓存不存在时返回空集合
+	 */
 	public List<SeatVo> getData(List<String> keys, String[] args) {
-		List<SeatVo> list;
 		Object object = redisCache.getInstance().execute(redisScript, keys, args);
-		List<String> seatVoStrlist = new ArrayList<>();
-		if (Objects.nonNull(object) && object instanceof ArrayList) {
-			seatVoStrlist = (ArrayList<String>) object;
+		if (!(object instanceof List<?> resultList) || resultList.size() < 2) {
+			return new ArrayList<>();
 		}
-		if (seatVoStrlist.size() > THRESHOLD_VALUE) {
-			list = seatVoStrlist.parallelStream()
-					.map(seatVoStr -> JSON.parseObject(seatVoStr, SeatVo.class)).collect(Collectors.toList());
+		List<String> seatMetaList = (List<String>) resultList.get(0);
+		String seatState = (String) resultList.get(1);
+		//hgetall返回的是 槽位,座位数据,槽位,座位数据... 的平铺结构
+		List<Integer> fieldIndexList = new ArrayList<>(seatMetaList.size() / 2);
+		for (int i = 0; i < seatMetaList.size(); i += 2) {
+			fieldIndexList.add(i);
 		}
-		else {
-			list = seatVoStrlist.stream()
-					.map(seatVoStr -> JSON.parseObject(seatVoStr, SeatVo.class)).collect(Collectors.toList());
-		}
-		return list;
+		Stream<Integer> stream = fieldIndexList.size() > THRESHOLD_VALUE ? fieldIndexList.parallelStream() : fieldIndexList.stream();
+		return stream.map(i -> {
+					int slot = Integer.parseInt(seatMetaList.get(i));
+					SeatVo seatVo = JSON.parseObject(seatMetaList.get(i + 1), SeatVo.class);
+					seatVo.setSellStatus(slot < seatState.length() ? seatState.charAt(slot) - '0' : null);
+					return seatVo;
+				})
+				.sorted(Comparator.comparingInt(SeatVo::getRowCode).thenComparingInt(SeatVo::getColCode))
+				.collect(Collectors.toList());
 	}
 }
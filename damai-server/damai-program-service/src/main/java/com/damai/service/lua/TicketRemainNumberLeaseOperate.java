@@ -0,0 +1,58 @@
+package com.damai.service.lua;
+
+import com.damai.redis.RedisCache;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 余票租借和归还操作
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+@Component
+public class TicketRemainNumberLeaseOperate {
+
+	@Autowired
+	private RedisCache redisCache;
+
+	private DefaultRedisScript<Long> redisScript;
+
+	@PostConstruct
+	public void init() {
+		try {
+			redisScript = new DefaultRedisScript<>();
+			redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/ticketRemainNumberLease.lua")));
+			redisScript.setResultType(Long.class);
+		}
+		catch (Exception e) {
+			log.error("redisScript init lua error", e);
+		}
+	}
+
+	/**
+	 * 从余票中租借
+	 *
+	 * @return 实际租借的数量，余票缓存不存在时返回-1
+	 */
+	public long lease(String remainKey, String ticketCategoryId, long count) {
+		Object result = redisCache.getInstance().execute(redisScript, Collections.emptyList(),
+				remainKey, ticketCategoryId, String.valueOf(count));
+		return result == null ? 0 : ((Number) result).longValue();
+	}
+
+	/**
+	 * 归还租借的余票，余票缓存已经不存在时不归还
+	 */
+	public void giveBack(String remainKey, String ticketCategoryId, long count) {
+		redisCache.getInstance().execute(redisScript, Collections.emptyList(),
+				remainKey, ticketCategoryId, String.valueOf(-count));
+	}
+}
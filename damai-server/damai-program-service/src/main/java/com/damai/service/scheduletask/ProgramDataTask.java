@@ -5,6 +5,7 @@ import com.damai.BusinessThreadPool;
 import com.damai.dto.ProgramResetExecuteDto;
 import com.damai.service.ProgramService;
 import com.damai.service.init.ProgramElasticsearchInitData;
+import com.damai.service.init.ProgramPreSaleWarmUp;
 import com.damai.service.init.ProgramShowTimeRenewal;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,6 +41,10 @@ public class ProgramDataTask {
 	@Autowired
 	private ProgramElasticsearchInitData programElasticsearchInitData;
 
+	// 注入节目开售前缓存预热服务，用于定时预热即将开售的节目
+	@Autowired
+	private ProgramPreSaleWarmUp programPreSaleWarmUp;
+
 	/**
 	 * 定时任务方法，用于每日重置和更新节目数据
 	 * 该方法在每日23:00:00执行
@@ -74,5 +79,18 @@ public class ProgramDataTask {
 			}
 		});
 	}
-}
 
+	/**
+	 * 定时任务方法，用于预热即将开售的节目缓存
+	 * 每个节点都会执行，间隔由preSaleWarmUpIntervalMillis配置，默认每分钟执行一次
+	 */
+	@Scheduled(fixedDelayString = "${preSaleWarmUpIntervalMillis:60000}", initialDelayString = "${preSaleWarmUpIntervalMillis:60000}")
+	public void executePreSaleWarmUpTask() {
+		try {
+			programPreSaleWarmUp.executeInit(applicationContext);
+		}
+		catch (Exception e) {
+			log.error("executePreSaleWarmUpTask error", e);
+		}
+	}
+}
@@ -4,7 +4,7 @@ import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.util.StrUtil;
 import com.damai.dto.ProgramOrderCreateDto;
 import com.damai.dto.SeatDto;
-import com.damai.locallock.LocalLockCache;
+import com.damai.locallock.LocalLockTable;
 import com.damai.lock.LockTask;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +12,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -25,10 +25,37 @@ import java.util.stream.Collectors;
 public class BaseProgramOrder {
 
 	@Autowired
-	private LocalLockCache localLockCache;
+	private LocalLockTable localLockTable;
 
-	public String localLockCreateOrder(String lockKeyPrefix, ProgramOrderCreateDto programOrderCreateDto,
-									   LockTask<String> lockTask) {
+	public <T> T localLockCreateOrder(String lockKeyPrefix, ProgramOrderCreateDto programOrderCreateDto,
+									  LockTask<T> lockTask) {
+		Runnable unlock = localLockTable.lockStriped(getLockKeyList(lockKeyPrefix, programOrderCreateDto));
+		try {
+			return lockTask.execute();
+		}
+		finally {
+			unlock.run();
+		}
+	}
+
+	/**
+	 * 异步创建订单，本地锁在返回的future完成之后才释放，和同步创建订单持有锁的时间相同
+	 */
+	public <T> CompletableFuture<T> localLockCreateOrderAsync(String lockKeyPrefix, ProgramOrderCreateDto programOrderCreateDto,
+															  LockTask<CompletableFuture<T>> lockTask) {
+		Runnable unlock = localLockTable.lockStriped(getLockKeyList(lockKeyPrefix, programOrderCreateDto));
+		CompletableFuture<T> future;
+		try {
+			future = lockTask.execute();
+		}
+		catch (Throwable t) {
+			unlock.run();
+			throw t;
+		}
+		return future.whenComplete((result, throwable) -> unlock.run());
+	}
+
+	private List<String> getLockKeyList(String lockKeyPrefix, ProgramOrderCreateDto programOrderCreateDto) {
 		List<SeatDto> seatDtoList = programOrderCreateDto.getSeatDtoList();
 		List<Long> ticketCategoryIdList = new ArrayList<>();
 		if (CollectionUtil.isNotEmpty(seatDtoList)) {
@@ -38,36 +65,10 @@ public class BaseProgramOrder {
 		else {
 			ticketCategoryIdList.add(programOrderCreateDto.getTicketCategoryId());
 		}
-		List<ReentrantLock> localLockList = new ArrayList<>(ticketCategoryIdList.size());
-		List<ReentrantLock> localLockSuccessList = new ArrayList<>(ticketCategoryIdList.size());
+		List<String> lockKeyList = new ArrayList<>(ticketCategoryIdList.size());
 		for (Long ticketCategoryId : ticketCategoryIdList) {
-			String lockKey = StrUtil.join("-", lockKeyPrefix,
-					programOrderCreateDto.getProgramId(), ticketCategoryId);
-			ReentrantLock localLock = localLockCache.getLock(lockKey, false);
-			localLockList.add(localLock);
-		}
-		for (ReentrantLock reentrantLock : localLockList) {
-			try {
-				reentrantLock.lock();
-			}
-			catch (Throwable t) {
-				break;
-			}
-			localLockSuccessList.add(reentrantLock);
-		}
-		try {
-			return lockTask.execute();
-		}
-		finally {
-			for (int i = localLockSuccessList.size() - 1; i >= 0; i--) {
-				ReentrantLock reentrantLock = localLockSuccessList.get(i);
-				try {
-					reentrantLock.unlock();
-				}
-				catch (Throwable t) {
-					log.error("local lock unlock error", t);
-				}
-			}
+			lockKeyList.add(StrUtil.join("-", lockKeyPrefix, programOrderCreateDto.getProgramId(), ticketCategoryId));
 		}
+		return lockKeyList;
 	}
 }
@@ -2,6 +2,8 @@ package com.damai.service.strategy;
 
 import com.damai.dto.ProgramOrderCreateDto;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
  * @description: 节目订单策略
@@ -16,4 +18,14 @@ public interface ProgramOrderStrategy {
 	 * @return 订单编号
 	 */
 	String createOrder(ProgramOrderCreateDto programOrderCreateDto);
+
+	/**
+	 * 创建订单，不阻塞请求线程，默认直接同步执行
+	 *
+	 * @param programOrderCreateDto 订单参数
+	 * @return 订单编号
+	 */
+	default CompletableFuture<String> createOrderAsync(ProgramOrderCreateDto programOrderCreateDto) {
+		return CompletableFuture.completedFuture(createOrder(programOrderCreateDto));
+	}
 }
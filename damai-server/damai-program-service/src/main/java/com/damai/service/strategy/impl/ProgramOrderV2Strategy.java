@@ -9,7 +9,7 @@ import com.damai.enums.CompositeCheckType;
 import com.damai.enums.ProgramOrderVersion;
 import com.damai.initialize.base.AbstractApplicationCommandLineRunnerHandler;
 import com.damai.initialize.impl.composite.CompositeContainer;
-import com.damai.locallock.LocalLockCache;
+import com.damai.locallock.LocalLockTable;
 import com.damai.repeatexecutelimit.annotion.RepeatExecuteLimit;
 import com.damai.service.ProgramOrderService;
 import com.damai.service.strategy.ProgramOrderContext;
@@ -24,7 +24,6 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import static com.damai.core.DistributedLockConstants.PROGRAM_ORDER_CREATE_V2;
@@ -48,7 +47,7 @@ public class ProgramOrderV2Strategy extends AbstractApplicationCommandLineRunner
 	private CompositeContainer compositeContainer;
 
 	@Autowired
-	private LocalLockCache localLockCache;
+	private LocalLockTable localLockTable;
 
 
 	@RepeatExecuteLimit(
@@ -66,27 +65,18 @@ public class ProgramOrderV2Strategy extends AbstractApplicationCommandLineRunner
 		else {
 			ticketCategoryIdList.add(programOrderCreateDto.getTicketCategoryId());
 		}
-		List<ReentrantLock> localLockList = new ArrayList<>(ticketCategoryIdList.size());
+		List<String> lockKeyList = new ArrayList<>(ticketCategoryIdList.size());
 		List<RLock> serviceLockList = new ArrayList<>(ticketCategoryIdList.size());
-		List<ReentrantLock> localLockSuccessList = new ArrayList<>(ticketCategoryIdList.size());
 		List<RLock> serviceLockSuccessList = new ArrayList<>(ticketCategoryIdList.size());
 		for (Long ticketCategoryId : ticketCategoryIdList) {
 			String lockKey = StrUtil.join("-", PROGRAM_ORDER_CREATE_V2,
 					programOrderCreateDto.getProgramId(), ticketCategoryId);
-			ReentrantLock localLock = localLockCache.getLock(lockKey, false);
 			RLock serviceLock = serviceLockTool.getLock(LockType.Reentrant, lockKey);
-			localLockList.add(localLock);
+			lockKeyList.add(lockKey);
 			serviceLockList.add(serviceLock);
 		}
-		for (ReentrantLock reentrantLock : localLockList) {
-			try {
-				reentrantLock.lock();
-			}
-			catch (Throwable t) {
-				break;
-			}
-			localLockSuccessList.add(reentrantLock);
-		}
+		//分段锁去重并排序后按顺序加锁
+		Runnable localUnlock = localLockTable.lockStriped(lockKeyList);
 		for (RLock rLock : serviceLockList) {
 			try {
 				rLock.lock();
@@ -109,15 +99,7 @@ public class ProgramOrderV2Strategy extends AbstractApplicationCommandLineRunner
 					log.error("service lock unlock error", t);
 				}
 			}
-			for (int i = localLockSuccessList.size() - 1; i >= 0; i--) {
-				ReentrantLock reentrantLock = localLockSuccessList.get(i);
-				try {
-					reentrantLock.unlock();
-				}
-				catch (Throwable t) {
-					log.error("local lock unlock error", t);
-				}
-			}
+			localUnlock.run();
 		}
 	}
 
@@ -16,6 +16,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 import static com.damai.core.DistributedLockConstants.PROGRAM_ORDER_CREATE_V4;
 
 /**
@@ -46,6 +48,16 @@ public class ProgramOrderV4Strategy extends AbstractApplicationCommandLineRunner
 				() -> programOrderService.createNewAsync(programOrderCreateDto));
 	}
 
+	@RepeatExecuteLimit(
+			name = RepeatExecuteLimitConstants.CREATE_PROGRAM_ORDER,
+			keys = {"#programOrderCreateDto.userId", "#programOrderCreateDto.programId"})
+	@Override
+	public CompletableFuture<String> createOrderAsync(ProgramOrderCreateDto programOrderCreateDto) {
+		compositeContainer.execute(CompositeCheckType.PROGRAM_ORDER_CREATE_CHECK.getValue(), programOrderCreateDto);
+		return baseProgramOrder.localLockCreateOrderAsync(PROGRAM_ORDER_CREATE_V4, programOrderCreateDto,
+				() -> programOrderService.createNewAsyncNonBlocking(programOrderCreateDto));
+	}
+
 	@Override
 	public Integer executeOrder() {
 		return 4;
@@ -0,0 +1,52 @@
+package com.damai.service.strategy.impl;
+
+import com.damai.core.RepeatExecuteLimitConstants;
+import com.damai.dto.ProgramOrderCreateDto;
+import com.damai.enums.CompositeCheckType;
+import com.damai.enums.ProgramOrderVersion;
+import com.damai.initialize.base.AbstractApplicationCommandLineRunnerHandler;
+import com.damai.initialize.impl.composite.CompositeContainer;
+import com.damai.repeatexecutelimit.annotion.RepeatExecuteLimit;
+import com.damai.service.ProgramOrderService;
+import com.damai.service.strategy.ProgramOrderContext;
+import com.damai.service.strategy.ProgramOrderStrategy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 节目订单v5
+ * 不再使用本地锁串行执行，同一票档的并发请求在本地合并成一次lua调用，由redis串行执行保证正确性
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+@Component
+public class ProgramOrderV5Strategy extends AbstractApplicationCommandLineRunnerHandler implements ProgramOrderStrategy {
+
+	@Autowired
+	private ProgramOrderService programOrderService;
+
+	@Autowired
+	private CompositeContainer compositeContainer;
+
+	@RepeatExecuteLimit(
+			name = RepeatExecuteLimitConstants.CREATE_PROGRAM_ORDER,
+			keys = {"#programOrderCreateDto.userId", "#programOrderCreateDto.programId"})
+	@Override
+	public String createOrder(ProgramOrderCreateDto programOrderCreateDto) {
+		compositeContainer.execute(CompositeCheckType.PROGRAM_ORDER_CREATE_CHECK.getValue(), programOrderCreateDto);
+		return programOrderService.createNewBatch(programOrderCreateDto);
+	}
+
+	@Override
+	public Integer executeOrder() {
+		return 5;
+	}
+
+	@Override
+	public void executeInit(final ConfigurableApplicationContext context) {
+		ProgramOrderContext.add(ProgramOrderVersion.V5_VERSION.getVersion(), this);
+	}
+}
@@ -3,6 +3,7 @@ package com.damai.service.tool;
 import com.damai.vo.SeatVo;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 
@@ -13,37 +14,42 @@ import java.util.Objects;
  **/
 public class SeatMatch {
 
+	private static final Comparator<SeatVo> SEAT_COMPARATOR =
+			Comparator.comparingInt(SeatVo::getRowCode).thenComparingInt(SeatVo::getColCode);
+
 	public static List<SeatVo> findAdjacentSeatVos(List<SeatVo> allSeats, int seatCount) {
 		List<SeatVo> adjacentSeats = new ArrayList<>();
 
-		allSeats.sort((s1, s2) -> {
-			if (Objects.equals(s1.getRowCode(), s2.getRowCode())) {
-				return s1.getColCode() - s2.getColCode();
-			}
-			else {
-				return s1.getRowCode() - s2.getRowCode();
-			}
-		});
-
-		for (int i = 0; i < allSeats.size() - seatCount + 1; i++) {
-			boolean seatsFound = true;
-			for (int j = 0; j < seatCount - 1; j++) {
-				SeatVo current = allSeats.get(i + j);
-				SeatVo next = allSeats.get(i + j + 1);
-
-				if (!(Objects.equals(current.getRowCode(), next.getRowCode()) &&
-						next.getColCode() - current.getColCode() == 1)) {
-					seatsFound = false;
-					break;
+		//从缓存中查询出的座位已经按照 排、列 有序，只有无序时才需要排序
+		if (!isSorted(allSeats)) {
+			allSeats.sort(SEAT_COMPARATOR);
+		}
+
+		//一次遍历记录当前连续座位的起点，连续数量达到要求即返回
+		int runStart = 0;
+		for (int i = 0; i < allSeats.size(); i++) {
+			if (i > 0) {
+				SeatVo previous = allSeats.get(i - 1);
+				SeatVo current = allSeats.get(i);
+				if (!(Objects.equals(previous.getRowCode(), current.getRowCode()) &&
+						current.getColCode() - previous.getColCode() == 1)) {
+					runStart = i;
 				}
 			}
-			if (seatsFound) {
-				for (int k = 0; k < seatCount; k++) {
-					adjacentSeats.add(allSeats.get(i + k));
-				}
+			if (i - runStart + 1 == seatCount) {
+				adjacentSeats.addAll(allSeats.subList(runStart, i + 1));
 				return adjacentSeats;
 			}
 		}
 		return adjacentSeats;
 	}
+
+	private static boolean isSorted(List<SeatVo> allSeats) {
+		for (int i = 1; i < allSeats.size(); i++) {
+			if (SEAT_COMPARATOR.compare(allSeats.get(i - 1), allSeats.get(i)) > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
@@ -0,0 +1,50 @@
+package com.damai.service.tool;
+
+import com.damai.vo.SeatVo;
+
+import java.util.List;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 座位状态位图的槽位布局
+ * 每个票档的座位按照 排 x 列 铺成一维槽位，每排末尾额外保留一个空槽位(状态为0)，
+ * 这样在位图上连续的未售卖槽位一定在同一排并且列号相邻，lua脚本中匹配相邻座位时不需要知道列数
+ * @author: 阿星不是程序员
+ **/
+public class SeatSlotLayout {
+
+	private final int minRowCode;
+
+	private final int minColCode;
+
+	private final int rowStride;
+
+	private SeatSlotLayout(int minRowCode, int minColCode, int rowStride) {
+		this.minRowCode = minRowCode;
+		this.minColCode = minColCode;
+		this.rowStride = rowStride;
+	}
+
+	public static SeatSlotLayout of(List<SeatVo> seatVoList) {
+		int minRowCode = Integer.MAX_VALUE;
+		int minColCode = Integer.MAX_VALUE;
+		int maxColCode = Integer.MIN_VALUE;
+		for (SeatVo seatVo : seatVoList) {
+			minRowCode = Math.min(minRowCode, seatVo.getRowCode());
+			minColCode = Math.min(minColCode, seatVo.getColCode());
+			maxColCode = Math.max(maxColCode, seatVo.getColCode());
+		}
+		if (seatVoList.isEmpty()) {
+			return new SeatSlotLayout(0, 0, 1);
+		}
+		return new SeatSlotLayout(minRowCode, minColCode, maxColCode - minColCode + 2);
+	}
+
+	public int getRowStride() {
+		return rowStride;
+	}
+
+	public int slot(SeatVo seatVo) {
+		return (seatVo.getRowCode() - minRowCode) * rowStride + (seatVo.getColCode() - minColCode);
+	}
+}
@@ -1,137 +1,277 @@
-local type = tonumber(KEYS[1])
-local placeholder_seat_no_sold_hash_key = KEYS[2]
-local placeholder_seat_lock_hash_key = KEYS[3]
-local program_id = KEYS[4]
-local ticket_count_list = cjson.decode(ARGV[1])
-local purchase_seat_list = {}
-local total_seat_dto_price = 0
-local total_seat_vo_price = 0
-local function find_adjacent_seats(all_seats, seat_count)
-    local adjacent_seats = {}
+local function get_seat_state(seat_state_key, slot)
+    return redis.call('bitfield', seat_state_key, 'GET', 'u2', '#' .. slot)[1]
+end
 
-    table.sort(all_seats, function(s1, s2)
-        if s1.rowCode == s2.rowCode then
-            return s1.colCode < s2.colCode
+-- 以下函数在 programDataResolution.lua、programDataCreateOrderResolution.lua、OrderProgramDataResolution.lua 中
+-- 各有一份完全相同的副本，redis脚本不能引用公共代码，修改时需要同步修改全部副本
+-- 重新计算某一排的最长连续未售卖座位数，写回每排1个字节的索引(128 + min(连续数, 127))
+local function refresh_free_run(seat_state_key, seat_free_run_key, row_stride, row)
+    local start_slot = row * row_stride
+    local end_slot = start_slot + row_stride - 1
+    local start_byte = math.floor(start_slot / 4)
+    local row_state = redis.call('getrange', seat_state_key, start_byte, math.floor(end_slot / 4))
+    local max_run = 0
+    local run = 0
+    for slot = start_slot, end_slot do
+        local b = string.byte(row_state, math.floor(slot / 4) - start_byte + 1) or 0
+        if bit.band(bit.rshift(b, 6 - (slot % 4) * 2), 3) == 1 then
+            run = run + 1
+            max_run = math.max(max_run, run)
         else
-            return s1.rowCode < s2.rowCode
+            run = 0
         end
-    end)
+    end
+    redis.call('setrange', seat_free_run_key, row, string.char(128 + math.min(max_run, 127)))
+end
 
-    for i = 1, #all_seats - seat_count + 1 do
-        local seats_found = true
-        for j = 0, seat_count - 2 do
-            local current = all_seats[i + j]
-            local next = all_seats[i + j + 1]
+-- 以下函数在 programSeatInit.lua、programDel.lua、programDataResolution.lua、programDataCreateOrderResolution.lua、
+-- OrderProgramDataResolution.lua 中各有一份完全相同的副本，redis脚本不能引用公共代码，修改时需要同步修改全部副本
+-- 递增节目的座位图版本号，key不存在时用服务器时间(微秒)作为初始值，避免key重建后版本号回退和之前的版本重复
+-- expire_second大于0时把版本号的过期时间延长到和座位缓存一致(演出时间)，不会缩短已有的过期时间
+local function bump_seat_version(seat_version_key, expire_second)
+    if redis.call('exists', seat_version_key) == 0 then
+        local time = redis.call('time')
+        redis.call('set', seat_version_key, time[1] .. string.format('%06d', tonumber(time[2])))
+    end
+    redis.call('incr', seat_version_key)
+    if expire_second and expire_second > 0 and redis.call('ttl', seat_version_key) < expire_second then
+        redis.call('expire', seat_version_key, expire_second)
+    end
+end
 
-            if not (current.rowCode == next.rowCode and next.colCode - current.colCode == 1) then
-                seats_found = false
-                break
+-- 先通过每排最长连续空座索引定位到满足数量的排，再只扫描这一排的位图
+local function find_adjacent_slots(seat_state_key, seat_free_run_key, row_stride, seat_count)
+    local adjacent_slots = {}
+    local free_run = redis.call('get', seat_free_run_key)
+    if not free_run then
+        return adjacent_slots
+    end
+    local pattern = '[' .. string.char(128 + math.min(seat_count, 127)) .. '-\255]'
+    local row_index = string.find(free_run, pattern)
+    while row_index do
+        local start_slot = (row_index - 1) * row_stride
+        local end_slot = start_slot + row_stride - 1
+        local start_byte = math.floor(start_slot / 4)
+        local row_state = redis.call('getrange', seat_state_key, start_byte, math.floor(end_slot / 4))
+        local run_length = 0
+        for slot = start_slot, end_slot do
+            local b = string.byte(row_state, math.floor(slot / 4) - start_byte + 1) or 0
+            if bit.band(bit.rshift(b, 6 - (slot % 4) * 2), 3) == 1 then
+                run_length = run_length + 1
+                if run_length == seat_count then
+                    for adjacent_slot = slot - seat_count + 1, slot do
+                        table.insert(adjacent_slots, adjacent_slot)
+                    end
+                    return adjacent_slots
+                end
+            else
+                run_length = 0
             end
         end
-        if seats_found then
-            for k = 0, seat_count - 1 do
-                table.insert(adjacent_seats, all_seats[i + k])
-            end
-            return adjacent_seats
+        row_index = string.find(free_run, pattern, row_index + 1)
+    end
+    return adjacent_slots
+end
+
+-- 参数全部按位置排列，不做json解析，每个订单的格式为：
+-- 类型(1:选座 2:不选座), 账户下订单数量key, 账户购买数量限制, 订单结果标记key(空字符串表示不记录), 票档数量n,
+-- 然后n组票档：余票hash key, 票档id, 购票数量, 座位静态数据key, 座位槽位索引key, 座位状态位图key, 每排连续空座索引key, 座位图版本号key, 选座数量m,
+-- 每组票档后面跟着m组选座：座位id, 座位价格
+-- 余票hash key为空字符串时表示余票已经由节点租借并在本地扣减，这里不再校验和扣减余票
+local function parse_order(cursor)
+    local type = tonumber(ARGV[cursor])
+    local account = {
+        key = ARGV[cursor + 1],
+        limit = tonumber(ARGV[cursor + 2])
+    }
+    local result_key = ARGV[cursor + 3]
+    local category_count = tonumber(ARGV[cursor + 4])
+    cursor = cursor + 5
+    local ticket_count_list = {}
+    for index = 1, category_count do
+        local ticket_count = {
+            remain_key = ARGV[cursor],
+            ticket_category_id = ARGV[cursor + 1],
+            count = tonumber(ARGV[cursor + 2]),
+            meta_key = ARGV[cursor + 3],
+            index_key = ARGV[cursor + 4],
+            state_key = ARGV[cursor + 5],
+            free_run_key = ARGV[cursor + 6],
+            version_key = ARGV[cursor + 7],
+            seat_list = {}
+        }
+        local seat_count = tonumber(ARGV[cursor + 8])
+        cursor = cursor + 9
+        for index2 = 1, seat_count do
+            table.insert(ticket_count.seat_list, { id = ARGV[cursor], price = tonumber(ARGV[cursor + 1]) })
+            cursor = cursor + 2
         end
+        table.insert(ticket_count_list, ticket_count)
     end
-    return adjacent_seats
+    return cursor, type, account, result_key, ticket_count_list
 end
 
-if (type == 1) then
+-- 单个订单的校验和扣减，校验全部通过之后才会修改数据，所以失败的订单不会留下任何修改
+-- 缓存数据缺失(座位槽位索引、座位静态数据)也在校验阶段返回错误码，不会在修改数据的过程中报错
+local function create_order(type, account, ticket_count_list)
+    -- key:座位状态位图key value:要锁定的槽位集合
+    local lock_slot_list = {}
+    -- key:座位状态位图key value:座位静态数据key
+    local seat_meta_key_list = {}
+    -- key:座位状态位图key value:每排最长连续空座索引key
+    local seat_free_run_key_list = {}
+    -- key:座位状态位图key value:每排槽位数
+    local row_stride_list = {}
+    -- key:座位状态位图key value:座位图版本号key
+    local seat_version_key_list = {}
+    local total_seat_dto_price = 0
+    local total_seat_vo_price = 0
     for index, ticket_count in ipairs(ticket_count_list) do
-        local ticket_remain_number_hash_key = ticket_count.programTicketRemainNumberHashKey
-        local ticket_category_id = ticket_count.ticketCategoryId
-        local count = ticket_count.ticketCount
-        local remain_number_str = redis.call('hget', ticket_remain_number_hash_key, tostring(ticket_category_id))
-        if not remain_number_str then
-            return string.format('{"%s": %d}', 'code', 40010)
-        end
-        local remain_number = tonumber(remain_number_str)
-        if (count > remain_number) then
-            return string.format('{"%s": %d}', 'code', 40011)
+        if ticket_count.remain_key ~= '' then
+            local remain_number_str = redis.call('hget', ticket_count.remain_key, ticket_count.ticket_category_id)
+            if not remain_number_str then
+                return string.format('{"%s": %d}', 'code', 40010)
+            end
+            local remain_number = tonumber(remain_number_str)
+            if (ticket_count.count > remain_number) then
+                -- 把余票数量一起返回，用于在本地记录票档售罄标记
+                return string.format('{"%s": %d, "%s": %s, "%s": %d}', 'code', 40011,
+                        'ticketCategoryId', ticket_count.ticket_category_id, 'remainNumber', remain_number)
+            end
         end
     end
-    local seat_data_list = cjson.decode(ARGV[2])
-    for index, seatData in pairs(seat_data_list) do
-        local seat_no_sold_hash_key = seatData.seatNoSoldHashKey;
-        local seat_dto_list = cjson.decode(seatData.seatDataList)
-        for index2, seat_dto in ipairs(seat_dto_list) do
-            local id = seat_dto.id
-            local seat_dto_price = seat_dto.price
-            local seat_vo_str = redis.call('hget', seat_no_sold_hash_key, tostring(id))
-            if not seat_vo_str then
+    -- 账户购买数量的校验和累加与扣减余票在同一个脚本中，同一账户的并发请求也不会超过限制
+    local purchase_count = 0
+    for index, ticket_count in ipairs(ticket_count_list) do
+        purchase_count = purchase_count + ticket_count.count
+    end
+    local account_order_count = redis.call('get', account.key)
+    if not account_order_count then
+        -- 缓存中没有账户下的订单数量，由调用方从订单服务加载后重试
+        return string.format('{"%s": %d}', 'code', 50012)
+    end
+    if (tonumber(account_order_count) + purchase_count > account.limit) then
+        return string.format('{"%s": %d}', 'code', 50009)
+    end
+    for index, ticket_count in ipairs(ticket_count_list) do
+        local seat_state_key = ticket_count.state_key
+        local row_stride = tonumber(redis.call('hget', ticket_count.index_key, '_row_stride'))
+        if (type == 1) then
+            if not row_stride then
                 return string.format('{"%s": %d}', 'code', 40001)
             end
-            local seat_vo = cjson.decode(seat_vo_str)
-            if (seat_vo.sellStatus == 2) then
-                return string.format('{"%s": %d}', 'code', 40002)
+            lock_slot_list[seat_state_key] = {}
+            for index2, seat in ipairs(ticket_count.seat_list) do
+                local slot = redis.call('hget', ticket_count.index_key, seat.id)
+                if not slot then
+                    return string.format('{"%s": %d}', 'code', 40001)
+                end
+                local seat_state = get_seat_state(seat_state_key, slot)
+                if (seat_state == 2) then
+                    return string.format('{"%s": %d}', 'code', 40002)
+                end
+                if (seat_state == 3) then
+                    return string.format('{"%s": %d}', 'code', 40003)
+                end
+                if (seat_state ~= 1) then
+                    return string.format('{"%s": %d}', 'code', 40001)
+                end
+                local seat_vo_str = redis.call('hget', ticket_count.meta_key, slot)
+                if not seat_vo_str then
+                    return string.format('{"%s": %d}', 'code', 40001)
+                end
+                local seat_vo = cjson.decode(seat_vo_str)
+                table.insert(lock_slot_list[seat_state_key], slot)
+                total_seat_dto_price = total_seat_dto_price + seat.price
+                total_seat_vo_price = total_seat_vo_price + seat_vo.price
+                if (total_seat_dto_price > total_seat_vo_price) then
+                    return string.format('{"%s": %d}', 'code', 40008)
+                end
             end
-            if (seat_vo.sellStatus == 3) then
-                return string.format('{"%s": %d}', 'code', 40003)
+        end
+        if (type == 2) then
+            if not row_stride then
+                return string.format('{"%s": %d}', 'code', 40004)
             end
-            table.insert(purchase_seat_list, seat_vo)
-            total_seat_dto_price = total_seat_dto_price + seat_dto_price
-            total_seat_vo_price = total_seat_vo_price + seat_vo.price
-            if (total_seat_dto_price > total_seat_vo_price) then
-                return string.format('{"%s": %d}', 'code', 40008)
+            local adjacent_slots = find_adjacent_slots(seat_state_key, ticket_count.free_run_key, row_stride, ticket_count.count)
+            if (#adjacent_slots < ticket_count.count) then
+                return string.format('{"%s": %d}', 'code', 40004)
             end
+            lock_slot_list[seat_state_key] = adjacent_slots
         end
+        seat_meta_key_list[seat_state_key] = ticket_count.meta_key
+        seat_free_run_key_list[seat_state_key] = ticket_count.free_run_key
+        row_stride_list[seat_state_key] = row_stride
+        seat_version_key_list[seat_state_key] = ticket_count.version_key
     end
-end
-if (type == 2) then
+    redis.call('incrby', account.key, purchase_count)
     for index, ticket_count in ipairs(ticket_count_list) do
-        local ticket_remain_number_hash_key = ticket_count.programTicketRemainNumberHashKey
-        local ticket_category_id = ticket_count.ticketCategoryId
-        local count = ticket_count.ticketCount
-        local remain_number_str = redis.call('hget', ticket_remain_number_hash_key, tostring(ticket_category_id))
-        if not remain_number_str then
-            return string.format('{"%s": %d}', 'code', 40010)
-        end
-        local remain_number = tonumber(remain_number_str)
-        if (count > remain_number) then
-            return string.format('{"%s": %d}', 'code', 40011)
-        end
-        local seat_no_sold_hash_key = ticket_count.seatNoSoldHashKey
-        local seat_vo_no_sold_str_list = redis.call('hvals', seat_no_sold_hash_key)
-        local filter_seat_vo_no_sold_list = {}
-        for index, seat_vo_no_sold_str in ipairs(seat_vo_no_sold_str_list) do
-            local seat_vo_no_sold = cjson.decode(seat_vo_no_sold_str)
-            table.insert(filter_seat_vo_no_sold_list, seat_vo_no_sold)
+        if ticket_count.remain_key ~= '' then
+            redis.call('hincrby', ticket_count.remain_key, ticket_count.ticket_category_id, -ticket_count.count)
         end
-        purchase_seat_list = find_adjacent_seats(filter_seat_vo_no_sold_list, count)
-        if (#purchase_seat_list < count) then
-            return string.format('{"%s": %d}', 'code', 40004)
+    end
+    -- 座位静态数据不包含售卖状态，直接拼接返回，不需要再次encode
+    local purchase_seat_list = {}
+    -- 同一个节目的多个票档只递增一次版本号
+    local bumped_version_key_list = {}
+    for seat_state_key, slot_list in pairs(lock_slot_list) do
+        if #slot_list > 0 then
+            local bitfield_args = {}
+            for index, slot in ipairs(slot_list) do
+                table.insert(bitfield_args, 'SET')
+                table.insert(bitfield_args, 'u2')
+                table.insert(bitfield_args, '#' .. slot)
+                table.insert(bitfield_args, 2)
+            end
+            redis.call('bitfield', seat_state_key, unpack(bitfield_args))
+            local seat_version_key = seat_version_key_list[seat_state_key]
+            if not bumped_version_key_list[seat_version_key] then
+                bumped_version_key_list[seat_version_key] = true
+                bump_seat_version(seat_version_key, redis.call('ttl', seat_state_key))
+            end
+            local row_stride = row_stride_list[seat_state_key]
+            local refreshed_row_list = {}
+            for index, slot in ipairs(slot_list) do
+                local row = math.floor(tonumber(slot) / row_stride)
+                if not refreshed_row_list[row] then
+                    refreshed_row_list[row] = true
+                    refresh_free_run(seat_state_key, seat_free_run_key_list[seat_state_key], row_stride, row)
+                end
+            end
+            local seat_vo_str_list = redis.call('hmget', seat_meta_key_list[seat_state_key], unpack(slot_list))
+            for index, seat_vo_str in ipairs(seat_vo_str_list) do
+                table.insert(purchase_seat_list, seat_vo_str)
+            end
         end
     end
+    return string.format('{"%s": %d, "%s": [%s]}', 'code', 0, 'purchaseSeatList', table.concat(purchase_seat_list, ','))
 end
-local seat_id_list = {}
-local seat_data_list = {}
-for index, seat in ipairs(purchase_seat_list) do
-    local seat_id = seat.id
-    local ticket_category_id = seat.ticketCategoryId
-    if not seat_id_list[ticket_category_id] then
-        seat_id_list[ticket_category_id] = {}
-    end
-    table.insert(seat_id_list[ticket_category_id], tostring(seat_id))
 
-    if not seat_data_list[ticket_category_id] then
-        seat_data_list[ticket_category_id] = {}
+-- 订单结果标记的过期时间(秒)，批量调用在客户端报错(超时、连接断开)后用来确认每个订单是否已经执行
+local result_expire_second = 300
+
+-- 按顺序执行每个订单，返回和订单顺序一致的结果数组，单个下单就是只有一个订单的批次
+-- 每个订单用pcall隔离，某个订单的意外错误只返回这个订单的错误码，不会让整个脚本报错而丢失之前订单已经做的修改
+-- 订单结果标记已经存在说明调用方已经放弃了这个订单，不再执行；执行成功后写入结果标记
+local result_list = {}
+local cursor = 1
+while cursor <= #ARGV do
+    local next_cursor, type, account, result_key, ticket_count_list = parse_order(cursor)
+    local result
+    if result_key ~= '' and redis.call('exists', result_key) == 1 then
+        result = string.format('{"%s": %d}', 'code', -1)
+    else
+        local ok, order_result = pcall(create_order, type, account, ticket_count_list)
+        if ok then
+            result = order_result
+            if result_key ~= '' and string.find(result, '{"code": 0,', 1, true) == 1 then
+                redis.call('set', result_key, result, 'EX', result_expire_second)
+            end
+        else
+            result = string.format('{"%s": %d}', 'code', -1)
+        end
     end
-    table.insert(seat_data_list[ticket_category_id], tostring(seat_id))
-    seat.sellStatus = 2
-    table.insert(seat_data_list[ticket_category_id], cjson.encode(seat))
-end
-for index, ticket_count in ipairs(ticket_count_list) do
-    local ticket_remain_number_hash_key = ticket_count.programTicketRemainNumberHashKey
-    local ticket_category_id = ticket_count.ticketCategoryId
-    local count = ticket_count.ticketCount
-    redis.call('hincrby', ticket_remain_number_hash_key, ticket_category_id, "-" .. count)
-end
-for ticket_category_id, seat_id_array in pairs(seat_id_list) do
-    redis.call('hdel', string.format(placeholder_seat_no_sold_hash_key, program_id, tostring(ticket_category_id)), unpack(seat_id_array))
-end
-for ticket_category_id, seat_data_array in pairs(seat_data_list) do
-    redis.call('hmset', string.format(placeholder_seat_lock_hash_key, program_id, tostring(ticket_category_id)), unpack(seat_data_array))
+    table.insert(result_list, result)
+    cursor = next_cursor
 end
-return string.format('{"%s": %d, "%s": %s}', 'code', 0, 'purchaseSeatList', cjson.encode(purchase_seat_list))
\ No newline at end of file
+return '[' .. table.concat(result_list, ',') .. ']'
@@ -1,30 +1,47 @@
 local program_key = KEYS[1]
 local program_group_key = KEYS[2]
 local program_show_time_key = KEYS[3]
-local program_seat_no_sold_resolution_hash_key = KEYS[4]
-local program_seat_lock_resolution_hash_key = KEYS[5]
-local program_seat_sold_resolution_hash_key = KEYS[6]
+local program_seat_meta_resolution_hash_key = KEYS[4]
+local program_seat_index_resolution_hash_key = KEYS[5]
+local program_seat_state_resolution_bitmap_key = KEYS[6]
 local program_ticket_category_list_key = KEYS[7]
 local program_ticket_remain_number_hash_resolution_key = KEYS[8]
+local program_seat_free_run_resolution_index_key = KEYS[9]
+local program_seat_version_key = KEYS[10]
+
+-- 以下函数在 programSeatInit.lua、programDel.lua、programDataResolution.lua、programDataCreateOrderResolution.lua、
+-- OrderProgramDataResolution.lua 中各有一份完全相同的副本，redis脚本不能引用公共代码，修改时需要同步修改全部副本
+-- 递增节目的座位图版本号，key不存在时用服务器时间(微秒)作为初始值，避免key重建后版本号回退和之前的版本重复
+-- expire_second大于0时把版本号的过期时间延长到和座位缓存一致(演出时间)，不会缩短已有的过期时间
+local function bump_seat_version(seat_version_key, expire_second)
+    if redis.call('exists', seat_version_key) == 0 then
+        local time = redis.call('time')
+        redis.call('set', seat_version_key, time[1] .. string.format('%06d', tonumber(time[2])))
+    end
+    redis.call('incr', seat_version_key)
+    if expire_second and expire_second > 0 and redis.call('ttl', seat_version_key) < expire_second then
+        redis.call('expire', seat_version_key, expire_second)
+    end
+end
 
 redis.call('del', program_key)
 redis.call('del', program_group_key)
 redis.call('del', program_show_time_key)
-local program_seat_no_sold_resolution_hash_list = redis.call('keys', program_seat_no_sold_resolution_hash_key)
-if program_seat_no_sold_resolution_hash_list then
-    for index, key in ipairs(program_seat_no_sold_resolution_hash_list) do
+local program_seat_meta_resolution_hash_list = redis.call('keys', program_seat_meta_resolution_hash_key)
+if program_seat_meta_resolution_hash_list then
+    for index, key in ipairs(program_seat_meta_resolution_hash_list) do
         redis.call('del', key)
     end
 end
-local program_seat_lock_resolution_hash_list = redis.call('keys', program_seat_lock_resolution_hash_key)
-if program_seat_lock_resolution_hash_list then
-    for index, key in ipairs(program_seat_lock_resolution_hash_list) do
+local program_seat_index_resolution_hash_list = redis.call('keys', program_seat_index_resolution_hash_key)
+if program_seat_index_resolution_hash_list then
+    for index, key in ipairs(program_seat_index_resolution_hash_list) do
         redis.call('del', key)
     end
 end
-local program_seat_sold_resolution_hash_list = redis.call('keys', program_seat_sold_resolution_hash_key)
-if program_seat_sold_resolution_hash_list then
-    for index, key in ipairs(program_seat_sold_resolution_hash_list) do
+local program_seat_state_resolution_bitmap_list = redis.call('keys', program_seat_state_resolution_bitmap_key)
+if program_seat_state_resolution_bitmap_list then
+    for index, key in ipairs(program_seat_state_resolution_bitmap_list) do
         redis.call('del', key)
     end
 end
@@ -34,4 +51,12 @@ if program_ticket_remain_number_hash_resolution_list then
     for index, key in ipairs(program_ticket_remain_number_hash_resolution_list) do
         redis.call('del', key)
     end
-end
\ No newline at end of file
+end
+local program_seat_free_run_resolution_index_list = redis.call('keys', program_seat_free_run_resolution_index_key)
+if program_seat_free_run_resolution_index_list then
+    for index, key in ipairs(program_seat_free_run_resolution_index_list) do
+        redis.call('del', key)
+    end
+end
+-- 座位图版本号不删除，保留原有的过期时间(演出时间)，递增后客户端持有的旧版本全部失效
+bump_seat_version(program_seat_version_key, 0)
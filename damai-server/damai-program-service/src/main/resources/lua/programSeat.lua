@@ -1,25 +1,23 @@
-local seat_no_sold_resolution_hash_key = KEYS[1]
-local seat_lock_resolution_hash_key = KEYS[2]
-local seat_sold_resolution_hash_key = KEYS[3]
+local seat_meta_hash_key = KEYS[1]
+local seat_state_key = KEYS[2]
 
-local seat_list = {}
-
-local seat_no_sold_resolution_list = redis.call('hvals', seat_no_sold_resolution_hash_key)
-if seat_no_sold_resolution_list then
-    for index, seat in ipairs(seat_no_sold_resolution_list) do
-        table.insert(seat_list, seat)
-    end
+local seat_meta_list = redis.call('hgetall', seat_meta_hash_key)
+if #seat_meta_list == 0 then
+    return {}
+end
+-- 位图是二进制数据，转换成每个槽位一个字符('0'~'3')的字符串再返回
+local state = redis.call('get', seat_state_key)
+if not state then
+    return {}
 end
-local seat_lock_resolution_list = redis.call('hvals', seat_lock_resolution_hash_key)
-if seat_lock_resolution_list then
-    for index, seat in ipairs(seat_lock_resolution_list) do
-        table.insert(seat_list, seat)
-    end
+local byte_to_state = {}
+for b = 0, 255 do
+    byte_to_state[b] = string.format('%d%d%d%d',
+            bit.band(bit.rshift(b, 6), 3), bit.band(bit.rshift(b, 4), 3),
+            bit.band(bit.rshift(b, 2), 3), bit.band(b, 3))
 end
-local seat_sold_resolution_list = redis.call('hvals', seat_sold_resolution_hash_key)
-if seat_sold_resolution_list then
-    for index, seat in ipairs(seat_sold_resolution_list) do
-        table.insert(seat_list, seat)
-    end
+local state_list = {}
+for i = 1, #state do
+    state_list[i] = byte_to_state[string.byte(state, i)]
 end
-return seat_list
\ No newline at end of file
+return { seat_meta_list, table.concat(state_list) }
@@ -0,0 +1,92 @@
+-- 座位静态数据
+local seat_meta_hash_key = KEYS[1]
+-- 座位id -> 槽位 索引
+local seat_index_hash_key = KEYS[2]
+-- 座位状态位图
+local seat_state_key = KEYS[3]
+-- 每排最长连续未售卖座位数索引
+local seat_free_run_key = KEYS[4]
+-- 节目座位图版本号，重建座位缓存后递增，过期时间和座位缓存一致，不跟随座位缓存删除
+local seat_version_key = KEYS[5]
+local expire_second = tonumber(ARGV[1])
+-- 每排占用的槽位数(列数 + 1个排尾空槽位)
+local row_stride = tonumber(ARGV[2])
+-- 每一个座位占用4个参数：槽位、座位id、售卖状态、座位静态数据
+local field_count = 4
+-- 单次redis命令携带的座位数量，避免unpack参数过多
+local batch_size = 500
+
+-- 以下函数在 programSeatInit.lua、programDel.lua、programDataResolution.lua、programDataCreateOrderResolution.lua、
+-- OrderProgramDataResolution.lua 中各有一份完全相同的副本，redis脚本不能引用公共代码，修改时需要同步修改全部副本
+-- 递增节目的座位图版本号，key不存在时用服务器时间(微秒)作为初始值，避免key重建后版本号回退和之前的版本重复
+-- expire_second大于0时把版本号的过期时间延长到和座位缓存一致(演出时间)，不会缩短已有的过期时间
+local function bump_seat_version(seat_version_key, expire_second)
+    if redis.call('exists', seat_version_key) == 0 then
+        local time = redis.call('time')
+        redis.call('set', seat_version_key, time[1] .. string.format('%06d', tonumber(time[2])))
+    end
+    redis.call('incr', seat_version_key)
+    if expire_second and expire_second > 0 and redis.call('ttl', seat_version_key) < expire_second then
+        redis.call('expire', seat_version_key, expire_second)
+    end
+end
+
+redis.call('del', seat_meta_hash_key, seat_index_hash_key, seat_state_key, seat_free_run_key)
+local meta_args = {}
+local index_args = {}
+local state_args = {}
+local max_slot = 0
+local function flush()
+    if #meta_args > 0 then
+        redis.call('hset', seat_meta_hash_key, unpack(meta_args))
+        redis.call('hset', seat_index_hash_key, unpack(index_args))
+        redis.call('bitfield', seat_state_key, unpack(state_args))
+        meta_args = {}
+        index_args = {}
+        state_args = {}
+    end
+end
+for i = 3, #ARGV, field_count do
+    local slot = ARGV[i]
+    max_slot = math.max(max_slot, tonumber(slot))
+    table.insert(meta_args, slot)
+    table.insert(meta_args, ARGV[i + 3])
+    table.insert(index_args, ARGV[i + 1])
+    table.insert(index_args, slot)
+    table.insert(state_args, 'SET')
+    table.insert(state_args, 'u2')
+    table.insert(state_args, '#' .. slot)
+    table.insert(state_args, ARGV[i + 2])
+    if #index_args >= batch_size * 2 then
+        flush()
+    end
+end
+flush()
+redis.call('hset', seat_index_hash_key, '_row_stride', row_stride)
+
+-- 生成每排最长连续未售卖座位数索引，每排1个字节，值为 128 + min(连续数, 127)
+local state = redis.call('get', seat_state_key) or ''
+local free_run_list = {}
+for row = 0, math.floor(max_slot / row_stride) do
+    local max_run = 0
+    local run = 0
+    for slot = row * row_stride, row * row_stride + row_stride - 1 do
+        local b = string.byte(state, math.floor(slot / 4) + 1) or 0
+        if bit.band(bit.rshift(b, 6 - (slot % 4) * 2), 3) == 1 then
+            run = run + 1
+            max_run = math.max(max_run, run)
+        else
+            run = 0
+        end
+    end
+    free_run_list[row + 1] = string.char(128 + math.min(max_run, 127))
+end
+redis.call('set', seat_free_run_key, table.concat(free_run_list))
+if expire_second and expire_second > 0 then
+    redis.call('expire', seat_meta_hash_key, expire_second)
+    redis.call('expire', seat_index_hash_key, expire_second)
+    redis.call('expire', seat_state_key, expire_second)
+    redis.call('expire', seat_free_run_key, expire_second)
+end
+bump_seat_version(seat_version_key, expire_second)
+return 1
@@ -0,0 +1,23 @@
+-- 参数：余票hash key, 票档id, 数量
+-- 数量大于0时从余票中租借，最多租借到余票的数量，返回实际租借的数量，余票缓存不存在时返回-1
+-- 数量小于0时归还租借的余票，余票缓存已经不存在(被删除重建)时不归还，返回0
+local remain_key = ARGV[1]
+local ticket_category_id = ARGV[2]
+local count = tonumber(ARGV[3])
+local remain_number_str = redis.call('HGET', remain_key, ticket_category_id)
+if not remain_number_str then
+    if count > 0 then
+        return -1
+    end
+    return 0
+end
+if count < 0 then
+    redis.call('HINCRBY', remain_key, ticket_category_id, -count)
+    return -count
+end
+local lease_count = math.min(tonumber(remain_number_str), count)
+if lease_count > 0 then
+    redis.call('HINCRBY', remain_key, ticket_category_id, -lease_count)
+    return lease_count
+end
+return 0
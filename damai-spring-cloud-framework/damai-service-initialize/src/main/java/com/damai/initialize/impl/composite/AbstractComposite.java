@@ -54,6 +54,16 @@ public abstract class AbstractComposite<T> {
 	 */
 	public abstract Integer executeOrder();
 
+	/**
+	 * 是否可以和同一层级中其他可并行的兄弟节点并发执行，
+	 * 返回true的节点之间不能有依赖，也不能修改传入的参数
+	 *
+	 * @return 是否可以并发执行，默认为false
+	 */
+	public boolean parallel() {
+		return false;
+	}
+
 	/**
 	 * 将子组件添加到当前组件的子列表中
 	 *
@@ -70,6 +80,18 @@ public abstract class AbstractComposite<T> {
 	 * @param param 传递给每个节点操作的参数
 	 */
 	public void allExecute(T param) {
+		allExecute(param, null);
+	}
+
+	/**
+	 * 按层次结构执行每个组件的业务逻辑。
+	 * 同一层级中不可并行的节点先按顺序执行，可并行的节点再通过执行器并发执行，
+	 * 当前层级全部执行成功后才会执行下一层级
+	 *
+	 * @param param                     传递给每个节点操作的参数
+	 * @param compositeParallelExecutor 并行执行器，为空时全部按顺序执行
+	 */
+	public void allExecute(T param, CompositeParallelExecutor compositeParallelExecutor) {
 		// 创建一个队列来存储待处理的复合对象
 		Queue<AbstractComposite<T>> queue = new LinkedList<>();
 		// 将当前复合对象添加到队列中作为遍历的起点
@@ -78,17 +100,27 @@ public abstract class AbstractComposite<T> {
 		while (!queue.isEmpty()) {
 			// 获取当前层级的复合对象数量
 			int levelSize = queue.size();
+			// 当前层级可以并发执行的复合对象
+			List<Runnable> parallelTaskList = new ArrayList<>();
 			// 遍历当前层级的所有复合对象
 			for (int i = 0; i < levelSize; i++) {
 				// 从队列中取出下一个复合对象
 				AbstractComposite<T> current = queue.poll();
 				// 确保取出的复合对象不为空
 				assert current != null;
-				// 执行当前复合对象的操作
-				current.execute(param);
+				if (compositeParallelExecutor != null && current.parallel()) {
+					parallelTaskList.add(() -> current.execute(param));
+				}
+				else {
+					// 执行当前复合对象的操作
+					current.execute(param);
+				}
 				// 将当前复合对象的所有子对象添加到队列中
 				queue.addAll(current.list);
 			}
+			if (!parallelTaskList.isEmpty()) {
+				compositeParallelExecutor.invokeAll(parallelTaskList);
+			}
 		}
 	}
 }
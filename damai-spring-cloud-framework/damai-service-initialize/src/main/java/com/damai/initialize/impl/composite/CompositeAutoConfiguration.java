@@ -1,6 +1,7 @@
 package com.damai.initialize.impl.composite;
 
 import com.damai.initialize.impl.composite.init.CompositeInit;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 
 /**
@@ -10,9 +11,17 @@ import org.springframework.context.annotation.Bean;
  **/
 public class CompositeAutoConfiguration {
 
+	@Bean(destroyMethod = "shutdown")
+	public CompositeParallelExecutor compositeParallelExecutor(
+			@Value("${composite.parallel.threadCount:#{T(java.lang.Runtime).getRuntime().availableProcessors() * 2}}") int threadCount,
+			@Value("${composite.parallel.queueSize:512}") int queueSize,
+			@Value("${composite.parallel.timeoutMillis:3000}") long timeoutMillis) {
+		return new CompositeParallelExecutor(threadCount, queueSize, timeoutMillis);
+	}
+
 	@Bean
-	public CompositeContainer compositeContainer() {
-		return new CompositeContainer();
+	public CompositeContainer compositeContainer(CompositeParallelExecutor compositeParallelExecutor) {
+		return new CompositeContainer(compositeParallelExecutor);
 	}
 
 	@Bean
@@ -20,6 +20,13 @@ public class CompositeContainer<T> {
 	// 存储所有组件接口的映射，键是组件类型(type)，值是该类型的组件树的根节点(root)。
 	private final Map<String, AbstractComposite> allCompositeInterfaceMap = new HashMap<>();
 
+	// 同一层级中可并行节点的执行器
+	private final CompositeParallelExecutor compositeParallelExecutor;
+
+	public CompositeContainer(CompositeParallelExecutor compositeParallelExecutor) {
+		this.compositeParallelExecutor = compositeParallelExecutor;
+	}
+
 	/**
 	 * 构建组件树的辅助方法。
 	 *
@@ -131,7 +138,7 @@ public class CompositeContainer<T> {
 		AbstractComposite compositeInterface = Optional.ofNullable(allCompositeInterfaceMap.get(type))
 				.orElseThrow(() -> new DaMaiFrameException(BaseCode.COMPOSITE_NOT_EXIST));
 		// 执行组件树。
-		compositeInterface.allExecute(param);
+		compositeInterface.allExecute(param, compositeParallelExecutor);
 	}
 
 }
@@ -0,0 +1,124 @@
+package com.damai.initialize.impl.composite;
+
+import com.damai.base.BaseThreadPool;
+import com.damai.enums.BaseCode;
+import com.damai.exception.DaMaiFrameException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @program: 极度真实还原大麦网高并发实战项目。 添加 阿星不是程序员 微信，添加时备注 大麦 来获取项目的完整资料
+ * @description: 组合模式中同一层级可并行节点的执行器
+ * 第一个任务由调用线程自己执行，其余任务提交到有界线程池，任意一个任务失败就取消其余任务并抛出原始异常，
+ * 线程池满了由调用线程执行，退化成串行执行，MDC和BaseParameterHolder的传递复用BaseThreadPool，额外传递RequestContextHolder
+ * @author: 阿星不是程序员
+ **/
+@Slf4j
+public class CompositeParallelExecutor extends BaseThreadPool {
+
+	private final ThreadPoolExecutor executor;
+
+	private final long timeoutMillis;
+
+	public CompositeParallelExecutor(int threadCount, int queueSize, long timeoutMillis) {
+		AtomicInteger threadIndex = new AtomicInteger(0);
+		this.executor = new ThreadPoolExecutor(
+				threadCount,
+				threadCount,
+				60,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(queueSize),
+				runnable -> {
+					Thread thread = new Thread(runnable, "composite-parallel-" + threadIndex.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * 并发执行任务，全部成功才返回
+	 *
+	 * @param taskList 彼此之间没有依赖的任务
+	 */
+	public void invokeAll(List<Runnable> taskList) {
+		if (taskList.isEmpty()) {
+			return;
+		}
+		if (taskList.size() == 1) {
+			taskList.get(0).run();
+			return;
+		}
+		RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+		Map<String, String> mdcContext = getContextForTask();
+		Map<String, String> holdContext = getContextForHold();
+		ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+		List<Future<Void>> futureList = new ArrayList<>(taskList.size() - 1);
+		try {
+			for (int i = 1; i < taskList.size(); i++) {
+				futureList.add(completionService.submit(
+						wrapTask(wrapRequestAttributes(taskList.get(i), requestAttributes), mdcContext, holdContext), null));
+			}
+			taskList.get(0).run();
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			for (int i = 0; i < futureList.size(); i++) {
+				Future<Void> future = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (future == null) {
+					log.error("composite parallel execute timeout : {} ms", timeoutMillis);
+					throw new DaMaiFrameException(BaseCode.COMPOSITE_EXECUTE_TIMEOUT);
+				}
+				future.get();
+			}
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (cause instanceof Error error) {
+				throw error;
+			}
+			throw new DaMaiFrameException(cause);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DaMaiFrameException(e);
+		}
+		finally {
+			for (Future<Void> future : futureList) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private static Runnable wrapRequestAttributes(Runnable task, RequestAttributes requestAttributes) {
+		return () -> {
+			RequestAttributes oldRequestAttributes = RequestContextHolder.getRequestAttributes();
+			RequestContextHolder.setRequestAttributes(requestAttributes);
+			try {
+				task.run();
+			}
+			finally {
+				RequestContextHolder.setRequestAttributes(oldRequestAttributes);
+			}
+		};
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -7,6 +7,7 @@ import com.damai.rejectedexecutionhandler.ThreadPoolRejectedExecutionHandler;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Map;
 import java.util.concurrent.*;
 
 /**
@@ -48,4 +49,22 @@ public class BusinessThreadPool extends BaseThreadPool {
 	public static <T> Future<T> submit(Callable<T> c) {
 		return execute.submit(wrapTask(c, getContextForTask(), getContextForHold()));
 	}
+
+	/**
+	 * 捕获当前线程的上下文，通过返回的执行器提交的任务都使用捕获的上下文，
+	 * 用于在异步回调线程中提交任务，线程池满了由提交任务的线程执行
+	 */
+	public static Executor contextExecutor() {
+		Map<String, String> mdcContext = getContextForTask();
+		Map<String, String> holdContext = getContextForHold();
+		return task -> {
+			Runnable wrappedTask = wrapTask(task, mdcContext, holdContext);
+			try {
+				execute.execute(wrappedTask);
+			}
+			catch (RejectedExecutionException e) {
+				wrappedTask.run();
+			}
+		};
+	}
 }